@@ -259,7 +259,7 @@ public class AddRecipeActivity extends AppCompatActivity
         recipeToAdd.setDirections(String.valueOf(directionsEditText.getText()));
         recipeToAdd.setNotes(String.valueOf(notesEditText.getText()));
 
-        Recipes.getInstance().getList().add(recipeToAdd);
+        Recipes.getInstance().add(recipeToAdd);
         Recipes.getInstance().save(this.getApplicationContext());
         Recipes.getInstance().setCurrentRecipe(recipeToAdd);
 
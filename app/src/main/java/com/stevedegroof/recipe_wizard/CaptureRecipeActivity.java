@@ -8,12 +8,17 @@ import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.ImageButton;
+import android.widget.LinearLayout;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -44,6 +49,7 @@ import java.io.IOException;
  * Key functionalities include:
  * <ul>
  *     <li>Manual text input via a {@link TextInputEditText}.</li>
+ *     <li>A live preview of the title, servings, ingredients and directions the text parses to.</li>
  *     <li>Image capture using the device camera.</li>
  *     <li>Image selection from the device gallery.</li>
  *     <li>Text recognition from images using {@link com.google.mlkit.vision.text.TextRecognizer}.</li>
@@ -58,10 +64,17 @@ import java.io.IOException;
  */
 public class CaptureRecipeActivity extends AppCompatActivity
 {
+    private static final int PREVIEW_LINES = 12;
+    private static final int PREVIEW_CHARACTERS = 1500;
+
     private MaterialToolbar toolbarCaptureRecipe;
     private TextInputEditText captureEditText;
     private ImageButton cameraButton, imageButton, doneButton;
     private com.google.mlkit.vision.text.TextRecognizer textRecognizer;
+    private LinearLayout previewLayout;
+    private TextView previewTitle, previewServings, previewConfidence, previewIngredients, previewDirections;
+    private final RecipeParser previewParser = new RecipeParser();
+    private final Runnable previewUpdate = this::updatePreview;
 
     private ActivityResultLauncher<Intent> pickImageLauncher;
 
@@ -102,6 +115,12 @@ public class CaptureRecipeActivity extends AppCompatActivity
         cameraButton = findViewById(R.id.button_take_photo);
         imageButton = findViewById(R.id.button_get_image);
         doneButton = findViewById(R.id.button_done);
+        previewLayout = findViewById(R.id.layout_capture_preview);
+        previewTitle = findViewById(R.id.textview_preview_title);
+        previewServings = findViewById(R.id.textview_preview_servings);
+        previewConfidence = findViewById(R.id.textview_preview_confidence);
+        previewIngredients = findViewById(R.id.textview_preview_ingredients);
+        previewDirections = findViewById(R.id.textview_preview_directions);
 
         textRecognizer = TextRecognition.getClient(TextRecognizerOptions.DEFAULT_OPTIONS);
 
@@ -146,6 +165,7 @@ public class CaptureRecipeActivity extends AppCompatActivity
                 });
 
         setupButtonListeners();
+        setupPreview();
     }
 
     /**
@@ -261,16 +281,7 @@ public class CaptureRecipeActivity extends AppCompatActivity
         doneButton.setOnClickListener(v ->
         {
             String rawText = captureEditText.getText().toString();
-            Recipe recipe = new Recipe();
-            RecipeParser parser = new RecipeParser();
-            parser.setRawText(rawText, false);
-            recipe.setTitle(parser.getTitle());
-            recipe.setServings(Integer.toString(parser.getServings()));
-            recipe.setMetric(parser.isMetric());
-            recipe.setIngredients(parser.getIngredients());
-            recipe.setDirections(parser.getDirections());
-            recipe.setNotes(parser.getNotes());
-            Recipes.getInstance().setCurrentRecipe(recipe);
+            Recipes.getInstance().setCurrentRecipe(RecipeParser.parse(rawText, false).toRecipe());
             finish();
         });
 
@@ -283,6 +294,89 @@ public class CaptureRecipeActivity extends AppCompatActivity
 
     }
 
+    /**
+     * Sets up the live preview below the text.
+     * Each edit to the text is passed on to the preview's parser as it is made, so that only the
+     * lines it touched are read again, and parsing is put off until the next frame is drawn, so a
+     * burst of edits, such as a paste or a page of recognised text, is parsed once.
+     */
+    private void setupPreview()
+    {
+        captureEditText.addTextChangedListener(new TextWatcher()
+        {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count)
+            {
+                previewParser.textChanged(start, before, count);
+                captureEditText.removeCallbacks(previewUpdate);
+                captureEditText.postOnAnimation(previewUpdate);
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {}
+        });
+    }
+
+    /**
+     * Parses the text again from the edits made since the last time, and shows what was found.
+     * When the sections had to be guessed because the headers are missing, says how sure the
+     * guess is.
+     */
+    private void updatePreview()
+    {
+        String text = captureEditText.getText().toString();
+        previewParser.setChangedText(text, false);
+        if (text.trim().isEmpty())
+        {
+            previewLayout.setVisibility(View.GONE);
+            return;
+        }
+        previewLayout.setVisibility(View.VISIBLE);
+        previewTitle.setText(previewParser.getTitle());
+        previewServings.setText(getString(R.string.preview_servings, previewParser.getServings()));
+        double confidence = previewParser.getConfidence();
+        if (confidence < 1d)
+        {
+            previewConfidence.setText(getString(R.string.preview_confidence, (int) Math.round(confidence * 100d)));
+            previewConfidence.setVisibility(View.VISIBLE);
+        } else
+        {
+            previewConfidence.setVisibility(View.GONE);
+        }
+        previewIngredients.setText(previewText(previewParser.getIngredients()));
+        previewDirections.setText(previewText(previewParser.getDirections()));
+    }
+
+    /**
+     * Cuts a section down to its first lines, so that the preview of a recipe many pages long
+     * takes no longer to lay out than that of a short one.
+     *
+     * @param text The section.
+     * @return The first {@link #PREVIEW_LINES} lines, at most {@link #PREVIEW_CHARACTERS}
+     * characters of them, and how many more lines there are.
+     */
+    private String previewText(String text)
+    {
+        text = text.trim();
+        int end = -1;
+        for (int line = 0; line < PREVIEW_LINES && end < text.length(); line++)
+        {
+            end = text.indexOf('\n', end + 1);
+            if (end < 0) end = text.length();
+        }
+        end = Math.min(end, PREVIEW_CHARACTERS);
+        if (end >= text.length()) return text;
+        int more = 1;
+        for (int i = end + 1; i < text.length(); i++)
+        {
+            if (text.charAt(i) == '\n') more++;
+        }
+        return text.substring(0, end) + "\n" + getString(R.string.preview_more, more);
+    }
+
     /**
      * Initiates the process of selecting an image from the device's gallery
      * to extract text. It saves the current text from the input field
@@ -0,0 +1,171 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.content.Context;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Remembers what an export of only the changes to the recipe book needs to know: when the book
+ * was last backed up, and which recipes have been deleted since.
+ * <p>
+ * Recipes carry their own modified times, so only deletions need to be recorded here. Each
+ * deletion is kept until an export that includes it has finished. Only exports that can be
+ * imported again exactly, a full JSON Lines export or an export of changes, count as backups.
+ * <p>
+ * The log is saved in private storage and replaced only once a new copy is complete.
+ * Its methods may be called from any thread.
+ */
+public class ChangeLog
+{
+    public static final String FILE_NAME = "ChangeLog.json";
+    private static final ChangeLog theInstance = new ChangeLog();
+
+    private State state = null;
+
+    /**
+     * What is saved.
+     */
+    private static class State
+    {
+        long lastExport = 0;
+        ArrayList<Deletion> deletions = new ArrayList<>();
+    }
+
+    /**
+     * A deleted recipe.
+     */
+    private static class Deletion
+    {
+        String id;
+        long time;
+
+        Deletion(String id, long time)
+        {
+            this.id = id;
+            this.time = time;
+        }
+    }
+
+    private ChangeLog()
+    {
+    }
+
+    public static ChangeLog getInstance()
+    {
+        return theInstance;
+    }
+
+    /**
+     * Gets the saved state, reading it the first time.
+     */
+    private State state(Context ctx)
+    {
+        if (state != null) return state;
+        File file = new File(ctx.getFilesDir(), FILE_NAME);
+        if (file.exists())
+        {
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+            {
+                state = new Gson().fromJson(reader, State.class);
+            } catch (Exception e)
+            {
+            }
+        }
+        if (state == null) state = new State();
+        if (state.deletions == null) state.deletions = new ArrayList<>();
+        return state;
+    }
+
+    /**
+     * Writes the state, replacing the previous copy only once the new one is complete.
+     */
+    private void write(Context ctx)
+    {
+        File file = new File(ctx.getFilesDir(), FILE_NAME);
+        File temp = new File(ctx.getFilesDir(), FILE_NAME + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temp))
+        {
+            outputStream.write(new Gson().toJson(state).getBytes(StandardCharsets.UTF_8));
+            outputStream.getFD().sync();
+        } catch (Exception e)
+        {
+            return;
+        }
+        temp.renameTo(file);
+    }
+
+    /**
+     * Records that recipes have been deleted.
+     *
+     * @param ctx  The application context.
+     * @param ids  The {@link Recipe#getId() ids} of the deleted recipes.
+     * @param time When they were deleted.
+     */
+    public synchronized void recordDeletions(Context ctx, Collection<String> ids, long time)
+    {
+        if (ids.isEmpty()) return;
+        State state = state(ctx);
+        for (String id : ids)
+        {
+            state.deletions.add(new Deletion(id, time));
+        }
+        write(ctx);
+    }
+
+    /**
+     * Gets when the book was last backed up.
+     *
+     * @param ctx The application context.
+     * @return The time the last backup was taken at, or 0 if there hasn't been one.
+     */
+    public synchronized long getLastExport(Context ctx)
+    {
+        return state(ctx).lastExport;
+    }
+
+    /**
+     * Gets the recipes deleted since a time.
+     *
+     * @param ctx   The application context.
+     * @param since The time.
+     * @return The ids of the recipes deleted at or after the time.
+     */
+    public synchronized List<String> getDeletionsSince(Context ctx, long since)
+    {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Deletion deletion : state(ctx).deletions)
+        {
+            if (deletion.time >= since) ids.add(deletion.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Records that a backup has been written, and forgets the deletions it includes.
+     *
+     * @param ctx   The application context.
+     * @param until The time the backup's recipes were taken at.
+     */
+    public synchronized void exportFinished(Context ctx, long until)
+    {
+        State state = state(ctx);
+        state.lastExport = until;
+        ArrayList<Deletion> remaining = new ArrayList<>();
+        for (Deletion deletion : state.deletions)
+        {
+            if (deletion.time >= until) remaining.add(deletion);
+        }
+        state.deletions = remaining;
+        write(ctx);
+    }
+}
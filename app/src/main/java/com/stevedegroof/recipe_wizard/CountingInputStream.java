@@ -0,0 +1,53 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream, so an import can report progress against the size of
+ * a file while something else does the reading.
+ */
+class CountingInputStream extends FilterInputStream
+{
+    private volatile long count = 0;
+
+    CountingInputStream(InputStream in)
+    {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        int b = super.read();
+        if (b >= 0) count++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int n = super.read(b, off, len);
+        if (n > 0) count += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+
+    /**
+     * Gets the number of bytes read so far. Safe to call from any thread.
+     *
+     * @return The number of bytes read.
+     */
+    long getCount()
+    {
+        return count;
+    }
+}
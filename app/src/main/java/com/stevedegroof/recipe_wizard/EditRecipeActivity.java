@@ -261,7 +261,7 @@ public class EditRecipeActivity extends AppCompatActivity
                 .setPositiveButton(android.R.string.yes, (dialog, which) ->
                 {
                     Recipes recipes = Recipes.getInstance();
-                    recipes.getList().remove(recipeToEdit);
+                    recipes.remove(recipeToEdit);
                     recipes.save(getApplicationContext());
                     navigateToMainActivity();
                 })
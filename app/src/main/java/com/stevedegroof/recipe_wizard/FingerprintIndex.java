@@ -0,0 +1,168 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A set of recipes keyed on their {@link RecipeFingerprint}, for telling in constant time
+ * whether a recipe duplicates one already in the set.
+ * <p>
+ * The recipe book keeps one of these up to date as recipes are added and removed (see
+ * {@link Recipes#getFingerprintIndex()}), so a merge import only has to look up the recipes
+ * being imported rather than re-examining the whole book. Fingerprints are saved with the
+ * recipes, so building the index after the book is loaded only fills a hash map.
+ * <p>
+ * Every recipe added is filed, duplicates included, under the fingerprint it had when it was
+ * added, so any recipe can be removed again even after its content has changed. The first
+ * recipe filed under a fingerprint is kept on its own; any more, whether duplicates or
+ * recipes whose fingerprints collide, are kept in a list for that fingerprint.
+ */
+public class FingerprintIndex
+{
+    private final HashMap<Long, Recipe> byFingerprint = new HashMap<>();
+    private final HashMap<Long, ArrayList<Recipe>> more = new HashMap<>();
+    private final IdentityHashMap<Recipe, Long> filed = new IdentityHashMap<>();
+
+    /**
+     * Empties the index and adds a list of recipes to it.
+     *
+     * @param recipes The recipes.
+     */
+    public void rebuild(List<Recipe> recipes)
+    {
+        clear();
+        for (Recipe recipe : recipes)
+        {
+            add(recipe);
+        }
+    }
+
+    /**
+     * Brings the index up to date with a list of recipes it was built from, after recipes in the
+     * list may have been edited or added to it directly. Recipes whose fingerprint has changed
+     * since they were filed, and recipes that aren't in the index, are filed again; the
+     * fingerprints of the others are cached, so this is one hash lookup per recipe. Recipes
+     * removed from the list directly are not found.
+     *
+     * @param recipes The recipes.
+     * @return True if the index now holds just the recipes in the list; false if recipes were
+     * removed from the list without being removed from the index, and it needs rebuilding.
+     */
+    public boolean update(List<Recipe> recipes)
+    {
+        for (Recipe recipe : recipes)
+        {
+            Long fingerprint = filed.get(recipe);
+            if (fingerprint == null || fingerprint != RecipeFingerprint.of(recipe))
+            {
+                remove(recipe);
+                add(recipe);
+            }
+        }
+        return filed.size() == recipes.size();
+    }
+
+    /**
+     * Empties the index.
+     */
+    public void clear()
+    {
+        byFingerprint.clear();
+        more.clear();
+        filed.clear();
+    }
+
+    /**
+     * Gets the number of recipes in the index.
+     *
+     * @return The number of recipes, duplicates included.
+     */
+    public int size()
+    {
+        return filed.size();
+    }
+
+    /**
+     * Checks whether a recipe duplicates one in the index.
+     *
+     * @param recipe The recipe.
+     * @return True if another recipe with the same content is in the index.
+     */
+    public boolean contains(Recipe recipe)
+    {
+        long fingerprint = RecipeFingerprint.of(recipe);
+        Recipe existing = byFingerprint.get(fingerprint);
+        if (existing == null) return false;
+        if (existing != recipe && RecipeFingerprint.sameContent(existing, recipe)) return true;
+        ArrayList<Recipe> others = more.get(fingerprint);
+        if (others == null) return false;
+        for (Recipe other : others)
+        {
+            if (other != recipe && RecipeFingerprint.sameContent(other, recipe)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds a recipe to the index.
+     *
+     * @param recipe The recipe.
+     * @return True if the recipe is new; false if it duplicates one already there.
+     */
+    public boolean add(Recipe recipe)
+    {
+        if (filed.containsKey(recipe)) return false;
+        boolean duplicate = contains(recipe);
+        long fingerprint = RecipeFingerprint.of(recipe);
+        filed.put(recipe, fingerprint);
+        Recipe existing = byFingerprint.get(fingerprint);
+        if (existing == null)
+        {
+            byFingerprint.put(fingerprint, recipe);
+        } else
+        {
+            ArrayList<Recipe> others = more.get(fingerprint);
+            if (others == null)
+            {
+                others = new ArrayList<>(1);
+                more.put(fingerprint, others);
+            }
+            others.add(recipe);
+        }
+        return !duplicate;
+    }
+
+    /**
+     * Removes a recipe from the index, if it is there.
+     *
+     * @param recipe The recipe.
+     */
+    public void remove(Recipe recipe)
+    {
+        Long fingerprint = filed.remove(recipe);
+        if (fingerprint == null) return;
+        ArrayList<Recipe> others = more.get(fingerprint);
+        if (byFingerprint.get(fingerprint) == recipe)
+        {
+            if (others == null)
+            {
+                byFingerprint.remove(fingerprint);
+                return;
+            }
+            byFingerprint.put(fingerprint, others.remove(others.size() - 1));
+        } else if (others != null)
+        {
+            for (int i = 0; i < others.size(); i++)
+            {
+                if (others.get(i) == recipe)
+                {
+                    others.remove(i);
+                    break;
+                }
+            }
+        }
+        if (others != null && others.isEmpty()) more.remove(fingerprint);
+    }
+}
@@ -0,0 +1,61 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Reads the schema.org recipes embedded in a saved web page, for an {@link ImportPipeline}.
+ * Each JSON-LD block found by {@link JsonLdExtractor} is passed on whole, to be mapped onto
+ * recipes by {@link SchemaRecipeMapper} on a pipeline worker.
+ */
+public class HtmlRecipeSource implements ImportPipeline.ChunkSource, Closeable
+{
+    private final Reader reader;
+    private final JsonLdExtractor extractor;
+
+    /**
+     * Creates a source.
+     *
+     * @param inputStream The page, in UTF-8. It is closed when the source is closed.
+     */
+    public HtmlRecipeSource(InputStream inputStream)
+    {
+        reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        extractor = new JsonLdExtractor(reader);
+    }
+
+    /**
+     * Checks whether a file name is that of a web page.
+     *
+     * @param fileName The file name.
+     * @return True for {@code .html} and {@code .htm} files.
+     */
+    public static boolean isHtmlFile(String fileName)
+    {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        return name.endsWith(".html") || name.endsWith(".htm");
+    }
+
+    @Override
+    public String next() throws IOException
+    {
+        return extractor.next();
+    }
+
+    @Override
+    public int getFormat()
+    {
+        return ImportFormat.HTML;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
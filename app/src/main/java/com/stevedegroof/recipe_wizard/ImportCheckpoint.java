@@ -0,0 +1,166 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.content.Context;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Records how far an import has got, so an import interrupted by the app being killed can carry
+ * on from where it left off instead of starting over.
+ * <p>
+ * At intervals the importer commits a checkpoint: the byte offset in the file just after the
+ * last recipe added, the number of recipes added, and the
+ * {@link Recipes#getNextGeneration() generation} the recipe book will have once they are saved.
+ * Committing is done in two steps around saving the recipes. The new values are first written
+ * as pending, then the recipes are saved, then the pending values become the committed ones.
+ * If the app dies in between, {@link #resolve(long)} compares the generation written into the
+ * saved book with the pending one to tell whether the save happened. Either way the import
+ * resumes from the offset that matches the saved recipes, so no recipe is added twice and none
+ * is lost.
+ */
+public class ImportCheckpoint
+{
+    public static final String FILE_NAME = "ImportCheckpoint.json";
+    public static final long INTERVAL_MS = 10000;
+
+    private String uri;
+    private int importMode;
+    private long fileSize;
+    private long offset = 0;
+    private int recipeCount = 0;
+    private long pendingOffset = -1;
+    private int pendingRecipeCount = 0;
+    private long pendingGeneration = 0;
+
+    /**
+     * Creates a checkpoint for the start of an import.
+     *
+     * @param uri        The file being imported.
+     * @param importMode How the recipes are being added, one of the MainActivity import modes.
+     * @param fileSize   The size of the file in bytes.
+     */
+    public ImportCheckpoint(String uri, int importMode, long fileSize)
+    {
+        this.uri = uri;
+        this.importMode = importMode;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Loads the checkpoint of an interrupted import.
+     *
+     * @param ctx The application context.
+     * @return The checkpoint, or null if there is no interrupted import.
+     */
+    public static ImportCheckpoint load(Context ctx)
+    {
+        File file = new File(ctx.getFilesDir(), FILE_NAME);
+        if (!file.exists()) return null;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))
+        {
+            return new Gson().fromJson(reader, ImportCheckpoint.class);
+        } catch (Exception e)
+        {
+        }
+        return null;
+    }
+
+    /**
+     * Removes the checkpoint, once the import is complete or abandoned.
+     *
+     * @param ctx The application context.
+     */
+    public static void clear(Context ctx)
+    {
+        File file = new File(ctx.getFilesDir(), FILE_NAME);
+        if (file.exists()) file.delete();
+    }
+
+    /**
+     * Writes the checkpoint, replacing the previous one only once the new one is complete.
+     *
+     * @param ctx The application context.
+     */
+    public void write(Context ctx)
+    {
+        File file = new File(ctx.getFilesDir(), FILE_NAME);
+        File temp = new File(ctx.getFilesDir(), FILE_NAME + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(temp))
+        {
+            outputStream.write(new Gson().toJson(this).getBytes(StandardCharsets.UTF_8));
+            outputStream.getFD().sync();
+        } catch (Exception e)
+        {
+            return;
+        }
+        temp.renameTo(file);
+    }
+
+    /**
+     * Saves the recipes imported so far and moves the checkpoint past them.
+     *
+     * @param ctx         The application context.
+     * @param recipes     The recipe book, including the recipes imported so far.
+     * @param offset      The byte offset just after the last recipe imported.
+     * @param recipeCount The number of recipes imported so far.
+     */
+    public void commit(Context ctx, Recipes recipes, long offset, int recipeCount)
+    {
+        pendingOffset = offset;
+        pendingRecipeCount = recipeCount;
+        pendingGeneration = recipes.getNextGeneration();
+        write(ctx);
+        recipes.save(ctx);
+        this.offset = offset;
+        this.recipeCount = recipeCount;
+        pendingOffset = -1;
+        write(ctx);
+    }
+
+    /**
+     * Settles a commit that was interrupted, given the recipe book as it was saved.
+     *
+     * @param generation The {@link Recipes#getGeneration() generation} of the saved recipe book.
+     */
+    public void resolve(long generation)
+    {
+        if (pendingOffset >= 0 && generation == pendingGeneration)
+        {
+            offset = pendingOffset;
+            recipeCount = pendingRecipeCount;
+        }
+        pendingOffset = -1;
+    }
+
+    public String getUri()
+    {
+        return uri;
+    }
+
+    public int getImportMode()
+    {
+        return importMode;
+    }
+
+    public long getFileSize()
+    {
+        return fileSize;
+    }
+
+    public long getOffset()
+    {
+        return offset;
+    }
+
+    public int getRecipeCount()
+    {
+        return recipeCount;
+    }
+}
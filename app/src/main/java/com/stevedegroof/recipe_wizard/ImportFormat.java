@@ -0,0 +1,158 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The kinds of file recipes can be imported from, and how to tell them apart.
+ * <p>
+ * The format is decided by sniffing the first {@link #SNIFF_LENGTH} bytes of the file, so it
+ * doesn't matter what the file is called. Each format is recognised by the marks its files
+ * always carry near the start:
+ * <ul>
+ *     <li>{@link #ZIP}: the ZIP local file header, {@code PK\3\4}.</li>
+ *     <li>{@link #HTML}: a doctype, {@code <html>} or {@code <head>} tag.</li>
+ *     <li>{@link #MEAL_MASTER}: a {@code MMMMM----- Recipe via Meal-Master} or
+ *     {@code ---------- Recipe via Meal-Master} header.</li>
+ *     <li>{@link #MASTER_COOK}: the {@code Exported from MasterCook} banner.</li>
+ *     <li>{@link #JSON_LINES}: a JSON object with a {@code title} field as the first line, as
+ *     written by {@link RecipeJsonLines}.</li>
+ *     <li>{@link #DELTA}: a JSON object with a {@code delta} field as the first line, the
+ *     header of a {@link RecipeDelta}.</li>
+ *     <li>{@link #RECIPE_BOOK}: anything else is read as a recipe book of plain text recipes
+ *     separated by {@link MainActivity#RECIPE_BREAK} lines.</li>
+ * </ul>
+ */
+public class ImportFormat
+{
+    public static final int RECIPE_BOOK = 0;
+    public static final int HTML = 1;
+    public static final int MEAL_MASTER = 2;
+    public static final int MASTER_COOK = 3;
+    public static final int ZIP = 4;
+    public static final int JSON_LINES = 5;
+    public static final int DELTA = 6;
+    public static final int SNIFF_LENGTH = 4096;
+
+    private ImportFormat()
+    {
+    }
+
+    /**
+     * Reads the start of a stream without consuming it.
+     *
+     * @param inputStream The stream; it must support {@link InputStream#mark(int)}.
+     * @return Up to {@link #SNIFF_LENGTH} bytes from the start of the stream.
+     * @throws IOException If the stream cannot be read.
+     */
+    static byte[] head(InputStream inputStream) throws IOException
+    {
+        inputStream.mark(SNIFF_LENGTH);
+        byte[] start = new byte[SNIFF_LENGTH];
+        int read = 0;
+        try
+        {
+            while (read < start.length)
+            {
+                int n = inputStream.read(start, read, start.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+        } finally
+        {
+            inputStream.reset();
+        }
+        byte[] head = new byte[read];
+        System.arraycopy(start, 0, head, 0, read);
+        return head;
+    }
+
+    /**
+     * Works out the format of a file from its first few KB.
+     *
+     * @param inputStream The file; it must support {@link InputStream#mark(int)}. Nothing is consumed.
+     * @return One of the format constants.
+     * @throws IOException If the file cannot be read.
+     */
+    public static int detect(InputStream inputStream) throws IOException
+    {
+        return detect(head(inputStream));
+    }
+
+    /**
+     * Works out the format of a file from its first few KB.
+     *
+     * @param head The start of the file.
+     * @return One of the format constants.
+     */
+    static int detect(byte[] head)
+    {
+        if (head.length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4) return ZIP;
+        String text = new String(head, StandardCharsets.ISO_8859_1);
+        if (text.contains("MMMMM----- Recipe via Meal-Master") || text.contains("---------- Recipe via Meal-Master")) return MEAL_MASTER;
+        if (text.contains("Exported from  MasterCook") || text.contains("Exported from MasterCook")) return MASTER_COOK;
+        String firstLine = firstJsonLine(text);
+        if (firstLine.contains("\"" + RecipeDelta.HEADER_KEY + "\"")) return DELTA;
+        if (firstLine.contains("\"title\"")) return JSON_LINES;
+        String lower = text.toLowerCase(Locale.ROOT);
+        if (lower.contains("<!doctype html") || lower.contains("<html") || lower.contains("<head")) return HTML;
+        return RECIPE_BOOK;
+    }
+
+    /**
+     * Gets the first line of text that starts with a JSON object.
+     *
+     * @return The line, or an empty string if the text doesn't start with a JSON object.
+     */
+    private static String firstJsonLine(String text)
+    {
+        int start = 0;
+        if (text.startsWith("\u00EF\u00BB\u00BF")) start = 3;
+        while (start < text.length() && Character.isWhitespace(text.charAt(start))) start++;
+        if (start >= text.length() || text.charAt(start) != '{') return "";
+        int end = text.indexOf('\n', start);
+        return end < 0 ? text.substring(start) : text.substring(start, end);
+    }
+
+    /**
+     * Picks the character set to read a legacy recipe file with. Older files are often in a
+     * single-byte code page rather than UTF-8, so UTF-8 is used only if the start of the file is
+     * valid UTF-8. A character cut off at the end of the sample doesn't count against it.
+     *
+     * @param inputStream The file; it must support {@link InputStream#mark(int)}. Nothing is consumed.
+     * @return The character set.
+     * @throws IOException If the file cannot be read.
+     */
+    public static Charset legacyCharset(InputStream inputStream) throws IOException
+    {
+        byte[] head = head(inputStream);
+        int length = head.length;
+        if (length == SNIFF_LENGTH)
+        {
+            int back = 0;
+            while (back < 3 && length > 0 && (head[length - 1] & 0xC0) == 0x80)
+            {
+                length--;
+                back++;
+            }
+            if (length > 0 && (head[length - 1] & 0x80) != 0) length--;
+        }
+        try
+        {
+            StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(head, 0, length));
+            return StandardCharsets.UTF_8;
+        } catch (CharacterCodingException e)
+        {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Parses the recipes of an import in parallel while keeping them in file order.
+ * <p>
+ * The pipeline has three stages joined by bounded queues:
+ * <ol>
+ *     <li>A reader thread pulls recipe text from a {@link ChunkSource} and numbers it.</li>
+ *     <li>Parser workers, one per core by default, turn recipe text into {@link Recipe} objects
+ *     with {@link RecipeParser#parse(String, boolean)}, which keeps a parser for each worker.
+ *     JSON-LD from web pages is mapped by {@link SchemaRecipeMapper} instead, and may hold any
+ *     number of recipes. MealMaster and MasterCook recipes are read by a
+ *     {@link LegacyRecipeParser} for their format, and JSON Lines exports by
+ *     {@link RecipeJsonLines} without any guessing.</li>
+ *     <li>The collector, running on the calling thread, hands recipes to a {@link RecipeSink}
+ *     strictly in the order they were read, holding back any that finish early.</li>
+ * </ol>
+ * At most {@link #MAX_IN_FLIGHT} recipes are between the reader and the collector at any time,
+ * so a slow recipe holds up the reader rather than letting finished recipes pile up, and memory
+ * stays bounded however large the import is.
+ */
+public class ImportPipeline
+{
+    public static final int MAX_IN_FLIGHT = 256;
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final int workerCount;
+
+    /**
+     * Supplies the text of one recipe at a time.
+     */
+    public interface ChunkSource
+    {
+        /**
+         * Gets the next recipe's text.
+         *
+         * @return The text, or null when there are no more recipes.
+         * @throws IOException If the import cannot be read.
+         */
+        String next() throws IOException;
+
+        /**
+         * Gets where the source is, such as a byte offset, just after the text last returned by
+         * {@link #next()}. Called on the same thread as {@link #next()}.
+         *
+         * @return The position, or 0 if the source doesn't track one.
+         */
+        default long getPosition()
+        {
+            return 0;
+        }
+
+        /**
+         * Tells what format the text last returned by {@link #next()} is in: a recipe
+         * ({@link ImportFormat#RECIPE_BOOK}), a JSON-LD block from a web page ({@link ImportFormat#HTML}),
+         * or a MealMaster or MasterCook recipe. Called on the same thread as {@link #next()}.
+         *
+         * @return One of the {@link ImportFormat} constants.
+         */
+        default int getFormat()
+        {
+            return ImportFormat.RECIPE_BOOK;
+        }
+    }
+
+    /**
+     * Receives parsed recipes in import order. Called on the thread running the pipeline.
+     */
+    public interface RecipeSink
+    {
+        /**
+         * Accepts the next recipe.
+         *
+         * @param recipe   The recipe.
+         * @param position The source's position just after this recipe, from {@link ChunkSource#getPosition()}.
+         *                 Every recipe before this position has been delivered or failed to parse.
+         */
+        void accept(Recipe recipe, long position);
+
+        /**
+         * Told that a recipe could not be read and was skipped, in its place among the recipes
+         * delivered to {@link #accept(Recipe, long)}.
+         *
+         * @param position The source's position just after the recipe.
+         */
+        default void skip(long position)
+        {
+        }
+    }
+
+    /**
+     * A numbered piece of work passed between stages. A null chunk marks the end of the input.
+     * Parsed items carry their recipes, or null recipes if the text could not be read.
+     */
+    private static class Item
+    {
+        final long sequence;
+        final long position;
+        final String chunk;
+        final int format;
+        final List<Recipe> recipes;
+
+        Item(long sequence, long position, String chunk, int format, List<Recipe> recipes)
+        {
+            this.sequence = sequence;
+            this.position = position;
+            this.chunk = chunk;
+            this.format = format;
+            this.recipes = recipes;
+        }
+    }
+
+    /**
+     * Creates a pipeline with one parser worker per available core.
+     */
+    public ImportPipeline()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param workerCount The number of parser workers.
+     */
+    public ImportPipeline(int workerCount)
+    {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * Runs the pipeline to completion. Recipes that fail to parse with a
+     * {@link RuntimeException} are skipped, and the sink is told of each one. An {@link Error}
+     * in a parser worker, such as running out of memory, stops the pipeline and is thrown again
+     * here.
+     *
+     * @param source Where to read recipe text from.
+     * @param sink   Where to deliver parsed recipes, in order.
+     * @return The number of recipes delivered.
+     * @throws IOException          If the source fails. Recipes read before the failure are still delivered.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public int run(ChunkSource source, RecipeSink sink) throws IOException, InterruptedException
+    {
+        BlockingQueue<Item> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Item> results = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        IOException[] readError = new IOException[1];
+        Error[] parseError = new Error[1];
+
+        Thread reader = new Thread(() ->
+        {
+            long sequence = 0;
+            try
+            {
+                String chunk;
+                while ((chunk = source.next()) != null)
+                {
+                    inFlight.acquire();
+                    chunks.put(new Item(sequence++, source.getPosition(), chunk, source.getFormat(), null));
+                }
+            } catch (IOException e)
+            {
+                readError[0] = e;
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            } finally
+            {
+                for (int i = 0; i < workerCount; i++)
+                {
+                    try
+                    {
+                        chunks.put(new Item(-1, 0, null, ImportFormat.RECIPE_BOOK, null));
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }, "import-reader");
+
+        Thread[] workers = new Thread[workerCount];
+        for (int w = 0; w < workerCount; w++)
+        {
+            workers[w] = new Thread(() ->
+            {
+                LegacyRecipeParser mealMaster = new LegacyRecipeParser(ImportFormat.MEAL_MASTER);
+                LegacyRecipeParser masterCook = new LegacyRecipeParser(ImportFormat.MASTER_COOK);
+                try
+                {
+                    while (true)
+                    {
+                        Item item = chunks.take();
+                        if (item.chunk == null)
+                        {
+                            results.put(item);
+                            return;
+                        }
+                        List<Recipe> recipes;
+                        try
+                        {
+                            switch (item.format)
+                            {
+                                case ImportFormat.HTML:
+                                    recipes = SchemaRecipeMapper.toRecipes(item.chunk);
+                                    break;
+                                case ImportFormat.MEAL_MASTER:
+                                    recipes = Collections.singletonList(mealMaster.parse(item.chunk));
+                                    break;
+                                case ImportFormat.MASTER_COOK:
+                                    recipes = Collections.singletonList(masterCook.parse(item.chunk));
+                                    break;
+                                case ImportFormat.JSON_LINES:
+                                    Recipe recipe = RecipeJsonLines.parse(item.chunk);
+                                    recipes = recipe == null ? null : Collections.singletonList(recipe);
+                                    break;
+                                default:
+                                    recipes = Collections.singletonList(RecipeParser.parse(item.chunk, true).toRecipe());
+                                    break;
+                            }
+                        } catch (RuntimeException e)
+                        {
+                            recipes = null;
+                        }
+                        results.put(new Item(item.sequence, item.position, null, item.format, recipes));
+                    }
+                } catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                } catch (Error e)
+                {
+                    parseError[0] = e;
+                    try
+                    {
+                        results.put(new Item(-1, 0, null, ImportFormat.RECIPE_BOOK, null));
+                    } catch (InterruptedException interrupted)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "import-parser-" + w);
+        }
+
+        reader.start();
+        for (Thread worker : workers)
+        {
+            worker.start();
+        }
+
+        int delivered = 0;
+        try
+        {
+            HashMap<Long, Item> waiting = new HashMap<>();
+            long nextSequence = 0;
+            int finishedWorkers = 0;
+            while (finishedWorkers < workerCount)
+            {
+                Item item = results.take();
+                if (parseError[0] != null) throw parseError[0];
+                if (item.sequence < 0)
+                {
+                    finishedWorkers++;
+                    continue;
+                }
+                waiting.put(item.sequence, item);
+                while ((item = waiting.remove(nextSequence)) != null)
+                {
+                    nextSequence++;
+                    inFlight.release();
+                    if (item.recipes == null)
+                    {
+                        sink.skip(item.position);
+                        continue;
+                    }
+                    for (Recipe recipe : item.recipes)
+                    {
+                        sink.accept(recipe, item.position);
+                        delivered++;
+                    }
+                }
+            }
+        } finally
+        {
+            reader.interrupt();
+            for (Thread worker : workers)
+            {
+                worker.interrupt();
+            }
+        }
+        reader.join();
+        if (readError[0] != null) throw readError[0];
+        return delivered;
+    }
+}
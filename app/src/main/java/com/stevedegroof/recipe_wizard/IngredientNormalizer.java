@@ -0,0 +1,375 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Splits ingredient lines into a quantity, a unit and a canonical ingredient name, so that
+ * "2 Tomatoes, diced" and "1 tomato" are recognised as the same ingredient. Units are the ones
+ * in the {@link UnitVocabulary}, named by their canonical names.
+ * <p>
+ * The canonical name is built by removing preparation words (using
+ * {@link UnitsConverter#stripPrep(String)} and {@link UnitsConverter#PREP_WORDS}) and filler
+ * words, folding plurals to the singular and replacing synonyms with one preferred name
+ * (a scallion is a green onion, coriander leaves are cilantro).
+ * <p>
+ * The same word folding is used by the {@link RecipeIndex} when indexing recipes and by
+ * {@link SearchQuery} when parsing queries, so a search for "tomatoes" finds "tomato" and a
+ * search for "scallions" finds "green onions". Ingredient lines repeat a lot across a recipe
+ * book, so normalized lines are memoized.
+ */
+public class IngredientNormalizer
+{
+    private static final IngredientNormalizer theInstance = new IngredientNormalizer();
+    private static final int MAX_CACHED_LINES = 4096;
+    private static final String FRACTION_CHARS = "¼½¾⅓⅔⅛";
+    private static final double[] FRACTION_VALUES = {1d / 4d, 1d / 2d, 3d / 4d, 1d / 3d, 2d / 3d, 1d / 8d};
+
+    private static final HashSet<String> PREP = new HashSet<>();
+    private static final HashSet<String> FILLER = new HashSet<>();
+    private static final HashSet<String> UNINFLECTED = new HashSet<>();
+    private static final HashMap<String, String> IRREGULAR_PLURALS = new HashMap<>();
+    private static final HashMap<String, String> SYNONYMS = new HashMap<>();
+
+    static
+    {
+        for (String prep : UnitsConverter.PREP_WORDS)
+        {
+            if (prep.indexOf(' ') < 0) PREP.add(prep);
+        }
+        addAll(FILLER, "of", "to", "taste", "for", "optional", "about", "plus", "more", "finely",
+                "roughly", "coarsely", "thinly", "freshly", "lightly", "fresh", "large", "medium",
+                "small", "whole", "a", "an", "the");
+        addAll(UNINFLECTED, "molasses", "hummus", "couscous", "asparagus", "swiss", "grits",
+                "citrus", "octopus", "series", "species", "schnapps", "anise", "pancreas");
+        IRREGULAR_PLURALS.put("leaves", "leaf");
+        IRREGULAR_PLURALS.put("halves", "half");
+        IRREGULAR_PLURALS.put("loaves", "loaf");
+        IRREGULAR_PLURALS.put("knives", "knife");
+
+        SYNONYMS.put("green onion", "scallion");
+        SYNONYMS.put("spring onion", "scallion");
+        SYNONYMS.put("coriander", "cilantro");
+        SYNONYMS.put("coriander leaf", "cilantro");
+        SYNONYMS.put("garbanzo", "chickpea");
+        SYNONYMS.put("garbanzo bean", "chickpea");
+        SYNONYMS.put("aubergine", "eggplant");
+        SYNONYMS.put("courgette", "zucchini");
+        SYNONYMS.put("capsicum", "bell pepper");
+        SYNONYMS.put("prawn", "shrimp");
+        SYNONYMS.put("icing sugar", "powdered sugar");
+        SYNONYMS.put("confectioner sugar", "powdered sugar");
+        SYNONYMS.put("rocket", "arugula");
+    }
+
+    private final LinkedHashMap<String, NormalizedIngredient> cache =
+            new LinkedHashMap<String, NormalizedIngredient>(256, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, NormalizedIngredient> eldest)
+                {
+                    return size() > MAX_CACHED_LINES;
+                }
+            };
+
+    private IngredientNormalizer()
+    {
+    }
+
+    public static IngredientNormalizer getInstance()
+    {
+        return theInstance;
+    }
+
+    private static void addAll(HashSet<String> set, String... words)
+    {
+        for (String word : words)
+        {
+            set.add(word);
+        }
+    }
+
+    /**
+     * An ingredient line split into its parts.
+     */
+    public static class NormalizedIngredient
+    {
+        private final double quantity;
+        private final String unit;
+        private final String name;
+
+        NormalizedIngredient(double quantity, String unit, String name)
+        {
+            this.quantity = quantity;
+            this.unit = unit;
+            this.name = name;
+        }
+
+        /**
+         * @return The quantity, or 0 if the line doesn't start with one.
+         */
+        public double getQuantity()
+        {
+            return quantity;
+        }
+
+        /**
+         * @return The canonical unit (e.g. "tbsp", "cup", "g"), or an empty string if there is none.
+         */
+        public String getUnit()
+        {
+            return unit;
+        }
+
+        /**
+         * @return The canonical ingredient name, lower case, with words separated by single spaces.
+         */
+        public String getName()
+        {
+            return name;
+        }
+    }
+
+    /**
+     * Reduces a lower-case word to its singular form.
+     *
+     * @param word The word, in lower case.
+     * @return The singular form; the word itself if it doesn't look plural.
+     */
+    static String singular(String word)
+    {
+        int length = word.length();
+        if (length <= 3 || word.charAt(length - 1) != 's' || UNINFLECTED.contains(word)) return word;
+        String irregular = IRREGULAR_PLURALS.get(word);
+        if (irregular != null) return irregular;
+        if (word.endsWith("ies") && length > 4) return word.substring(0, length - 3) + "y";
+        if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes")
+                || word.endsWith("xes") || word.endsWith("sses") || word.endsWith("zes"))
+        {
+            return word.substring(0, length - 2);
+        }
+        if (word.endsWith("ss") || word.endsWith("us") || word.endsWith("is")) return word;
+        return word.substring(0, length - 1);
+    }
+
+    /**
+     * Folds a single lower-case word to the form used for searching: singular, with single-word
+     * synonyms replaced.
+     *
+     * @param word The word, in lower case.
+     * @return The folded word; the word itself if nothing changed.
+     */
+    static String foldWord(String word)
+    {
+        String folded = singular(word);
+        String synonym = SYNONYMS.get(folded);
+        return synonym == null || synonym.indexOf(' ') >= 0 ? folded : synonym;
+    }
+
+    /**
+     * Looks up the preferred name for a pair of words, such as "green onion".
+     *
+     * @param first  The first word, in lower case and {@link #singular(String) singular}.
+     * @param second The second word, in lower case and singular.
+     * @return The preferred name, or null if the pair isn't a known synonym.
+     */
+    static String synonymFor(String first, String second)
+    {
+        return SYNONYMS.get(first + " " + second);
+    }
+
+    /**
+     * Normalizes an ingredient line. Results are memoized.
+     *
+     * @param line The ingredient line, e.g. "1 1/2 cups tomatoes, diced".
+     * @return The quantity, unit and canonical name of the ingredient.
+     */
+    public NormalizedIngredient normalize(String line)
+    {
+        synchronized (cache)
+        {
+            NormalizedIngredient cached = cache.get(line);
+            if (cached != null) return cached;
+        }
+        NormalizedIngredient result = parse(line);
+        synchronized (cache)
+        {
+            cache.put(line, result);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the canonical name of an ingredient, e.g. for matching a search term against
+     * {@link NormalizedIngredient#getName()}. Any quantity or unit is ignored.
+     *
+     * @param text The ingredient text.
+     * @return The canonical name.
+     */
+    public String canonicalName(String text)
+    {
+        return normalize(text).getName();
+    }
+
+    /**
+     * Splits an ingredient line into quantity, unit and canonical name.
+     * The quantity and unit are scanned by hand from the start of the line.
+     *
+     * @param line The ingredient line.
+     * @return The parts of the line.
+     */
+    private static NormalizedIngredient parse(String line)
+    {
+        int length = line.length();
+        int i = 0;
+        while (i < length && !Character.isLetterOrDigit(line.charAt(i)) && FRACTION_CHARS.indexOf(line.charAt(i)) < 0) i++;
+
+        double quantity = 0d;
+        boolean range = false;
+        while (i < length)
+        {
+            int start = i;
+            double part = 0d;
+            boolean digits = false;
+            while (i < length && Character.isDigit(line.charAt(i)))
+            {
+                part = part * 10 + (line.charAt(i) - '0');
+                digits = true;
+                i++;
+            }
+            if (digits && i + 1 < length && line.charAt(i) == '.' && Character.isDigit(line.charAt(i + 1)))
+            {
+                i++;
+                double scale = 0.1d;
+                while (i < length && Character.isDigit(line.charAt(i)))
+                {
+                    part += (line.charAt(i) - '0') * scale;
+                    scale /= 10d;
+                    i++;
+                }
+            } else if (digits && i + 1 < length && line.charAt(i) == '/' && Character.isDigit(line.charAt(i + 1)))
+            {
+                i++;
+                int denominator = 0;
+                while (i < length && Character.isDigit(line.charAt(i)))
+                {
+                    denominator = denominator * 10 + (line.charAt(i) - '0');
+                    i++;
+                }
+                part = denominator == 0 ? 0d : part / denominator;
+            }
+            if (i < length && FRACTION_CHARS.indexOf(line.charAt(i)) >= 0)
+            {
+                part += FRACTION_VALUES[FRACTION_CHARS.indexOf(line.charAt(i))];
+                digits = true;
+                i++;
+            }
+            if (!digits)
+            {
+                i = start;
+                break;
+            }
+            if (!range) quantity += part;
+            int next = i;
+            if (next < length && line.charAt(next) == '-')
+            {
+                range = true;
+                next++;
+            }
+            while (next < length && line.charAt(next) == ' ') next++;
+            if (next < length && (Character.isDigit(line.charAt(next)) || FRACTION_CHARS.indexOf(line.charAt(next)) >= 0))
+            {
+                i = next;
+            } else
+            {
+                break;
+            }
+        }
+
+        while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+        if (i < length && line.charAt(i) == '(' && line.indexOf(')', i) > 0)
+        {
+            i = line.indexOf(')', i) + 1;
+            while (i < length && Character.isWhitespace(line.charAt(i))) i++;
+        }
+        String unit = "";
+        int wordEnd = i;
+        while (wordEnd < length && !Character.isWhitespace(line.charAt(wordEnd))) wordEnd++;
+        if (wordEnd > i)
+        {
+            String word = line.substring(i, wordEnd);
+            UnitVocabulary.Unit known = UnitVocabulary.lookup(word);
+            if (known != null && (word.length() > 1 || quantity > 0))
+            {
+                unit = known.getName();
+                i = wordEnd;
+            } else if (word.equalsIgnoreCase("fl") || word.equalsIgnoreCase("fl."))
+            {
+                int ozStart = wordEnd;
+                while (ozStart < length && Character.isWhitespace(line.charAt(ozStart))) ozStart++;
+                if (line.regionMatches(true, ozStart, "oz", 0, 2))
+                {
+                    unit = "fl oz";
+                    i = ozStart + 2;
+                    if (i < length && line.charAt(i) == '.') i++;
+                }
+            }
+        }
+        return new NormalizedIngredient(quantity, unit, canonicalizeName(line.substring(i)));
+    }
+
+    /**
+     * Builds the canonical name from the part of an ingredient line after the quantity and unit.
+     *
+     * @param text The ingredient name as written, e.g. "Tomatoes, diced (optional)".
+     * @return The canonical name, e.g. "tomato".
+     */
+    private static String canonicalizeName(String text)
+    {
+        String stripped = UnitsConverter.stripPrep(text);
+        ArrayList<String> words = new ArrayList<>();
+        String previous = null;
+        int length = stripped.length();
+        int depth = 0;
+        int i = 0;
+        while (i < length)
+        {
+            char c = stripped.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')' && depth > 0) depth--;
+            if (!Character.isLetter(c) || depth > 0)
+            {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < length && Character.isLetter(stripped.charAt(i))) i++;
+            String word = stripped.substring(start, i).toLowerCase();
+            if (PREP.contains(word) || FILLER.contains(word)) continue;
+            if (word.equals("room") && stripped.startsWith(" temperature", i)) continue;
+            if (word.equals("temperature") && stripped.regionMatches(true, start - 5, "room ", 0, 5)) continue;
+            String singular = singular(word);
+            String synonym = previous == null ? null : synonymFor(previous, singular);
+            if (synonym != null)
+            {
+                words.remove(words.size() - 1);
+            } else
+            {
+                synonym = SYNONYMS.get(singular);
+            }
+            words.add(synonym != null ? synonym : singular);
+            previous = singular;
+        }
+        while (!words.isEmpty() && isConjunction(words.get(words.size() - 1))) words.remove(words.size() - 1);
+        while (!words.isEmpty() && isConjunction(words.get(0))) words.remove(0);
+        return String.join(" ", words);
+    }
+
+    private static boolean isConjunction(String word)
+    {
+        return word.equals("and") || word.equals("or");
+    }
+}
@@ -0,0 +1,195 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Locale;
+
+/**
+ * Pulls the JSON-LD blocks out of an HTML page, such as a saved recipe web page.
+ * <p>
+ * The page is read once, front to back, through a small state machine that only understands
+ * as much HTML as it needs to: tags, comments, and the bodies of {@code <script>} elements.
+ * No document tree is built, and apart from the JSON-LD being returned only a single tag's
+ * attributes are ever held in memory, so large pages cost little more than reading them.
+ */
+public class JsonLdExtractor
+{
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String JSON_LD_TYPE = "application/ld+json";
+    private static final String SCRIPT_END = "</script";
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder tag = new StringBuilder();
+    private final StringBuilder script = new StringBuilder();
+    private int position = 0;
+    private int limit = 0;
+
+    /**
+     * Creates an extractor.
+     *
+     * @param reader The page. The caller is responsible for closing it.
+     */
+    public JsonLdExtractor(Reader reader)
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads one character of the page.
+     *
+     * @return The character, or -1 at the end of the page.
+     * @throws IOException If the page cannot be read.
+     */
+    private int read() throws IOException
+    {
+        if (position == limit)
+        {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0)
+            {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Skips ahead to just past the end of an HTML comment.
+     *
+     * @return False if the page ended first.
+     * @throws IOException If the page cannot be read.
+     */
+    private boolean skipComment() throws IOException
+    {
+        int dashes = 0;
+        int c;
+        while ((c = read()) >= 0)
+        {
+            if (c == '>' && dashes >= 2) return true;
+            dashes = c == '-' ? dashes + 1 : 0;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the rest of a tag, up to its closing {@code >}, into {@link #tag}.
+     * Quoted attribute values may contain {@code >}.
+     *
+     * @return False if the page ended first.
+     * @throws IOException If the page cannot be read.
+     */
+    private boolean readTag() throws IOException
+    {
+        tag.setLength(0);
+        char quote = 0;
+        int c;
+        while ((c = read()) >= 0)
+        {
+            if (quote != 0)
+            {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'')
+            {
+                quote = (char) c;
+            } else if (c == '>')
+            {
+                return true;
+            }
+            tag.append((char) c);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the body of a script element, up to its closing tag.
+     *
+     * @param keep Whether to keep the body in {@link #script}, or just skip it.
+     * @return False if the page ended first.
+     * @throws IOException If the page cannot be read.
+     */
+    private boolean readScript(boolean keep) throws IOException
+    {
+        script.setLength(0);
+        int matched = 0;
+        int c;
+        while ((c = read()) >= 0)
+        {
+            if (Character.toLowerCase((char) c) == SCRIPT_END.charAt(matched))
+            {
+                matched++;
+                if (matched == SCRIPT_END.length())
+                {
+                    readTag();
+                    return true;
+                }
+                continue;
+            }
+            if (keep && matched > 0) script.append(SCRIPT_END, 0, matched);
+            matched = 0;
+            if (c == '<')
+            {
+                matched = 1;
+                continue;
+            }
+            if (keep) script.append((char) c);
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the tag just read opens a script element, and if so whether it holds JSON-LD.
+     *
+     * @return 0 if it isn't a script tag, 1 for a script of another type, 2 for JSON-LD.
+     */
+    private int scriptKind()
+    {
+        if (tag.length() < 6 || !tag.substring(0, 6).equalsIgnoreCase("script")) return 0;
+        if (tag.length() > 6 && !Character.isWhitespace(tag.charAt(6)) && tag.charAt(6) != '/') return 0;
+        if (tag.charAt(tag.length() - 1) == '/') return 0;
+        return tag.toString().toLowerCase(Locale.ROOT).contains(JSON_LD_TYPE) ? 2 : 1;
+    }
+
+    /**
+     * Reads up to the next JSON-LD block in the page.
+     *
+     * @return The text of the block, or null when the page has no more.
+     * @throws IOException If the page cannot be read.
+     */
+    public String next() throws IOException
+    {
+        int c;
+        while ((c = read()) >= 0)
+        {
+            if (c != '<') continue;
+            c = read();
+            if (c == '!')
+            {
+                int first = read();
+                int second = first == '-' ? read() : -1;
+                if (first == '-' && second == '-')
+                {
+                    if (!skipComment()) return null;
+                } else if (first != '>' && !readTag())
+                {
+                    return null;
+                }
+                continue;
+            }
+            if (c != 's' && c != 'S')
+            {
+                if (c == '<') position--;
+                continue;
+            }
+            position--;
+            if (!readTag()) return null;
+            int kind = scriptKind();
+            if (kind == 0) continue;
+            if (!readScript(kind == 2)) return null;
+            if (kind == 2) return script.toString();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,63 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a JSON Lines export one line at a time, for an {@link ImportPipeline}.
+ * Lines are only split here; each is turned into a recipe by {@link RecipeJsonLines} on a
+ * pipeline worker, so large files are read in parallel.
+ */
+public class JsonLinesSource implements ImportPipeline.ChunkSource, Closeable
+{
+    private final CountingInputStream counter;
+    private final BufferedReader reader;
+
+    /**
+     * Creates a source.
+     *
+     * @param inputStream The file, in UTF-8. It is closed when the source is closed.
+     */
+    public JsonLinesSource(InputStream inputStream)
+    {
+        counter = new CountingInputStream(inputStream);
+        reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String next() throws IOException
+    {
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            if (!line.trim().isEmpty()) return line;
+        }
+        return null;
+    }
+
+    @Override
+    public int getFormat()
+    {
+        return ImportFormat.JSON_LINES;
+    }
+
+    /**
+     * Gets the number of bytes of the file read so far. Safe to call from any thread.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return counter.getCount();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
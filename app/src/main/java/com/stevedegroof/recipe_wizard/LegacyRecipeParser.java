@@ -0,0 +1,430 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads recipes in the column-based text formats of older recipe programs: MealMaster
+ * ({@link ImportFormat#MEAL_MASTER}) and MasterCook's MXP export ({@link ImportFormat#MASTER_COOK}).
+ * These formats mark their sections in ways {@link RecipeParser}'s heuristics don't expect, such
+ * as headers of dashes and ingredients laid out in fixed columns, two to a line.
+ * <p>
+ * Each recipe is read in a single pass, line by line, driven by tables rather than code:
+ * <ol>
+ *     <li>Each line is classified by the first matching rule in the format's rule table,
+ *     as a header, field, ingredient, section heading, blank, and so on.</li>
+ *     <li>The format's transition table gives the next state (fields, ingredients or directions)
+ *     for the current state and the kind of line.</li>
+ *     <li>The format's action table says what to do with the line in that state: set a field,
+ *     add an ingredient, start a new paragraph of directions, and so on.</li>
+ * </ol>
+ * Supporting another column format means adding tables, not code paths.
+ */
+public class LegacyRecipeParser
+{
+    static final int BLANK = 0;
+    static final int HEADER = 1;
+    static final int END = 2;
+    static final int FIELD = 3;
+    static final int SECTION = 4;
+    static final int INGREDIENT = 5;
+    static final int CONTINUATION = 6;
+    static final int COLUMNS = 7;
+    static final int TEXT = 8;
+    private static final int KINDS = 9;
+
+    private static final int START = 0;
+    private static final int FIELDS = 1;
+    private static final int INGREDIENTS = 2;
+    private static final int DIRECTIONS = 3;
+
+    private static final int SKIP = 0;
+    private static final int SET_FIELD = 1;
+    private static final int SET_TITLE = 2;
+    private static final int ADD_INGREDIENT = 3;
+    private static final int CONTINUE_INGREDIENT = 4;
+    private static final int ADD_HEADING = 5;
+    private static final int ADD_DIRECTION = 6;
+    private static final int BREAK_DIRECTION = 7;
+
+    private static final String DEFAULT_SERVINGS = "4";
+    private static final int MEAL_MASTER_SECOND_COLUMN = 41;
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+    private static final Pattern FIELD_LINE = Pattern.compile("^\\s*([A-Za-z][A-Za-z ]*?)\\s*:\\s*(.*?)\\s*$");
+    private static final Pattern MEAL_MASTER_INGREDIENT = Pattern.compile("^([ 0-9/.]{7}) ([A-Za-z ]{2}) (\\S.*)$");
+    private static final Pattern MEAL_MASTER_SECTION = Pattern.compile("^(?:MMMMM|-----)-*\\s*([^-].*?)\\s*-+\\s*$");
+    private static final Pattern MASTER_COOK_INGREDIENT = Pattern.compile("^\\s*([0-9/. ]*?)\\s{2,}(\\S.{0,11}?)?\\s{2,}(\\S.*)$");
+
+    /**
+     * MealMaster unit abbreviations and what the rest of the app calls them.
+     */
+    private static final HashMap<String, String> MEAL_MASTER_UNITS = new HashMap<>();
+
+    static
+    {
+        String[][] units = {{"x", ""}, {"ea", ""}, {"sm", "small"}, {"md", "medium"}, {"lg", "large"},
+                {"cn", "can"}, {"pk", "package"}, {"pn", "pinch"}, {"dr", "drop"}, {"ds", "dash"},
+                {"ct", "carton"}, {"bn", "bunch"}, {"sl", "slice"}, {"t", "tsp"}, {"ts", "tsp"},
+                {"T", "tbsp"}, {"tb", "tbsp"}, {"fl", "fl oz"}, {"c", "cup"}, {"pt", "pint"},
+                {"qt", "quart"}, {"ga", "gallon"}, {"oz", "oz"}, {"lb", "lb"}, {"ml", "ml"},
+                {"cb", "cc"}, {"cl", "cl"}, {"dl", "dl"}, {"l", "liter"}, {"mg", "mg"}, {"cg", "cg"},
+                {"dg", "dg"}, {"g", "g"}, {"kg", "kg"}};
+        for (String[] unit : units)
+        {
+            MEAL_MASTER_UNITS.put(unit[0], unit[1]);
+        }
+    }
+
+    /**
+     * Spelled-out units and their plurals. Abbreviations such as "tsp" stay the same.
+     */
+    private static final HashMap<String, String> PLURALS = new HashMap<>();
+
+    static
+    {
+        String[][] plurals = {{"can", "cans"}, {"package", "packages"}, {"pinch", "pinches"},
+                {"drop", "drops"}, {"dash", "dashes"}, {"carton", "cartons"}, {"bunch", "bunches"},
+                {"slice", "slices"}, {"cup", "cups"}, {"pint", "pints"}, {"quart", "quarts"},
+                {"gallon", "gallons"}, {"liter", "liters"}};
+        for (String[] plural : plurals)
+        {
+            PLURALS.put(plural[0], plural[1]);
+        }
+    }
+
+    /**
+     * One row of a rule table: lines matching the pattern, or starting with the prefix when there
+     * is no pattern, are of the given kind.
+     */
+    private static class Rule
+    {
+        final int kind;
+        final String prefix;
+        final Pattern pattern;
+
+        Rule(int kind, String prefix, Pattern pattern)
+        {
+            this.kind = kind;
+            this.prefix = prefix;
+            this.pattern = pattern;
+        }
+
+        boolean matches(String line)
+        {
+            if (prefix != null && !line.startsWith(prefix)) return false;
+            return pattern == null || pattern.matcher(line).find();
+        }
+    }
+
+    /**
+     * The tables for one format.
+     */
+    private static class Format
+    {
+        final Rule[] rules;
+        final int[][] nextState;
+        final int[][] action;
+
+        Format(Rule[] rules, int[][] nextState, int[][] action)
+        {
+            this.rules = rules;
+            this.nextState = nextState;
+            this.action = action;
+        }
+    }
+
+    /*
+     * Columns of the state tables, by kind of line:
+     * BLANK, HEADER, END, FIELD, SECTION, INGREDIENT, CONTINUATION, COLUMNS, TEXT
+     */
+
+    private static final Format MEAL_MASTER = new Format(
+            new Rule[]{
+                    new Rule(HEADER, null, Pattern.compile("^(MMMMM|-----)-----\\s*Recipe via Meal-Master")),
+                    new Rule(END, null, Pattern.compile("^(MMMMM|-----)\\s*$")),
+                    new Rule(SECTION, null, MEAL_MASTER_SECTION),
+                    new Rule(FIELD, null, Pattern.compile("^\\s*(Title|Categories|Yield|Servings)\\s*:")),
+                    new Rule(CONTINUATION, null, Pattern.compile("^ {11}-")),
+                    new Rule(INGREDIENT, null, MEAL_MASTER_INGREDIENT),
+            },
+            new int[][]{
+                    /* START       */ {START, FIELDS, START, START, START, START, START, START, START},
+                    /* FIELDS      */ {FIELDS, FIELDS, START, FIELDS, INGREDIENTS, INGREDIENTS, INGREDIENTS, FIELDS, DIRECTIONS},
+                    /* INGREDIENTS */ {INGREDIENTS, FIELDS, START, INGREDIENTS, INGREDIENTS, INGREDIENTS, INGREDIENTS, INGREDIENTS, DIRECTIONS},
+                    /* DIRECTIONS  */ {DIRECTIONS, FIELDS, START, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS},
+            },
+            new int[][]{
+                    /* START       */ {SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP},
+                    /* FIELDS      */ {SKIP, SKIP, SKIP, SET_FIELD, ADD_HEADING, ADD_INGREDIENT, CONTINUE_INGREDIENT, SKIP, ADD_DIRECTION},
+                    /* INGREDIENTS */ {SKIP, SKIP, SKIP, SET_FIELD, ADD_HEADING, ADD_INGREDIENT, CONTINUE_INGREDIENT, SKIP, ADD_DIRECTION},
+                    /* DIRECTIONS  */ {BREAK_DIRECTION, SKIP, SKIP, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION},
+            });
+
+    private static final Format MASTER_COOK = new Format(
+            new Rule[]{
+                    new Rule(HEADER, null, Pattern.compile("\\*\\s*Exported from\\s+MasterCook")),
+                    new Rule(END, null, Pattern.compile("^\\s*(- ){5,}-?\\s*$")),
+                    new Rule(COLUMNS, null, Pattern.compile("^\\s*(Amount\\s+Measure\\s+Ingredient|-{8}\\s+-{12}\\s+-+\\s*$)")),
+                    new Rule(FIELD, null, Pattern.compile("^(Recipe By|Serving Size|Preparation Time|Categories)\\s*:")),
+            },
+            new int[][]{
+                    /* START       */ {START, FIELDS, START, START, START, START, START, START, START},
+                    /* FIELDS      */ {FIELDS, FIELDS, START, FIELDS, FIELDS, FIELDS, FIELDS, INGREDIENTS, FIELDS},
+                    /* INGREDIENTS */ {DIRECTIONS, FIELDS, START, INGREDIENTS, INGREDIENTS, INGREDIENTS, INGREDIENTS, INGREDIENTS, INGREDIENTS},
+                    /* DIRECTIONS  */ {DIRECTIONS, FIELDS, START, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS, DIRECTIONS},
+            },
+            new int[][]{
+                    /* START       */ {SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP, SKIP},
+                    /* FIELDS      */ {SKIP, SKIP, SKIP, SET_FIELD, SKIP, SKIP, SKIP, SKIP, SET_TITLE},
+                    /* INGREDIENTS */ {SKIP, SKIP, SKIP, ADD_INGREDIENT, ADD_INGREDIENT, ADD_INGREDIENT, ADD_INGREDIENT, SKIP, ADD_INGREDIENT},
+                    /* DIRECTIONS  */ {BREAK_DIRECTION, SKIP, SKIP, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION, ADD_DIRECTION},
+            });
+
+    private final Format format;
+    private final int formatId;
+    private final StringBuilder ingredients = new StringBuilder();
+    private final StringBuilder directions = new StringBuilder();
+    private final StringBuilder paragraph = new StringBuilder();
+    private String title;
+    private String servings;
+
+    /**
+     * Creates a parser for one of the legacy formats.
+     *
+     * @param format {@link ImportFormat#MEAL_MASTER} or {@link ImportFormat#MASTER_COOK}.
+     */
+    public LegacyRecipeParser(int format)
+    {
+        this.formatId = format;
+        this.format = format == ImportFormat.MASTER_COOK ? MASTER_COOK : MEAL_MASTER;
+    }
+
+    /**
+     * Classifies a line using the format's rule table.
+     *
+     * @param line The line.
+     * @return The kind of line.
+     */
+    int classify(String line)
+    {
+        if (line.trim().isEmpty()) return BLANK;
+        for (Rule rule : format.rules)
+        {
+            if (rule.matches(line)) return rule.kind;
+        }
+        return TEXT;
+    }
+
+    /**
+     * Reads one recipe.
+     *
+     * @param text The recipe, from its header line up to the start of the next recipe.
+     * @return The recipe.
+     */
+    public Recipe parse(String text)
+    {
+        ingredients.setLength(0);
+        directions.setLength(0);
+        paragraph.setLength(0);
+        title = "";
+        servings = DEFAULT_SERVINGS;
+        int state = START;
+        int start = 0;
+        while (start <= text.length())
+        {
+            int end = text.indexOf('\n', start);
+            if (end < 0) end = text.length();
+            String line = text.substring(start, end);
+            if (line.endsWith("\r")) line = line.substring(0, line.length() - 1);
+            int kind = classify(line);
+            apply(format.action[state][kind], kind, line);
+            state = format.nextState[state][kind];
+            start = end + 1;
+        }
+        finishParagraph();
+
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        recipe.setServings(servings);
+        recipe.setIngredients(ingredients.toString());
+        recipe.setMetric(RecipeParser.detectMetric(recipe.getIngredients()));
+        recipe.setDirections(directions.toString());
+        recipe.setNotes("");
+        return recipe;
+    }
+
+    /**
+     * Carries out one action from the action table.
+     */
+    private void apply(int action, int kind, String line)
+    {
+        switch (action)
+        {
+            case SET_FIELD:
+                setField(line);
+                break;
+            case SET_TITLE:
+                if (title.isEmpty()) title = line.trim();
+                break;
+            case ADD_INGREDIENT:
+                addIngredient(line);
+                break;
+            case CONTINUE_INGREDIENT:
+                continueIngredient(line.trim().substring(1).trim());
+                break;
+            case ADD_HEADING:
+                Matcher section = MEAL_MASTER_SECTION.matcher(line);
+                if (section.find()) addLine(ingredients, section.group(1).trim() + ":");
+                break;
+            case ADD_DIRECTION:
+                if (paragraph.length() > 0) paragraph.append(' ');
+                paragraph.append(line.trim());
+                break;
+            case BREAK_DIRECTION:
+                finishParagraph();
+                break;
+        }
+    }
+
+    private static void addLine(StringBuilder lines, String line)
+    {
+        if (line.isEmpty()) return;
+        lines.append(line).append('\n');
+    }
+
+    private void finishParagraph()
+    {
+        addLine(directions, paragraph.toString());
+        paragraph.setLength(0);
+    }
+
+    /**
+     * Sets the title or servings from a field line. Other fields, such as categories, are dropped.
+     */
+    private void setField(String line)
+    {
+        Matcher field = FIELD_LINE.matcher(line);
+        if (!field.find()) return;
+        String name = field.group(1).toLowerCase();
+        String value = field.group(2);
+        if (name.equals("title"))
+        {
+            title = value;
+        } else if (name.equals("yield") || name.equals("servings") || name.equals("serving size"))
+        {
+            Matcher number = NUMBER.matcher(value);
+            if (number.find() && !number.group().equals("0")) servings = number.group();
+        }
+    }
+
+    private void continueIngredient(String text)
+    {
+        if (ingredients.length() == 0)
+        {
+            addLine(ingredients, text);
+            return;
+        }
+        ingredients.setLength(ingredients.length() - 1);
+        ingredients.append(' ').append(text).append('\n');
+    }
+
+    /**
+     * Adds the ingredients on a line. A MealMaster line may hold two ingredients side by side.
+     */
+    private void addIngredient(String line)
+    {
+        if (formatId == ImportFormat.MASTER_COOK)
+        {
+            Matcher columns = MASTER_COOK_INGREDIENT.matcher(line);
+            if (columns.find())
+            {
+                addLine(ingredients, join(columns.group(1), columns.group(2), columns.group(3)));
+            } else
+            {
+                addLine(ingredients, line.trim());
+            }
+            return;
+        }
+        String first = line;
+        String second = null;
+        if (line.length() > MEAL_MASTER_SECOND_COLUMN && line.charAt(MEAL_MASTER_SECOND_COLUMN - 1) == ' ')
+        {
+            String rest = line.substring(MEAL_MASTER_SECOND_COLUMN);
+            int kind = classify(rest);
+            if (kind == INGREDIENT || kind == CONTINUATION)
+            {
+                first = line.substring(0, MEAL_MASTER_SECOND_COLUMN);
+                second = rest;
+            }
+        }
+        addMealMasterIngredient(first);
+        if (second != null)
+        {
+            if (classify(second) == CONTINUATION)
+            {
+                continueIngredient(second.trim().substring(1).trim());
+            } else
+            {
+                addMealMasterIngredient(second);
+            }
+        }
+    }
+
+    private void addMealMasterIngredient(String column)
+    {
+        Matcher columns = MEAL_MASTER_INGREDIENT.matcher(column);
+        if (!columns.find())
+        {
+            addLine(ingredients, column.trim());
+            return;
+        }
+        String quantity = columns.group(1).trim();
+        String unit = columns.group(2).trim();
+        String name = columns.group(3).trim();
+        String expanded = MEAL_MASTER_UNITS.get(unit);
+        if (expanded == null) expanded = MEAL_MASTER_UNITS.get(unit.toLowerCase());
+        if (expanded == null) expanded = unit;
+        if (quantity.isEmpty() && expanded.isEmpty() && name.startsWith("-"))
+        {
+            continueIngredient(name.substring(1).trim());
+            return;
+        }
+        addLine(ingredients, join(quantity, plural(expanded, quantity), name));
+    }
+
+    /**
+     * Makes a spelled-out unit plural for quantities over one, e.g. "2 cups" but "1/2 cup".
+     */
+    private static String plural(String unit, String quantity)
+    {
+        String plural = PLURALS.get(unit);
+        if (plural == null) return unit;
+        double value = 0;
+        for (String part : quantity.split(" "))
+        {
+            try
+            {
+                int slash = part.indexOf('/');
+                value += slash > 0 ? Double.parseDouble(part.substring(0, slash)) / Double.parseDouble(part.substring(slash + 1)) : Double.parseDouble(part);
+            } catch (NumberFormatException e)
+            {
+            }
+        }
+        return value > 1 ? plural : unit;
+    }
+
+    private static String join(String... parts)
+    {
+        StringBuilder joined = new StringBuilder();
+        for (String part : parts)
+        {
+            if (part == null) continue;
+            part = part.trim();
+            if (part.isEmpty()) continue;
+            if (joined.length() > 0) joined.append(' ');
+            joined.append(part);
+        }
+        return joined.toString();
+    }
+}
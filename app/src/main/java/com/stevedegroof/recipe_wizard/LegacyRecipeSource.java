@@ -0,0 +1,101 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Reads the recipes in a MealMaster or MasterCook file, for an {@link ImportPipeline}.
+ * <p>
+ * Each recipe runs from its header line to its end line, or to the next header if the end line
+ * is missing. Anything outside a recipe, such as the notes some collections start with, is
+ * passed over. The header and end lines are recognised by the same rule table that
+ * {@link LegacyRecipeParser} uses to read the recipe itself.
+ * <p>
+ * These files are often in an old single-byte code page, so the character set is chosen by
+ * {@link ImportFormat#legacyCharset(InputStream)} rather than assumed to be UTF-8.
+ */
+public class LegacyRecipeSource implements ImportPipeline.ChunkSource, Closeable
+{
+    private final int format;
+    private final LegacyRecipeParser classifier;
+    private final CountingInputStream counter;
+    private final BufferedReader reader;
+    private final StringBuilder recipeText = new StringBuilder();
+    private String pendingHeader = null;
+    private boolean finished = false;
+
+    /**
+     * Creates a source.
+     *
+     * @param inputStream The file. It is closed when the source is closed.
+     * @param format      {@link ImportFormat#MEAL_MASTER} or {@link ImportFormat#MASTER_COOK}.
+     * @throws IOException If the start of the file cannot be read.
+     */
+    public LegacyRecipeSource(InputStream inputStream, int format) throws IOException
+    {
+        this.format = format;
+        classifier = new LegacyRecipeParser(format);
+        counter = new CountingInputStream(inputStream);
+        InputStream buffered = new BufferedInputStream(counter, ImportFormat.SNIFF_LENGTH);
+        reader = new BufferedReader(new InputStreamReader(buffered, ImportFormat.legacyCharset(buffered)));
+    }
+
+    @Override
+    public String next() throws IOException
+    {
+        if (finished) return null;
+        recipeText.setLength(0);
+        boolean inRecipe = false;
+        if (pendingHeader != null)
+        {
+            recipeText.append(pendingHeader).append('\n');
+            pendingHeader = null;
+            inRecipe = true;
+        }
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            int kind = classifier.classify(line);
+            if (kind == LegacyRecipeParser.HEADER)
+            {
+                if (inRecipe)
+                {
+                    pendingHeader = line;
+                    return recipeText.toString();
+                }
+                inRecipe = true;
+            }
+            if (!inRecipe) continue;
+            recipeText.append(line).append('\n');
+            if (kind == LegacyRecipeParser.END) return recipeText.toString();
+        }
+        finished = true;
+        return inRecipe ? recipeText.toString() : null;
+    }
+
+    @Override
+    public int getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Gets the number of bytes of the file read so far. Safe to call from any thread.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return counter.getCount();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+}
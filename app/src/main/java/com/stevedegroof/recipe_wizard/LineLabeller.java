@@ -0,0 +1,347 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.Arrays;
+
+/**
+ * Works out where the ingredients and directions of a recipe start when its text does not have
+ * headers for both, for {@link RecipeParser}.
+ * <p>
+ * Every line that is not blank, a header or a special line is given a label: part of the title,
+ * an ingredient or a direction. The labels only ever move forward, from the title to the
+ * ingredients to the directions, so a labelling is a layout of the recipe. Each line scores
+ * each label from what the {@link RecipeLexer} found when it read the line: whether it starts
+ * with a unit or a quantity, is a numbered step, starts with a cooking verb, ends a sentence,
+ * and how many words it has. No line is read again, so a recipe whose text is being edited can
+ * be labelled again from the lines the lexer kept.
+ * Moving to the next section costs a little, except after a blank line. Any header the
+ * text does have fixes where its section starts.
+ * <p>
+ * The best layouts are found with the Viterbi algorithm, keeping the best {@link #CANDIDATES}
+ * ways of reaching each label at each line, and the sum over every layout with the forward
+ * algorithm, so the time taken grows in proportion to the number of lines. Treating the scores
+ * as log odds, the confidence in a layout is its share of that sum: the chance it is right if
+ * the scores are.
+ * <p>
+ * A labeller keeps its arrays between calls, so one labeller can be reused for many recipes
+ * without allocating new ones each time. It is not safe to use from more than one thread at once.
+ */
+class LineLabeller
+{
+    static final int TITLE = 0;
+    static final int INGREDIENTS = 1;
+    static final int DIRECTIONS = 2;
+
+    /**
+     * The most layouts found for one recipe: the best one and its runners-up.
+     */
+    static final int CANDIDATES = 3;
+
+    private static final int LABELS = 3;
+    private static final double IMPOSSIBLE = Double.NEGATIVE_INFINITY;
+
+    private static final double UNIT = 2.5;
+    private static final double QUANTITY = 1.5;
+    private static final double STEP = 2.5;
+    private static final double VERB = 2d;
+    private static final double SENTENCE = 1d;
+    private static final double SHORT = 0.5;
+    private static final double LONG = 1.5;
+    private static final double TITLE_LINE = 1d;
+    private static final double SECTION_CHANGE = 2d;
+    private static final double AFTER_BREAK = 2d;
+    private static final double SECTION_SKIPPED = 2d;
+    private static final int SHORT_WORDS = 6;
+    private static final int LONG_WORDS = 12;
+
+    private int[] lines = new int[0];
+    private boolean[] breaks = new boolean[0];
+    private double[] emissions = new double[0];
+    private double[] best = new double[0];
+    private int[] previous = new int[0];
+    private int[] labels = new int[0];
+    private final Layout[] layouts = new Layout[CANDIDATES];
+    private final double[] forward = new double[LABELS];
+    private final double[] nextForward = new double[LABELS];
+    private final double[] candidateScores = new double[CANDIDATES];
+    private final int[] candidateStates = new int[CANDIDATES];
+    private int layoutCount = 0;
+
+    /**
+     * Where the ingredients and directions are in one layout of a recipe. The starts are line
+     * numbers in the form {@link RecipeParser} keeps them: the line before the first line of the
+     * section. The ingredients end before the first line of the directions, which need not be
+     * a header or a blank line.
+     */
+    static final class Layout
+    {
+        final int ingredientsStart;
+        final int ingredientsEnd;
+        final int directionsStart;
+        final double score;
+        final double confidence;
+
+        Layout(int ingredientsStart, int ingredientsEnd, int directionsStart, double score, double confidence)
+        {
+            this.ingredientsStart = ingredientsStart;
+            this.ingredientsEnd = ingredientsEnd;
+            this.directionsStart = directionsStart;
+            this.score = score;
+            this.confidence = confidence;
+        }
+    }
+
+    /**
+     * Finds the most likely layouts of the first lines of a recipe.
+     *
+     * @param lexer             The lexer that read the recipe.
+     * @param end               The number of lines to label; lines from here on are notes.
+     * @param ingredientsHeader The line of the ingredients header, or -1 if there is none.
+     * @param directionsHeader  The line of the directions header, or -1 if there is none.
+     * @return The number of layouts found, at least one and at most {@link #CANDIDATES}.
+     */
+    int label(RecipeLexer lexer, int end, int ingredientsHeader, int directionsHeader)
+    {
+        if (lines.length < end)
+        {
+            int capacity = Math.max(end, lines.length * 2);
+            lines = new int[capacity];
+            breaks = new boolean[capacity];
+            emissions = new double[capacity * LABELS];
+            best = new double[capacity * LABELS * CANDIDATES];
+            previous = new int[capacity * LABELS * CANDIDATES];
+            labels = new int[capacity];
+        }
+        int count = 0;
+        boolean gap = false;
+        for (int i = 0; i < end; i++)
+        {
+            int kind = lexer.kind(i);
+            if (kind == RecipeLexer.TEXT || kind == RecipeLexer.STEP)
+            {
+                lines[count] = i;
+                breaks[count] = gap;
+                gap = false;
+                score(lexer, i, count, ingredientsHeader, directionsHeader);
+                count++;
+            } else
+            {
+                gap = true;
+            }
+        }
+        layoutCount = 0;
+        if (count == 0)
+        {
+            addLayout(0, end, ingredientsHeader, directionsHeader, 0d, 1d);
+            return layoutCount;
+        }
+        findBest(count);
+        double total = total(count);
+        int found = 0;
+        for (int label = 0; label < LABELS; label++)
+        {
+            for (int rank = 0; rank < CANDIDATES; rank++)
+            {
+                int state = ((count - 1) * LABELS + label) * CANDIDATES + rank;
+                found = insert(candidateScores, candidateStates, found, best[state], state);
+            }
+        }
+        for (int k = 0; k < found; k++)
+        {
+            int state = candidateStates[k];
+            for (int j = count - 1; j >= 0; j--)
+            {
+                labels[j] = (state / CANDIDATES) % LABELS;
+                state = previous[state];
+            }
+            addLayout(count, end, ingredientsHeader, directionsHeader, candidateScores[k],
+                    Math.exp(candidateScores[k] - total));
+        }
+        return layoutCount;
+    }
+
+    /**
+     * Gets one of the layouts found by the last call to {@link #label}.
+     *
+     * @param k The rank of the layout, 0 for the most likely one.
+     * @return The layout.
+     */
+    Layout layout(int k)
+    {
+        return layouts[k];
+    }
+
+    /**
+     * Scores each label for one line, from what the line looks like and where the headers are.
+     */
+    private void score(RecipeLexer lexer, int i, int j, int ingredientsHeader, int directionsHeader)
+    {
+        boolean step = lexer.kind(i) == RecipeLexer.STEP;
+        boolean verb = lexer.hasTrait(i, RecipeLexer.LEADING_VERB);
+        boolean quantity = lexer.hasTrait(i, RecipeLexer.LEADING_QUANTITY);
+        boolean sentence = lexer.hasTrait(i, RecipeLexer.ENDS_SENTENCE);
+        boolean unit = lexer.startsWithUnit(i);
+        int words = lexer.words(i);
+        boolean isShort = words <= SHORT_WORDS;
+        boolean isLong = words > LONG_WORDS;
+
+        double title = -TITLE_LINE - (unit ? UNIT : 0d) - (quantity ? QUANTITY : 0d);
+        double ingredient = (unit ? UNIT : 0d) + (quantity ? QUANTITY : 0d) + (isShort ? SHORT : 0d)
+                - (step ? STEP : 0d) - (verb ? VERB : 0d) - (sentence ? SENTENCE : 0d) - (isLong ? LONG : 0d);
+        double direction = (step ? STEP : 0d) + (verb ? VERB : 0d) + (sentence ? SENTENCE : 0d) + (isLong ? SENTENCE : 0d)
+                - (unit ? UNIT : 0d) - (quantity ? QUANTITY : 0d) - (words <= SHORT_WORDS / 2 ? SHORT : 0d);
+
+        int lowest = TITLE;
+        int highest = DIRECTIONS;
+        if (ingredientsHeader >= 0 && i > ingredientsHeader) lowest = INGREDIENTS;
+        if (directionsHeader >= 0 && i > directionsHeader) lowest = DIRECTIONS;
+        if (ingredientsHeader > i) highest = TITLE;
+        if (directionsHeader > i) highest = Math.min(highest, INGREDIENTS);
+        if (j == 0 && lowest == TITLE)
+        {
+            highest = TITLE;
+            title = 0d;
+        }
+        emissions[j * LABELS + TITLE] = lowest <= TITLE ? title : IMPOSSIBLE;
+        emissions[j * LABELS + INGREDIENTS] = lowest <= INGREDIENTS && highest >= INGREDIENTS ? ingredient : IMPOSSIBLE;
+        emissions[j * LABELS + DIRECTIONS] = highest >= DIRECTIONS ? direction : IMPOSSIBLE;
+    }
+
+    /**
+     * Gets the score for going from one label on the line before to another on line j.
+     */
+    private double transition(int j, int from, int to)
+    {
+        if (to == from) return 0d;
+        if (to < from) return IMPOSSIBLE;
+        return -SECTION_CHANGE + (breaks[j] ? AFTER_BREAK : 0d) - (to - from > 1 ? SECTION_SKIPPED : 0d);
+    }
+
+    /**
+     * Fills in the best scores of reaching each label at each line, keeping the best
+     * {@link #CANDIDATES} ways in order and the state each came from.
+     */
+    private void findBest(int count)
+    {
+        Arrays.fill(best, 0, count * LABELS * CANDIDATES, IMPOSSIBLE);
+        for (int label = 0; label < LABELS; label++)
+        {
+            best[label * CANDIDATES] = emissions[label];
+            previous[label * CANDIDATES] = -1;
+        }
+        for (int j = 1; j < count; j++)
+        {
+            for (int label = 0; label < LABELS; label++)
+            {
+                double emission = emissions[j * LABELS + label];
+                if (emission == IMPOSSIBLE) continue;
+                int base = (j * LABELS + label) * CANDIDATES;
+                int found = 0;
+                for (int from = 0; from <= label; from++)
+                {
+                    double step = transition(j, from, label) + emission;
+                    for (int rank = 0; rank < CANDIDATES; rank++)
+                    {
+                        int state = ((j - 1) * LABELS + from) * CANDIDATES + rank;
+                        if (best[state] == IMPOSSIBLE) break;
+                        found = insert(candidateScores, candidateStates, found, best[state] + step, state);
+                    }
+                }
+                for (int rank = 0; rank < found; rank++)
+                {
+                    best[base + rank] = candidateScores[rank];
+                    previous[base + rank] = candidateStates[rank];
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a score to a list kept in descending order, dropping the lowest once the list holds
+     * {@link #CANDIDATES}.
+     *
+     * @return The number of scores in the list.
+     */
+    private static int insert(double[] scores, int[] states, int count, double score, int state)
+    {
+        if (score == IMPOSSIBLE || (count == CANDIDATES && score <= scores[count - 1])) return count;
+        int k = count < CANDIDATES ? count++ : count - 1;
+        while (k > 0 && scores[k - 1] < score)
+        {
+            scores[k] = scores[k - 1];
+            states[k] = states[k - 1];
+            k--;
+        }
+        scores[k] = score;
+        states[k] = state;
+        return count;
+    }
+
+    /**
+     * Adds up every layout, weighting each by the exponent of its score.
+     *
+     * @return The logarithm of the sum.
+     */
+    private double total(int count)
+    {
+        System.arraycopy(emissions, 0, forward, 0, LABELS);
+        for (int j = 1; j < count; j++)
+        {
+            for (int label = 0; label < LABELS; label++)
+            {
+                double sum = IMPOSSIBLE;
+                for (int from = 0; from <= label; from++)
+                {
+                    sum = logSum(sum, forward[from] + transition(j, from, label));
+                }
+                nextForward[label] = sum + emissions[j * LABELS + label];
+            }
+            System.arraycopy(nextForward, 0, forward, 0, LABELS);
+        }
+        double total = IMPOSSIBLE;
+        for (int label = 0; label < LABELS; label++)
+        {
+            total = logSum(total, forward[label]);
+        }
+        return total;
+    }
+
+    /**
+     * Adds two numbers given as logarithms, without leaving logarithms.
+     */
+    private static double logSum(double a, double b)
+    {
+        if (a == IMPOSSIBLE) return b;
+        if (b == IMPOSSIBLE) return a;
+        return Math.max(a, b) + Math.log1p(Math.exp(-Math.abs(a - b)));
+    }
+
+    /**
+     * Turns the labels of a layout into the lines its sections start after, and records it.
+     * A header always decides where its own section starts. A section with no lines starts
+     * where it ends, so that it comes out empty.
+     */
+    private void addLayout(int count, int end, int ingredientsHeader, int directionsHeader, double score, double confidence)
+    {
+        int firstIngredient = -1;
+        int firstDirection = -1;
+        for (int j = 0; j < count; j++)
+        {
+            if (firstIngredient < 0 && labels[j] == INGREDIENTS) firstIngredient = j;
+            if (labels[j] == DIRECTIONS)
+            {
+                firstDirection = j;
+                break;
+            }
+        }
+        int ingredientsEnd = firstDirection < 0 ? end : lines[firstDirection];
+        int directionsStart = ingredientsEnd - 1;
+        if (directionsHeader >= 0)
+        {
+            ingredientsEnd = directionsHeader;
+            directionsStart = directionsHeader;
+        }
+        int ingredientsStart = ingredientsHeader;
+        if (ingredientsStart < 0) ingredientsStart = firstIngredient < 0 ? ingredientsEnd - 1 : lines[firstIngredient] - 1;
+        layouts[layoutCount++] = new Layout(ingredientsStart, ingredientsEnd, directionsStart, score, confidence);
+    }
+}
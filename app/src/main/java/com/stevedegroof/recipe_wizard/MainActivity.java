@@ -1,15 +1,15 @@
 package com.stevedegroof.recipe_wizard;
 
-import android.content.BroadcastReceiver;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.res.AssetFileDescriptor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -38,16 +38,16 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.appbar.MaterialToolbar;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
 
 /**
  * The main activity of the Recipe Wizard application.
@@ -60,12 +60,13 @@ import java.util.concurrent.Executors;
  *     <li>Allows adding new recipes through {@link AddRecipeActivity}.</li>
  *     <li>Allows viewing recipe details through {@link ViewRecipeActivity}.</li>
  *     <li>Enables sharing the entire recipe book as plain text.</li>
- *     <li>Supports importing recipes from a text file with options to append, overwrite, or merge.</li>
- *     <li>Supports exporting recipes to a text file.</li>
+ *     <li>Supports importing recipes from a text file, a saved recipe web page, or a ZIP archive of either, with options to append, overwrite, or merge.</li>
+ *     <li>Supports exporting recipes to a text, JSON Lines or Markdown file.</li>
+ *     <li>Lets the user review near-duplicate recipes through {@link NearDuplicatesActivity}, including after a merge import.</li>
  *     <li>Provides a search field to filter recipes based on title, ingredients, or notes.</li>
  *     <li>Manages recipe data persistence through the {@link Recipes} singleton class.</li>
  *     <li>Handles file I/O operations asynchronously using an {@link ExecutorService}.</li>
- *     <li>Displays progress during import operations using a {@link ProgressReceiver} and an {@link AlertDialog}.</li>
+ *     <li>Displays progress during import and export operations using a {@link ProgressChannel} and an {@link AlertDialog}.</li>
  * </ul>
  */
 public class MainActivity extends AppCompatActivity
@@ -74,28 +75,42 @@ public class MainActivity extends AppCompatActivity
     public static final int IMPORT_OVERWRITE = 10003;
     public static final int IMPORT_MERGE = 10006;
     public static final String DEFAULT_EXPORT_FILENAME = "RecipesExport.txt";
+    public static final String JSON_LINES_EXPORT_FILENAME = "RecipesExport.jsonl";
+    public static final String MARKDOWN_EXPORT_FILENAME = "RecipesExport.md";
+    public static final String DELTA_EXPORT_FILENAME = "RecipesChanges.jsonl";
     public static final String RECIPE_BREAK_DETECT = "------";
     public static final String BOOK_FILE_NAME = "RecipeBook.txt";
     public static final String RECIPE_FILE_NAME = "Recipes.json";
     public static final String RECIPE_BREAK = "-----------------";
+    private static final int MAX_IMPORT_ERRORS_SHOWN = 10;
     Uri importUri = null;
     View progressDialogView;
-    private int importMode = IMPORT_APPEND;
+    private static int importMode = IMPORT_APPEND;
     private RecyclerView recyclerViewRecipes;
     private RecipeAdapter recipeAdapter;
     private List<Recipe> allRecipes;
     private List<Recipe> filteredRecipes;
     private EditText searchFieldEditText;
-    private ImageButton buttonAdd, buttonShare, buttonImport, buttonExport;
+    private ImageButton buttonAdd, buttonShare, buttonImport, buttonExport, buttonDuplicates;
     private ProgressBar progressBar;
-    private ProgressReceiver progressReceiver;
+    private static final ProgressChannel progressChannel = new ProgressChannel(null);
+    private ProgressChannel.Listener progressListener;
     private AlertDialog progressDialog;
+    private ProgressChannel exportChannel;
+    private AlertDialog exportDialog;
+    private View exportDialogView;
     private ActivityResultLauncher<String> exportFileLauncher;
+    private ActivityResultLauncher<String> jsonLinesExportLauncher;
+    private ActivityResultLauncher<String> markdownExportLauncher;
+    private int exportFormat = RecipeExporter.TEXT;
     private ActivityResultLauncher<String[]> importFileLauncher;
     private ExecutorService fileIoExecutor;
+    private ExecutorService indexExecutor;
+    private int indexingVersion = -1;
     private Handler mainThreadHandler;
 
     private boolean includeNotes = true;
+    private static volatile boolean importRunning = false;
 
 
     /**
@@ -129,15 +144,16 @@ public class MainActivity extends AppCompatActivity
         {
             progressBar.setVisibility(View.GONE);
         }
-        progressReceiver = new ProgressReceiver();
-        IntentFilter filter = new IntentFilter(ProgressReceiver.ACTION);
-        ContextCompat.registerReceiver(this, progressReceiver, filter, ContextCompat.RECEIVER_EXPORTED);
+        progressListener = this::onProgress;
+        progressChannel.setListener(progressListener);
+        exportChannel = new ProgressChannel(this::onExportProgress);
 
 
         MaterialToolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
         fileIoExecutor = Executors.newSingleThreadExecutor();
+        indexExecutor = Executors.newSingleThreadExecutor();
         mainThreadHandler = new Handler(Looper.getMainLooper());
 
 
@@ -145,6 +161,7 @@ public class MainActivity extends AppCompatActivity
         buttonShare = findViewById(R.id.button_share);
         buttonImport = findViewById(R.id.button_import);
         buttonExport = findViewById(R.id.button_export);
+        buttonDuplicates = findViewById(R.id.button_duplicates);
         searchFieldEditText = findViewById(R.id.search_field_edit_text);
 
 
@@ -152,6 +169,7 @@ public class MainActivity extends AppCompatActivity
         buttonImport.setOnClickListener(this::checkImportType);
         buttonExport.setOnClickListener(this::exportRecipes);
         buttonAdd.setOnClickListener(this::addRecipe);
+        buttonDuplicates.setOnClickListener(this::findNearDuplicates);
 
 
         searchFieldEditText.addTextChangedListener(new TextWatcher()
@@ -182,18 +200,9 @@ public class MainActivity extends AppCompatActivity
             recyclerViewRecipes.addItemDecoration(dividerItemDecoration);
         }
 
-        exportFileLauncher = registerForActivityResult(
-                new ActivityResultContracts.CreateDocument("text/plain"),
-                uri ->
-                {
-                    if (uri != null)
-                    {
-                        writeFileContent(uri);
-                    } else
-                    {
-                        Toast.makeText(MainActivity.this, "Export cancelled or failed.", Toast.LENGTH_SHORT).show();
-                    }
-                });
+        exportFileLauncher = registerExportLauncher("text/plain");
+        jsonLinesExportLauncher = registerExportLauncher("application/octet-stream");
+        markdownExportLauncher = registerExportLauncher("text/markdown");
 
 
         importFileLauncher = registerForActivityResult(
@@ -210,6 +219,24 @@ public class MainActivity extends AppCompatActivity
                     }
                 });
 
+        if (importRunning)
+        {
+            showProgressDialog();
+        }
+        offerResumeImport();
+
+    }
+
+    /**
+     * Called when the near duplicates button is clicked.
+     * Starts the NearDuplicatesActivity to let the user review recipes that are almost the same.
+     *
+     * @param view The view that was clicked (the near duplicates button).
+     */
+    private void findNearDuplicates(View view)
+    {
+        Intent intent = new Intent(MainActivity.this, NearDuplicatesActivity.class);
+        startActivity(intent);
     }
 
     /**
@@ -228,75 +255,46 @@ public class MainActivity extends AppCompatActivity
      * Filters the list of recipes based on the provided query.
      * <p>
      * If the query is empty, all recipes are shown, sorted by name.
-     * If the query contains a single term, recipes are filtered if their text contains the term,
-     * and the results are sorted by name.
-     * If the query contains multiple comma-separated terms, recipes are scored based on how many
-     * search terms are found in their ingredients. The score is a combination of the ratio of
-     * matched terms to total search terms and the ratio of matched terms to total ingredients.
-     * Recipes with a score greater than 0 are shown, sorted by score.
+     * Otherwise the query is matched by {@link RecipeSearch}. A {@link SearchQuery} (words,
+     * quoted phrases, negation, AND/OR and field prefixes) shows the recipes it matches, sorted by name.
+     * Comma-separated terms score recipes by how many of the terms are found in their
+     * ingredients, and recipes with a score greater than 0 are shown, sorted by score.
+     * The matches found are kept on each recipe so the list can highlight them.
+     * A search query needs the {@link RecipeIndex}; if the book has changed since it was last
+     * indexed, the list is left empty while it is indexed in the background, and the search
+     * is run again once the index is ready.
      * <p>
      * After filtering and sorting, the RecyclerView adapter is notified of the changes.
      * If a current recipe was selected before filtering, the list attempts to scroll to its
      * new position.
      *
-     * @param query The search query string. Can be empty, a single term, or comma-separated terms.
+     * @param query The search query string. Can be empty, a search query, or comma-separated terms.
      */
     private void filterRecipes(String query)
     {
-        String recipeText;
-        String ingredients;
-        int termMatchCount;
         if (filteredRecipes == null) filteredRecipes = new ArrayList<>();
         if (allRecipes == null) allRecipes = Recipes.getInstance().getList();
         filteredRecipes.clear();
-        if (query.isEmpty())
+        if (query.trim().isEmpty())
         {
+            for (Recipe recipe : allRecipes)
+            {
+                recipe.setSearchHit(null);
+            }
             Recipes.getInstance().setSortOn(Recipes.NAME);
             Recipes.getInstance().sort();
             filteredRecipes.addAll(allRecipes);
         } else
         {
-            String lowerCaseQuery = query.toLowerCase().trim();
-            String[] searchTerms = lowerCaseQuery.split(",");
-            boolean singleTerm = !(query.trim().contains(","));
-            if (singleTerm)
-            {
-                Recipes.getInstance().setSortOn(Recipes.NAME);
-            } else
-            {
-                Recipes.getInstance().setSortOn(Recipes.SCORE);
-            }
-
-            for (Recipe recipe : allRecipes)
+            RecipeSearch search = new RecipeSearch(query);
+            if (!search.isRanked() && !RecipeIndex.getInstance().isCurrent(Recipes.getInstance().getVersion()))
             {
-                double termScore = 0;
-                double ingredientScore = 0;
-                double score = 1;
-                recipeText = recipe.toPlainText(true).toLowerCase();
-                ingredients = recipe.getIngredients().toLowerCase();
-                termMatchCount = 0;
-                if (singleTerm)
-                {
-                    score = (recipeText.contains(lowerCaseQuery)) ? 1 : 0;
-                } else
-                {
-                    String[] ingredientList = ingredients.split("\n");
-                    double termCount = searchTerms.length;
-                    for (String term : searchTerms)
-                    {
-                        if (!term.trim().isEmpty() && ingredients.contains(term.trim()))
-                        {
-                            termMatchCount++;
-                        }
-                    }
-                    if (termCount > 0d) termScore = ((double) termMatchCount) / termCount;
-                    double ingredientCount = ingredientList.length;
-                    if (ingredientCount > 0d)
-                        ingredientScore = ((double) termMatchCount) / ingredientCount;
-                    score = (termScore + ingredientScore) / 2.0;
-                }
-                recipe.setSortScore(score);
+                indexRecipes();
+                if (recipeAdapter != null) recipeAdapter.notifyDataSetChanged();
+                return;
             }
+            Recipes.getInstance().setSortOn(search.isRanked() ? Recipes.SCORE : Recipes.NAME);
+            search.run(allRecipes, Recipes.getInstance().getVersion());
             Recipes.getInstance().sort();
             for (Recipe recipe : Recipes.getInstance().getList())
             {
@@ -379,7 +377,8 @@ public class MainActivity extends AppCompatActivity
 
     /**
      * Loads recipes from storage, sorts them, and populates the local list of all recipes.
-     * Then, it filters the recipes based on the current text in the search field.
+     * Then, it filters the recipes based on the current text in the search field,
+     * and brings the shared book file up to date in the background.
      */
     void fillList()
     {
@@ -387,110 +386,389 @@ public class MainActivity extends AppCompatActivity
         Recipes.getInstance().sort();
         allRecipes = new ArrayList<>();
         allRecipes.addAll(Recipes.getInstance().getList());
+        indexRecipes();
         filterRecipes(searchFieldEditText.getText().toString());
+        prepareShareBook();
+    }
+
+    /**
+     * Brings the {@link RecipeIndex} up to date with the recipe book on a background thread, if
+     * the book has changed since it was last indexed, then runs the search in the search field
+     * again. The list is only copied for the background thread when it needs indexing.
+     */
+    private void indexRecipes()
+    {
+        final RecipeIndex index = RecipeIndex.getInstance();
+        final int version = Recipes.getInstance().getVersion();
+        if (index.isCurrent(version) || version == indexingVersion || indexExecutor == null || indexExecutor.isShutdown()) return;
+        indexingVersion = version;
+        final List<Recipe> snapshot = new ArrayList<>(Recipes.getInstance().getList());
+        indexExecutor.execute(() ->
+        {
+            try
+            {
+                index.refresh(snapshot, version);
+            } catch (Exception e)
+            {
+            }
+            mainThreadHandler.post(() ->
+            {
+                if (indexingVersion == version) indexingVersion = -1;
+                if (isFinishing() || isDestroyed() || !index.isCurrent(version)) return;
+                String query = searchFieldEditText.getText().toString();
+                if (!query.trim().isEmpty()) filterRecipes(query);
+            });
+        });
+    }
+
+    /**
+     * Writes the book file for sharing ahead of time, on the file I/O thread, if the book has
+     * changed since it was last written. The file is written with or without notes as the
+     * book was last shared. Nothing is done while an import is running.
+     */
+    private void prepareShareBook()
+    {
+        if (importRunning || fileIoExecutor == null || fileIoExecutor.isShutdown()) return;
+        Recipes recipes = Recipes.getInstance();
+        ShareBookCache cache = ShareBookCache.getInstance();
+        boolean notes = cache.getLastIncludeNotes() && hasNotes(recipes.getList());
+        int modification = recipes.getModification();
+        Context ctx = getApplicationContext();
+        if (cache.getIfCurrent(ctx, modification, notes) != null) return;
+        RecipeExporter exporter = ShareBookCache.exporterFor(recipes.getList(), notes);
+        fileIoExecutor.execute(() ->
+        {
+            try
+            {
+                cache.write(ctx, exporter, modification, notes, null);
+            } catch (IOException e)
+            {
+            }
+        });
+    }
+
+    /**
+     * Checks whether any of the recipes have notes.
+     *
+     * @param recipes The recipes.
+     * @return True if at least one recipe has notes.
+     */
+    private static boolean hasNotes(List<Recipe> recipes)
+    {
+        for (Recipe recipe : recipes)
+        {
+            if (recipe.getNotes() != null && !recipe.getNotes().replaceAll("\n", "").trim().isEmpty())
+            {
+                return true;
+            }
+        }
+        return false;
     }
 
 
     /**
      * Load recipes from the selected file.
-     * This method reads the content of the file specified by {@code importUri},
-     * parses each recipe, and adds them to the current list of recipes.
+     * The file specified by {@code importUri} is streamed through a {@link RecipeBookReader}
+     * and the recipes are parsed in parallel by an {@link ImportPipeline}, then added to the
+     * current list of recipes in the order they appear in the file.
+     * The whole file is never held in memory.
+     * A new import first sniffs the start of the file with {@link ImportFormat}; ZIP archives,
+     * web pages, JSON Lines exports and MealMaster or MasterCook files are read by their own
+     * sources instead, and are not checkpointed. A file of changes made by an export of changes
+     * is applied to the book with {@link RecipeDelta} whatever the import mode: changed recipes
+     * replace the book's copies, new ones are added and deleted ones removed.
      * The import behavior (append, overwrite, or merge) is determined by the
-     * {@code importMode} variable.
-     * Progress updates are sent via a BroadcastReceiver.
+     * {@code importMode} variable. When merging, each recipe is looked up in the book's
+     * {@link FingerprintIndex} as it arrives and dropped if the book already has it, so the
+     * cost of a merge depends on the size of the import, not the size of the book.
+     * Every {@link ImportCheckpoint#INTERVAL_MS} milliseconds the recipes added so far are saved
+     * along with an {@link ImportCheckpoint}, so that an import interrupted by the app being
+     * killed can be resumed.
+     * Progress updates are reported through the {@link ProgressChannel}.
+     *
+     * @param resumeFrom The checkpoint of an interrupted import to carry on from, or null to start a new import.
+     * @throws Exception If the import fails.
      */
-    private void loadRecipes()
+    private void loadRecipes(ImportCheckpoint resumeFrom) throws Exception
     {
-        Intent intent = new Intent();
-        intent.setAction(MainActivity.ProgressReceiver.ACTION);
+        Context ctx = getApplicationContext();
         Recipes recipes = Recipes.getInstance();
-        String recipeText = "";
-        StringBuilder fileContents = new StringBuilder();
-        String line = "";
+        ContentResolver cr = getContentResolver();
         long fileSize = 0;
-        try
+        AssetFileDescriptor afd = cr.openAssetFileDescriptor(importUri, "r");
+        if (afd != null)
         {
-            ContentResolver cr = getContentResolver();
-            AssetFileDescriptor afd = cr.openAssetFileDescriptor(importUri, "r");
             fileSize = afd.getLength();
             afd.close();
-            InputStream inputStream = cr.openInputStream(importUri);
-            InputStreamReader isr = new InputStreamReader(inputStream);
-            BufferedReader br = new BufferedReader(isr);
-            while (line != null)
+        }
+        final long totalSize = fileSize;
+        InputStream inputStream = cr.openInputStream(importUri);
+        if (inputStream == null) throw new IOException("Unable to open " + importUri);
+        if (resumeFrom == null)
+        {
+            inputStream = new BufferedInputStream(inputStream);
+            int format = ImportFormat.detect(inputStream);
+            if (format == ImportFormat.ZIP)
             {
-                line = br.readLine();
-                if (line != null) fileContents.append(line).append("\n");
-                intent.putExtra(ProgressReceiver.PROGRESS, ProgressReceiver.READING);
-                intent.putExtra(ProgressReceiver.VALUE, (long) fileContents.length());
-                intent.putExtra(ProgressReceiver.TOTAL, fileSize);
-                getApplicationContext().sendBroadcast(intent);
+                loadRecipesFromZip(inputStream, fileSize);
+                return;
+            }
+            if (format == ImportFormat.HTML)
+            {
+                try (HtmlRecipeSource source = new HtmlRecipeSource(inputStream))
+                {
+                    loadRecipesFrom(source, () -> 0L, fileSize);
+                }
+                return;
+            }
+            if (format == ImportFormat.DELTA)
+            {
+                CountingInputStream counter = new CountingInputStream(inputStream);
+                try
+                {
+                    RecipeDelta.apply(counter, recipes, () -> progressChannel.report(ProgressChannel.LOAD, counter.getCount(), totalSize));
+                } finally
+                {
+                    counter.close();
+                }
+                return;
+            }
+            if (format == ImportFormat.JSON_LINES)
+            {
+                try (JsonLinesSource source = new JsonLinesSource(inputStream))
+                {
+                    loadRecipesFrom(source, source::getBytesRead, fileSize);
+                }
+                return;
+            }
+            if (format == ImportFormat.MEAL_MASTER || format == ImportFormat.MASTER_COOK)
+            {
+                try (LegacyRecipeSource source = new LegacyRecipeSource(inputStream, format))
+                {
+                    loadRecipesFrom(source, source::getBytesRead, fileSize);
+                }
+                return;
             }
-            br.close();
-        } catch (Exception e)
-        {
-            Toast toast = Toast.makeText(getApplicationContext(), "Unable to import. " + e.getMessage(), Toast.LENGTH_LONG);
-            toast.show();
         }
-        if (importMode == IMPORT_OVERWRITE)
+        ImportCheckpoint checkpoint = resumeFrom;
+        if (checkpoint == null)
+        {
+            checkpoint = new ImportCheckpoint(importUri.toString(), importMode, fileSize);
+            checkpoint.write(ctx);
+        } else
         {
-            recipes.getList().clear();
+            if (checkpoint.getFileSize() != fileSize)
+            {
+                throw new IOException("The file has changed since the import was interrupted.");
+            }
+            checkpoint.resolve(recipes.getGeneration());
         }
-        String[] recipesText = fileContents.toString().split("\n");
-        for (String s : recipesText)
+        final ImportCheckpoint importCheckpoint = checkpoint;
+        long startOffset = checkpoint.getOffset();
+        try (RecipeBookReader reader = new RecipeBookReader(inputStream, startOffset))
         {
-            line = s;
-            if (line.startsWith(RECIPE_BREAK_DETECT))
+            skipFully(inputStream, startOffset);
+            if (importMode == IMPORT_OVERWRITE && startOffset == 0)
             {
-                try
+                recipes.clear();
+            }
+            final FingerprintIndex fingerprintIndex = importMode == IMPORT_MERGE ? recipes.getFingerprintIndex() : null;
+            final int[] imported = {checkpoint.getRecipeCount()};
+            final int[] skipped = {0};
+            final long[] nextCheckpoint = {SystemClock.uptimeMillis() + ImportCheckpoint.INTERVAL_MS};
+            new ImportPipeline().run(reader, new ImportPipeline.RecipeSink()
+            {
+                @Override
+                public void accept(Recipe recipe, long position)
                 {
-                    parseAndAddRecipe(recipes, recipeText);
-                } catch (Throwable e)
+                    if (fingerprintIndex == null || !fingerprintIndex.contains(recipe))
+                    {
+                        recipes.add(recipe);
+                        imported[0]++;
+                    }
+                    if (SystemClock.uptimeMillis() >= nextCheckpoint[0])
+                    {
+                        importCheckpoint.commit(ctx, recipes, position, imported[0]);
+                        nextCheckpoint[0] = SystemClock.uptimeMillis() + ImportCheckpoint.INTERVAL_MS;
+                    }
+                    progressChannel.report(ProgressChannel.LOAD, reader.getBytesRead(), totalSize);
+                }
+
+                @Override
+                public void skip(long position)
                 {
+                    skipped[0]++;
                 }
-                recipeText = "";
-            } else
+            });
+            reportSkippedRecipes(skipped[0]);
+        }
+    }
+
+    /**
+     * Loads recipes from a ZIP archive of recipe files and saved web pages.
+     * Each file in the archive is streamed straight from the archive, and the recipes of all of
+     * them go through one {@link ImportPipeline}, so they are parsed in parallel and progress is
+     * reported against the size of the whole archive.
+     * Entries that can't be read are listed to the user afterwards rather than ending the import.
+     *
+     * @param inputStream The archive.
+     * @param fileSize    The size of the archive in bytes.
+     * @throws Exception If the import fails.
+     */
+    private void loadRecipesFromZip(InputStream inputStream, long fileSize) throws Exception
+    {
+        try (ZipRecipeSource source = new ZipRecipeSource(inputStream))
+        {
+            loadRecipesFrom(source, source::getBytesRead, fileSize);
+            final List<String> errors = source.getErrors();
+            if (!errors.isEmpty())
             {
-                recipeText += line + "\n";
+                mainThreadHandler.post(() -> showImportErrors(errors));
             }
         }
-        if (!recipeText.isEmpty() && !recipeText.equals("null"))
+    }
+
+    /**
+     * Loads recipes from a source other than a plain recipe book, such as an archive or a web page.
+     * These imports are not checkpointed, since they can't be resumed part way through.
+     *
+     * @param source    Where to read recipes from.
+     * @param bytesRead How much of the file has been read, for progress.
+     * @param fileSize  The size of the file in bytes.
+     * @throws Exception If the import fails.
+     */
+    private void loadRecipesFrom(ImportPipeline.ChunkSource source, LongSupplier bytesRead, long fileSize) throws Exception
+    {
+        Recipes recipes = Recipes.getInstance();
+        ImportCheckpoint.clear(getApplicationContext());
+        if (importMode == IMPORT_OVERWRITE)
+        {
+            recipes.clear();
+        }
+        final FingerprintIndex fingerprintIndex = importMode == IMPORT_MERGE ? recipes.getFingerprintIndex() : null;
+        final int[] skipped = {0};
+        new ImportPipeline().run(source, new ImportPipeline.RecipeSink()
         {
-            try
+            @Override
+            public void accept(Recipe recipe, long position)
             {
-                parseAndAddRecipe(recipes, recipeText);
-            } catch (Throwable t)
+                if (fingerprintIndex == null || !fingerprintIndex.contains(recipe))
+                {
+                    recipes.add(recipe);
+                }
+                progressChannel.report(ProgressChannel.LOAD, bytesRead.getAsLong(), fileSize);
+            }
+
+            @Override
+            public void skip(long position)
             {
+                skipped[0]++;
             }
+        });
+        reportSkippedRecipes(skipped[0]);
+    }
+
+    /**
+     * Tells the user how many recipes of an import could not be read, if any.
+     * May be called on any thread.
+     *
+     * @param count The number of recipes skipped.
+     */
+    private void reportSkippedRecipes(int count)
+    {
+        if (count == 0) return;
+        String message = getResources().getQuantityString(R.plurals.import_skipped, count, count);
+        mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show());
+    }
+
+    /**
+     * Lists the files of an archive that could not be imported.
+     *
+     * @param errors The problems, one per file.
+     */
+    private void showImportErrors(List<String> errors)
+    {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < errors.size() && i < MAX_IMPORT_ERRORS_SHOWN; i++)
+        {
+            message.append(errors.get(i)).append('\n');
+        }
+        if (errors.size() > MAX_IMPORT_ERRORS_SHOWN)
+        {
+            message.append(getString(R.string.import_errors_more, errors.size() - MAX_IMPORT_ERRORS_SHOWN));
         }
-        if (importMode == IMPORT_MERGE)
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.import_errors_title);
+        builder.setMessage(message.toString().trim());
+        builder.setPositiveButton(android.R.string.ok, null);
+        builder.show();
+    }
+
+    /**
+     * Skips a number of bytes of a stream.
+     *
+     * @param inputStream The stream.
+     * @param count       The number of bytes to skip.
+     * @throws IOException If the stream ends first or cannot be read.
+     */
+    private static void skipFully(InputStream inputStream, long count) throws IOException
+    {
+        while (count > 0)
         {
-            recipes.dedupe(getApplicationContext());
+            long skipped = inputStream.skip(count);
+            if (skipped <= 0)
+            {
+                if (inputStream.read() < 0) throw new IOException("The file is shorter than expected.");
+                skipped = 1;
+            }
+            count -= skipped;
         }
-        intent.putExtra(ProgressReceiver.PROGRESS, ProgressReceiver.DONE);
-        getApplicationContext().sendBroadcast(intent);
     }
 
     /**
-     * Parses the provided text of a single recipe and adds it to the specified {@link Recipes} object.
-     * This method utilizes {@link RecipeParser} to extract details like title, servings,
-     * ingredients, directions, and notes from the recipe text.
+     * Offers to carry on with an import that was interrupted, if there is one.
+     */
+    private void offerResumeImport()
+    {
+        if (importRunning) return;
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(getApplicationContext());
+        if (checkpoint == null) return;
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle(R.string.resume_import_title);
+        builder.setMessage(getString(R.string.resume_import_prompt, checkpoint.getRecipeCount()));
+        builder.setCancelable(false);
+        builder.setPositiveButton(R.string.resume, (dialog, which) -> resumeImport(checkpoint));
+        builder.setNegativeButton(R.string.discard, (dialog, which) -> clearImportCheckpoint());
+        builder.show();
+    }
+
+    /**
+     * Carries on with an interrupted import from its last checkpoint.
      *
-     * @param recipes    The {@link Recipes} object to which the parsed recipe will be added.
-     * @param recipeText The string containing the raw text of the recipe to be parsed.
+     * @param checkpoint The checkpoint of the interrupted import.
      */
-    private void parseAndAddRecipe(Recipes recipes, String recipeText)
+    private void resumeImport(ImportCheckpoint checkpoint)
     {
-        Recipe recipe = new Recipe();
-        RecipeParser parser = new RecipeParser();
-        parser.setRawText(recipeText, true);
-        recipe.setTitle(parser.getTitle());
-        recipe.setServings(Integer.toString(parser.getServings()));
-        recipe.setMetric(parser.isMetric());
-        recipe.setIngredients(parser.getIngredients());
-        recipe.setDirections(parser.getDirections());
-        recipe.setNotes(parser.getNotes());
-        recipes.getList().add(recipe);
+        importUri = Uri.parse(checkpoint.getUri());
+        importMode = checkpoint.getImportMode();
+        showProgressDialog();
+        fileIoExecutor.execute(() -> runImport(checkpoint));
+    }
+
+    /**
+     * Removes the checkpoint of the last import and gives up access to its file.
+     */
+    private void clearImportCheckpoint()
+    {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(getApplicationContext());
+        ImportCheckpoint.clear(getApplicationContext());
+        if (checkpoint == null) return;
+        try
+        {
+            getContentResolver().releasePersistableUriPermission(Uri.parse(checkpoint.getUri()), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e)
+        {
+        }
     }
 
 
@@ -505,16 +783,7 @@ public class MainActivity extends AppCompatActivity
     public void checkIncludeNotes(View view)
     {
         setIncludeNotes(true);
-        boolean hasNotes = false;
-        for (Recipe recipe : Recipes.getInstance().getList())
-        {
-            if (recipe.getNotes() != null && !recipe.getNotes().replaceAll("\n", "").trim().isEmpty())
-            {
-                hasNotes = true;
-                break;
-            }
-        }
-        if (hasNotes)
+        if (hasNotes(Recipes.getInstance().getList()))
         {
             new AlertDialog.Builder(view.getContext())
                     .setTitle(R.string.share)
@@ -540,22 +809,53 @@ public class MainActivity extends AppCompatActivity
 
     /**
      * Share entire recipe book as plain text.
-     * Writes the recipes to a temporary file, then creates an email intent
-     * to share the file.
+     * Shares the book file kept by {@link ShareBookCache} if it is current. Otherwise the recipes
+     * are streamed to the file on the file I/O thread first, and the user can cancel while the
+     * file is being written. Then an email intent is created to share the file.
      *
      * @param view The view that triggered this method, used for context.
      */
     public void shareRecipes(View view)
     {
-        try
+        Context ctx = getApplicationContext();
+        Recipes recipes = Recipes.getInstance();
+        ShareBookCache cache = ShareBookCache.getInstance();
+        final boolean notes = includeNotes;
+        cache.setLastIncludeNotes(notes);
+        int modification = recipes.getModification();
+        File book = cache.getIfCurrent(ctx, modification, notes);
+        if (book != null)
         {
+            sendBookFile(book);
+            return;
+        }
+        RecipeExporter exporter = ShareBookCache.exporterFor(recipes.getList(), notes);
+        showExportDialog(exporter);
+        fileIoExecutor.execute(() ->
+        {
+            try
+            {
+                File written = cache.write(ctx, exporter, modification, notes, exportChannel);
+                exportChannel.finish();
+                if (written != null) mainThreadHandler.post(() -> sendBookFile(written));
+            } catch (Exception e)
+            {
+                exportChannel.finish();
+                mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "Unable to share recipe book. " + e.getMessage(), Toast.LENGTH_LONG).show());
+            }
+        });
+    }
 
-            FileOutputStream out = openFileOutput(BOOK_FILE_NAME, Context.MODE_PRIVATE);
-            out.write(Recipes.getInstance().toPlainText(includeNotes).getBytes());
-            out.close();
-
+    /**
+     * Creates an email intent to share a recipe book file.
+     *
+     * @param filelocation The book file, in private storage.
+     */
+    private void sendBookFile(File filelocation)
+    {
+        try
+        {
             Context context = getApplicationContext();
-            File filelocation = new File(context.getFilesDir() + "/" + BOOK_FILE_NAME);
             Uri path = FileProvider.getUriForFile(context, getResources().getString(R.string.provider_name), filelocation);
             Intent emailIntent = new Intent(Intent.ACTION_SEND);
             emailIntent.setType("vnd.android.cursor.dir/email");
@@ -572,13 +872,65 @@ public class MainActivity extends AppCompatActivity
     }
 
     /**
-     * Called when the export button is clicked. Opens a dialog to save the recipes to a file.
+     * Called when the export button is clicked. Asks which format to export in, then opens a
+     * dialog to save the recipes to a file. Exporting only the changes since the last backup
+     * is offered too; if nothing has changed the user is told and no file is made.
      *
      * @param view The view that was clicked (the export button).
      */
     public void exportRecipes(View view)
     {
-        openSaveDialog();
+        String[] formats = {getString(R.string.export_text), getString(R.string.export_json_lines),
+                getString(R.string.export_markdown), getString(R.string.export_changes)};
+        new AlertDialog.Builder(view.getContext())
+                .setTitle(R.string.export_recipes)
+                .setItems(formats, (dialog, which) ->
+                {
+                    exportFormat = which;
+                    if (exportFormat == RecipeExporter.DELTA && !hasChangesSinceExport())
+                    {
+                        Toast.makeText(MainActivity.this, R.string.no_changes_since_export, Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    openSaveDialog();
+                })
+                .show();
+    }
+
+    /**
+     * Checks whether any recipes have been added, changed or deleted since the last backup.
+     * Only the recipes' modified times and the {@link ChangeLog} are looked at.
+     *
+     * @return True if there is anything to export.
+     */
+    private boolean hasChangesSinceExport()
+    {
+        ChangeLog changeLog = ChangeLog.getInstance();
+        long since = changeLog.getLastExport(getApplicationContext());
+        return !RecipeDelta.changedSince(Recipes.getInstance().getList(), since).isEmpty()
+                || !changeLog.getDeletionsSince(getApplicationContext(), since).isEmpty();
+    }
+
+    /**
+     * Registers a launcher for choosing where to save an export.
+     *
+     * @param mimeType The type of file the export is.
+     * @return The launcher.
+     */
+    private ActivityResultLauncher<String> registerExportLauncher(String mimeType)
+    {
+        return registerForActivityResult(
+                new ActivityResultContracts.CreateDocument(mimeType),
+                uri ->
+                {
+                    if (uri != null)
+                    {
+                        writeFileContent(uri);
+                    } else
+                    {
+                        Toast.makeText(MainActivity.this, "Export cancelled or failed.", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     /**
@@ -595,22 +947,37 @@ public class MainActivity extends AppCompatActivity
     /**
      * Presents a dialog for the user to choose a location and filename for exporting recipes.
      * This method launches an activity that allows the user to select a destination for the
-     * recipe export file. The default filename for the export is specified by
-     * {@link #DEFAULT_EXPORT_FILENAME}.
+     * recipe export file. The default filename for the export depends on {@code exportFormat}:
+     * {@link #DEFAULT_EXPORT_FILENAME}, {@link #JSON_LINES_EXPORT_FILENAME},
+     * {@link #MARKDOWN_EXPORT_FILENAME} or {@link #DELTA_EXPORT_FILENAME}.
      */
     private void openSaveDialog()
     {
-        exportFileLauncher.launch(DEFAULT_EXPORT_FILENAME);
+        switch (exportFormat)
+        {
+            case RecipeExporter.JSON_LINES:
+                jsonLinesExportLauncher.launch(JSON_LINES_EXPORT_FILENAME);
+                break;
+            case RecipeExporter.MARKDOWN:
+                markdownExportLauncher.launch(MARKDOWN_EXPORT_FILENAME);
+                break;
+            case RecipeExporter.DELTA:
+                jsonLinesExportLauncher.launch(DELTA_EXPORT_FILENAME);
+                break;
+            default:
+                exportFileLauncher.launch(DEFAULT_EXPORT_FILENAME);
+                break;
+        }
     }
 
     /**
-     * Opens a dialog for the user to select a text file to import recipes from.
-     * It launches an activity that allows the user to pick a document with the MIME type "text/plain".
+     * Opens a dialog for the user to select a text file, web page or ZIP archive to import recipes from.
+     * It launches an activity that allows the user to pick a plain text, HTML or ZIP document.
      * The result of this operation (the URI of the selected file) is handled by the {@code importFileLauncher}.
      */
     private void openImportDialog()
     {
-        importFileLauncher.launch(new String[]{"text/plain"});
+        importFileLauncher.launch(new String[]{"text/plain", "text/html", "application/zip", "application/x-zip-compressed", "application/json", "application/x-ndjson", "application/octet-stream"});
     }
 
     /**
@@ -686,44 +1053,121 @@ public class MainActivity extends AppCompatActivity
     /**
      * Writes the content of the recipe book to the specified URI.
      * This method is used for exporting the recipe book to a file.
-     * It retrieves the recipes, converts them to plain text (optionally including notes),
-     * and writes the text to the output stream associated with the given URI.
+     * The recipes (optionally including notes) are streamed to the file in the chosen
+     * {@code exportFormat} by a {@link RecipeExporter} on the file I/O thread, with progress shown in a dialog that lets the user cancel.
+     * A cancelled or failed export deletes the partly written file.
+     * A JSON Lines export or an export of changes is a backup, so once it has been written
+     * the {@link ChangeLog} is moved on to the time its recipes were taken at.
      * Toasts are displayed to indicate success or failure of the export operation.
      *
      * @param uri The URI of the file where the recipe book content will be written.
      */
     private void writeFileContent(Uri uri)
     {
-        try
+        Context ctx = getApplicationContext();
+        ChangeLog changeLog = ChangeLog.getInstance();
+        final long until = System.currentTimeMillis();
+        final boolean backup = exportFormat == RecipeExporter.JSON_LINES || exportFormat == RecipeExporter.DELTA;
+        RecipeExporter exporter;
+        if (exportFormat == RecipeExporter.DELTA)
+        {
+            long since = changeLog.getLastExport(ctx);
+            exporter = RecipeExporter.changesSince(Recipes.getInstance().getList(), changeLog.getDeletionsSince(ctx, since), since, until);
+        } else
         {
-            OutputStream outputStream = getContentResolver().openOutputStream(uri);
-            if (outputStream == null)
+            exporter = new RecipeExporter(Recipes.getInstance().getList(), includeNotes, exportFormat);
+        }
+        showExportDialog(exporter);
+        fileIoExecutor.execute(() ->
+        {
+            String message;
+            boolean written = false;
+            try
             {
-                Toast.makeText(getApplicationContext(), "Unable to open output stream for export.", Toast.LENGTH_LONG).show();
-                return;
+                OutputStream outputStream = getContentResolver().openOutputStream(uri);
+                if (outputStream == null)
+                {
+                    message = "Unable to open output stream for export.";
+                } else if (exporter.write(outputStream, exportChannel))
+                {
+                    message = "Recipes exported successfully.";
+                    written = true;
+                    if (backup) changeLog.exportFinished(ctx, until);
+                } else
+                {
+                    message = "Export cancelled.";
+                }
+            } catch (Exception e)
+            {
+                message = "Unable to export. " + e.getMessage();
             }
-            Recipes recipes = Recipes.getInstance();
-            outputStream.write(recipes.toPlainText(includeNotes).getBytes());
-            outputStream.close();
-            Toast.makeText(getApplicationContext(), "Recipes exported successfully.", Toast.LENGTH_SHORT).show();
+            if (!written) deleteDocument(uri);
+            exportChannel.finish();
+            final String result = message;
+            final int duration = written ? Toast.LENGTH_SHORT : Toast.LENGTH_LONG;
+            mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), result, duration).show());
+        });
+    }
+
+    /**
+     * Deletes a document created for an export that didn't finish.
+     *
+     * @param uri The document.
+     */
+    private void deleteDocument(Uri uri)
+    {
+        try
+        {
+            DocumentsContract.deleteDocument(getContentResolver(), uri);
         } catch (Exception e)
         {
-            Toast.makeText(getApplicationContext(), "Unable to export. " + e.getMessage(), Toast.LENGTH_LONG).show();
         }
     }
 
+    /**
+     * Shows a progress dialog for an export, with a button to cancel it.
+     *
+     * @param exporter The export the dialog is for.
+     */
+    private void showExportDialog(RecipeExporter exporter)
+    {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setCancelable(false);
+        exportDialogView = getLayoutInflater().inflate(R.layout.layout_loading_dialog, null);
+        builder.setView(exportDialogView);
+        builder.setNegativeButton(android.R.string.cancel, (dialog, which) -> exporter.cancel());
+        exportDialog = builder.create();
+        exportDialog.show();
+        setProgress(exportDialogView, "Exporting recipes", 0);
+    }
+
     /**
      * Reads the content of a recipe book file for import.
      * Displays a progress dialog while reading and processing the file.
      * Loads recipes from the file in a background thread.
      * Handles potential errors during file loading and displays a toast message.
+     * Access to the file is kept so an interrupted import can be resumed later.
      *
      * @param uri The URI of the recipe book file to import.
      */
     private void readFileContent(Uri uri)
     {
         importUri = uri;
+        try
+        {
+            getContentResolver().takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        } catch (SecurityException e)
+        {
+        }
+        showProgressDialog();
+        fileIoExecutor.execute(() -> runImport(null));
+    }
 
+    /**
+     * Shows the import progress dialog, creating it if necessary.
+     */
+    private void showProgressDialog()
+    {
         if (progressDialog != null && !progressDialog.isShowing())
         {
             progressDialog.show();
@@ -737,42 +1181,65 @@ public class MainActivity extends AppCompatActivity
             progressDialog = progBuilder.create();
             progressDialog.show();
         }
+    }
 
-        fileIoExecutor.execute(() ->
+    /**
+     * Runs an import on the file I/O thread, reporting any failure.
+     * The recipes are saved and the checkpoint removed here rather than when the UI hears the
+     * import is done, since the activity that started the import may have been destroyed or
+     * recreated by then.
+     * <p>
+     * Only an import that completes is saved and has its checkpoint removed. If it fails part
+     * way, the book is read in again as it was last saved, which for a checkpointed import is
+     * as of its last checkpoint, and the checkpoint is kept so the import can be resumed from
+     * there rather than started over, which would add the recipes before it a second time.
+     *
+     * @param resumeFrom The checkpoint of an interrupted import to carry on from, or null to start a new import.
+     */
+    private void runImport(ImportCheckpoint resumeFrom)
+    {
+        importRunning = true;
+        boolean complete = false;
+        try
         {
-            try
+            loadRecipes(resumeFrom);
+            Recipes.getInstance().save(getApplicationContext());
+            clearImportCheckpoint();
+            complete = true;
+        } catch (Exception e)
+        {
+            Recipes.getInstance().load(getApplicationContext());
+            mainThreadHandler.post(() -> Toast.makeText(getApplicationContext(), "Unable to import. " + e.getMessage(), Toast.LENGTH_LONG).show());
+        } finally
+        {
+            importRunning = false;
+            if (complete)
             {
-                loadRecipes();
-            } catch (Exception e)
+                progressChannel.finish();
+            } else
             {
-                mainThreadHandler.post(() ->
-                {
-                    if (progressDialog != null && progressDialog.isShowing())
-                    {
-                        progressDialog.dismiss();
-                    }
-                    Toast.makeText(MainActivity.this, "Error loading file: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                });
+                progressChannel.fail();
             }
-        });
+        }
     }
 
     /**
-     * Sets the progress of a file import operation.
+     * Sets the progress of a file import or export operation.
      * Updates a TextView with the given message and a ProgressBar with the given progress value.
      * The ProgressBar's maximum value is set to 1000.
      *
+     * @param dialogView The view of the progress dialog to update.
      * @param message  The message to display, indicating the current stage of the import.
      * @param progress The current progress value, ranging from 0 to 1000.
      */
-    private void setProgress(String message, int progress)
+    private void setProgress(View dialogView, String message, int progress)
     {
-        TextView messageView = progressDialogView.findViewById(R.id.loadingProgressText);
+        TextView messageView = dialogView.findViewById(R.id.loadingProgressText);
         if (messageView != null)
         {
             messageView.setText(message);
         }
-        ProgressBar progressBar = progressDialogView.findViewById(R.id.progressBar);
+        ProgressBar progressBar = dialogView.findViewById(R.id.progressBar);
         if (progressBar != null)
         {
             progressBar.setMax(1000);
@@ -783,27 +1250,31 @@ public class MainActivity extends AppCompatActivity
     /**
      * Called when the activity is being destroyed.
      * This is the final call the activity receives.
-     * It performs cleanup operations such as unregistering the broadcast receiver
-     * and shutting down the executor service.
+     * It performs cleanup operations such as detaching from the progress channels
+     * and shutting down the executor services.
      */
     @Override
     protected void onDestroy()
     {
         super.onDestroy();
-        if (progressReceiver != null)
+        progressChannel.removeListener(progressListener);
+        if (progressDialog != null && progressDialog.isShowing())
         {
-            try
-            {
-                unregisterReceiver(progressReceiver);
-            } catch (IllegalArgumentException e)
-            {
-            }
+            progressDialog.dismiss();
+        }
+        if (exportChannel != null)
+        {
+            exportChannel.setListener(null);
         }
 
         if (fileIoExecutor != null && !fileIoExecutor.isShutdown())
         {
             fileIoExecutor.shutdown();
         }
+        if (indexExecutor != null && !indexExecutor.isShutdown())
+        {
+            indexExecutor.shutdown();
+        }
     }
 
     /**
@@ -817,54 +1288,70 @@ public class MainActivity extends AppCompatActivity
     }
 
     /**
-     * Receives broadcast intents indicating the progress of file loading operations.
-     * This class updates the UI to reflect the current stage of the file loading process,
-     * such as reading the file, parsing recipes, merging recipes, or completion.
-     * It uses constants to define the actions and extra keys for the intents it handles.
+     * Updates the progress dialog as an import moves through its stages: reading the file,
+     * getting recipes, merging recipes, and completion. By the time the import is done its
+     * recipes have been saved, so completion only closes the dialog and shows them. If the
+     * import failed, the user is offered to resume it from its checkpoint, if it has one.
+     * Called on the main thread by the {@link ProgressChannel}, which is shared by every
+     * instance of this activity so that one recreated during an import still hears from it.
+     *
+     * @param stage The current stage, one of the {@link ProgressChannel} stage constants.
+     * @param done  How much of the stage is done.
+     * @param total How much there is to do in the stage.
      */
-    protected class ProgressReceiver extends BroadcastReceiver
+    private void onProgress(String stage, long done, long total)
     {
-        public static final String ACTION = "com.stevedegroof.recipe_wizard.ACTION_PROGRESS";
-        public static final String DONE = "done";
-        public static final String MERGE = "merge";
-        public static final String LOAD = "load";
-        public static final String READING = "reading";
-        public static final String PROGRESS = "progress";
-        public static final String TOTAL = "total";
-        public static final String VALUE = "value";
+        int permil = 1000;
+        if (done < total)
+        {
+            permil = (int) (done * 1000L / total);
+        }
+        switch (stage)
+        {
+            case ProgressChannel.READING:
+                setProgress(progressDialogView, "Loading file", permil);
+                break;
+            case ProgressChannel.LOAD:
+                setProgress(progressDialogView, "Getting recipes", permil);
+                break;
+            case ProgressChannel.MERGE:
+                setProgress(progressDialogView, "Merging recipes", permil);
+                break;
+            case ProgressChannel.DONE:
+                if (progressDialog != null) progressDialog.dismiss();
+                fillList();
+                if (importMode == IMPORT_MERGE) findNearDuplicates(null);
+                break;
+            case ProgressChannel.FAILED:
+                if (progressDialog != null) progressDialog.dismiss();
+                fillList();
+                offerResumeImport();
+                break;
+        }
+    }
 
-        @Override
-        public void onReceive(Context context, Intent intent)
+    /**
+     * Updates the export progress dialog, and closes it when the export is finished.
+     * Called on the main thread by the export {@link ProgressChannel}.
+     *
+     * @param stage The current stage, {@link ProgressChannel#EXPORT} or {@link ProgressChannel#DONE}.
+     * @param done  How many recipes have been written.
+     * @param total How many recipes there are to write.
+     */
+    private void onExportProgress(String stage, long done, long total)
+    {
+        if (exportDialog == null) return;
+        if (ProgressChannel.DONE.equals(stage))
         {
-            String progress = intent.getStringExtra(PROGRESS);
-            if (progress != null)
-            {
-                long value = intent.getLongExtra(VALUE, 0);
-                long total = intent.getLongExtra(TOTAL, 10L);
-                int permil = 1000;
-                if (value < total)
-                {
-                    permil = (int) (value * 1000L / total);
-                }
-                switch (progress)
-                {
-                    case READING:
-                        setProgress("Loading file", permil);
-                        break;
-                    case LOAD:
-                        setProgress("Getting recipes", permil);
-                        break;
-                    case MERGE:
-                        setProgress("Merging recipes", permil);
-                        break;
-                    case DONE:
-                        if (progressDialog != null) progressDialog.dismiss();
-                        Recipes.getInstance().save(getApplicationContext());
-                        fillList();
-                        break;
-                }
-            }
+            if (exportDialog.isShowing()) exportDialog.dismiss();
+            return;
+        }
+        int permil = 1000;
+        if (done < total)
+        {
+            permil = (int) (done * 1000L / total);
         }
+        setProgress(exportDialogView, "Exporting recipes", permil);
     }
 
 }
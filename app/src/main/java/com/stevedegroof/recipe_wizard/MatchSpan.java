@@ -0,0 +1,64 @@
+package com.stevedegroof.recipe_wizard;
+
+/**
+ * The location of a search match within one field of a recipe.
+ * Offsets index into the field's text as stored in the {@link Recipe},
+ * with {@code start} inclusive and {@code end} exclusive.
+ */
+public class MatchSpan
+{
+    public static final int TITLE = 0;
+    public static final int INGREDIENTS = 1;
+    public static final int DIRECTIONS = 2;
+    public static final int NOTES = 3;
+
+    private final int field;
+    private final int start;
+    private final int end;
+
+    public MatchSpan(int field, int start, int end)
+    {
+        this.field = field;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Gets the text of a recipe field.
+     *
+     * @param recipe The recipe.
+     * @param field  One of {@link #TITLE}, {@link #INGREDIENTS}, {@link #DIRECTIONS} or {@link #NOTES}.
+     * @return The field's text, or null if the recipe has none.
+     */
+    public static String fieldText(Recipe recipe, int field)
+    {
+        switch (field)
+        {
+            case TITLE:
+                return recipe.getTitle();
+            case INGREDIENTS:
+                return recipe.getIngredients();
+            case DIRECTIONS:
+                return recipe.getDirections();
+            case NOTES:
+                return recipe.getNotes();
+            default:
+                return null;
+        }
+    }
+
+    public int getField()
+    {
+        return field;
+    }
+
+    public int getStart()
+    {
+        return start;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+}
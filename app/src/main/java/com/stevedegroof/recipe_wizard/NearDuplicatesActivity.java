@@ -0,0 +1,193 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.Window;
+import android.view.WindowManager;
+import android.widget.Button;
+import android.widget.ProgressBar;
+import android.widget.RadioButton;
+import android.widget.RadioGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.core.view.WindowInsetsControllerCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Lets the user review recipes that are almost the same, as found by {@link NearDuplicateFinder}.
+ * Each group of near duplicates is shown in turn. The user can pick the copy to keep and merge
+ * the group into it, or keep every copy.
+ */
+public class NearDuplicatesActivity extends AppCompatActivity
+{
+    private static final int SUMMARY_INGREDIENTS = 3;
+
+    private ExecutorService searchExecutor;
+    private Handler mainThreadHandler;
+    private List<List<Recipe>> clusters = new ArrayList<>();
+    private int clusterIndex = 0;
+    private TextView countText;
+    private RadioGroup duplicatesGroup;
+    private Button keepAllButton;
+    private Button mergeButton;
+    private ProgressBar progressBar;
+
+    /**
+     * Initializes the activity and starts looking for near duplicates in the background.
+     *
+     * @param savedInstanceState If the activity is being re-initialized after
+     *                           previously being shut down then this Bundle contains the data it most
+     *                           recently supplied in {@link #onSaveInstanceState}.  <b><i>Note: Otherwise it is null.</i></b>
+     */
+    @Override
+    protected void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        Window window = getWindow();
+        window.clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
+        window.addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);
+        window.setStatusBarColor(ContextCompat.getColor(this, R.color.white));
+        WindowInsetsControllerCompat insetsController = new WindowInsetsControllerCompat(window, window.getDecorView());
+        insetsController.setAppearanceLightStatusBars(true);
+        setContentView(R.layout.activity_near_duplicates);
+
+        countText = findViewById(R.id.text_duplicates_count);
+        duplicatesGroup = findViewById(R.id.duplicates_group);
+        keepAllButton = findViewById(R.id.button_keep_all);
+        mergeButton = findViewById(R.id.button_merge_duplicates);
+        progressBar = findViewById(R.id.duplicates_progress);
+        keepAllButton.setOnClickListener(this::keepAll);
+        mergeButton.setOnClickListener(this::merge);
+
+        searchExecutor = Executors.newSingleThreadExecutor();
+        mainThreadHandler = new Handler(Looper.getMainLooper());
+        final List<Recipe> recipes = new ArrayList<>(Recipes.getInstance().getList());
+        searchExecutor.execute(() ->
+        {
+            List<List<Recipe>> found = NearDuplicateFinder.findClusters(recipes);
+            mainThreadHandler.post(() ->
+            {
+                if (isFinishing() || isDestroyed()) return;
+                progressBar.setVisibility(View.GONE);
+                clusters = found;
+                if (clusters.isEmpty())
+                {
+                    Toast.makeText(this, R.string.near_duplicates_none, Toast.LENGTH_SHORT).show();
+                    finish();
+                    return;
+                }
+                showCluster();
+            });
+        });
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        super.onDestroy();
+        if (searchExecutor != null) searchExecutor.shutdownNow();
+    }
+
+    /**
+     * Shows the current group of near duplicates, or closes the screen when all have been reviewed.
+     */
+    private void showCluster()
+    {
+        if (clusterIndex >= clusters.size())
+        {
+            finish();
+            return;
+        }
+        List<Recipe> cluster = clusters.get(clusterIndex);
+        countText.setText(getString(R.string.near_duplicates_count, clusterIndex + 1, clusters.size()));
+        duplicatesGroup.removeAllViews();
+        for (Recipe recipe : cluster)
+        {
+            RadioButton option = new RadioButton(this);
+            option.setId(View.generateViewId());
+            option.setText(summarize(recipe));
+            option.setPadding(0, 8, 0, 8);
+            duplicatesGroup.addView(option);
+        }
+        duplicatesGroup.check(duplicatesGroup.getChildAt(0).getId());
+        keepAllButton.setEnabled(true);
+        mergeButton.setEnabled(true);
+    }
+
+    /**
+     * Builds a short description of a recipe, enough to tell near duplicates apart.
+     *
+     * @param recipe The recipe.
+     * @return The title followed by the first few ingredients.
+     */
+    private String summarize(Recipe recipe)
+    {
+        StringBuilder summary = new StringBuilder(String.valueOf(recipe.getTitle()));
+        String ingredients = recipe.getIngredients();
+        if (ingredients != null)
+        {
+            String[] lines = ingredients.split("\n");
+            int shown = 0;
+            for (int i = 0; i < lines.length && shown < SUMMARY_INGREDIENTS; i++)
+            {
+                if (lines[i].trim().isEmpty()) continue;
+                summary.append(shown == 0 ? "\n" : ", ").append(lines[i].trim());
+                shown++;
+            }
+            if (lines.length > shown) summary.append(", …");
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Keeps the selected recipe of the current group and removes the others. Notes from the
+     * removed copies that the kept recipe doesn't already have are added to its notes.
+     *
+     * @param view The merge button.
+     */
+    private void merge(View view)
+    {
+        List<Recipe> cluster = clusters.get(clusterIndex);
+        int selected = duplicatesGroup.indexOfChild(duplicatesGroup.findViewById(duplicatesGroup.getCheckedRadioButtonId()));
+        if (selected < 0) selected = 0;
+        Recipe kept = cluster.get(selected);
+        Recipes recipes = Recipes.getInstance();
+        for (Recipe recipe : cluster)
+        {
+            if (recipe == kept) continue;
+            String notes = recipe.getNotes();
+            if (notes != null && !notes.trim().isEmpty())
+            {
+                String keptNotes = kept.getNotes() == null ? "" : kept.getNotes();
+                if (!keptNotes.contains(notes.trim()))
+                {
+                    kept.setNotes(keptNotes.isEmpty() ? notes.trim() : keptNotes + "\n" + notes.trim());
+                }
+            }
+            recipes.remove(recipe);
+        }
+        recipes.save(getApplicationContext());
+        clusterIndex++;
+        showCluster();
+    }
+
+    /**
+     * Keeps every recipe in the current group and moves on to the next one.
+     *
+     * @param view The keep all button.
+     */
+    private void keepAll(View view)
+    {
+        clusterIndex++;
+        showCluster();
+    }
+}
@@ -0,0 +1,137 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.List;
+
+/**
+ * What {@link RecipeParser} found in the text of a recipe. A parsed recipe never changes once
+ * made, so it can be handed between threads freely.
+ */
+public final class ParsedRecipe
+{
+    private final String title;
+    private final String ingredients;
+    private final String directions;
+    private final String notes;
+    private final int servings;
+    private final boolean isMetric;
+    private final String prepTime;
+    private final String cookTime;
+    private final String totalTime;
+    private final double confidence;
+    private final List<ParsedRecipe> alternatives;
+
+    ParsedRecipe(String title, String ingredients, String directions, String notes, int servings,
+                 boolean isMetric, String prepTime, String cookTime, String totalTime,
+                 double confidence, List<ParsedRecipe> alternatives)
+    {
+        this.title = title;
+        this.ingredients = ingredients;
+        this.directions = directions;
+        this.notes = notes;
+        this.servings = servings;
+        this.isMetric = isMetric;
+        this.prepTime = prepTime;
+        this.cookTime = cookTime;
+        this.totalTime = totalTime;
+        this.confidence = confidence;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Makes a new recipe from what was parsed.
+     *
+     * @return The recipe.
+     */
+    public Recipe toRecipe()
+    {
+        Recipe recipe = new Recipe();
+        recipe.setTitle(title);
+        recipe.setServings(Integer.toString(servings));
+        recipe.setMetric(isMetric);
+        recipe.setIngredients(ingredients);
+        recipe.setDirections(directions);
+        recipe.setNotes(notes);
+        return recipe;
+    }
+
+    public String getTitle()
+    {
+        return title;
+    }
+
+    public String getIngredients()
+    {
+        return ingredients;
+    }
+
+    public String getDirections()
+    {
+        return directions;
+    }
+
+    public String getNotes()
+    {
+        return notes;
+    }
+
+    public int getServings()
+    {
+        return servings;
+    }
+
+    public boolean isMetric()
+    {
+        return isMetric;
+    }
+
+    /**
+     * Gets the line giving the preparation time, such as "Prep time: 10 minutes".
+     *
+     * @return The line, or an empty string if there was none.
+     */
+    public String getPrepTime()
+    {
+        return prepTime;
+    }
+
+    /**
+     * Gets the line giving the cooking or baking time.
+     *
+     * @return The line, or an empty string if there was none.
+     */
+    public String getCookTime()
+    {
+        return cookTime;
+    }
+
+    /**
+     * Gets the line giving the total time.
+     *
+     * @return The line, or an empty string if there was none.
+     */
+    public String getTotalTime()
+    {
+        return totalTime;
+    }
+
+    /**
+     * Gets how likely it is that the ingredients and directions were told apart correctly.
+     *
+     * @return The chance, from 0 to 1; 1 if the recipe had headers for both.
+     */
+    public double getConfidence()
+    {
+        return confidence;
+    }
+
+    /**
+     * Gets the next most likely ways the recipe could have been split into ingredients and
+     * directions, most likely first. Each has its own confidence and no alternatives of its own.
+     *
+     * @return The alternatives, which cannot be changed; empty if the recipe had headers for both.
+     */
+    public List<ParsedRecipe> getAlternatives()
+    {
+        return alternatives;
+    }
+}
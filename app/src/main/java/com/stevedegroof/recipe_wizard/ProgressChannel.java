@@ -0,0 +1,138 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Carries progress of long-running work, such as an import, from a background thread to the UI.
+ * <p>
+ * Workers may {@link #report(String, long, long)} as often as they like; reporting only records
+ * the latest stage and counts. Updates are delivered to the {@link Listener} on the main thread
+ * at most once every {@link #MIN_INTERVAL_MS} milliseconds, and only the latest values are
+ * delivered, so a tight loop costs a few field writes per report rather than a message per item.
+ * Everything stays in-process; nothing goes through the system's broadcast machinery.
+ */
+public class ProgressChannel
+{
+    public static final String READING = "reading";
+    public static final String LOAD = "load";
+    public static final String MERGE = "merge";
+    public static final String EXPORT = "export";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final long MIN_INTERVAL_MS = 100;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable deliver = this::deliver;
+    private Listener listener;
+    private String stage;
+    private long done;
+    private long total;
+    private boolean pending = false;
+    private long lastDelivery = 0;
+
+    /**
+     * Receives progress updates on the main thread.
+     */
+    public interface Listener
+    {
+        /**
+         * Called with the latest progress.
+         *
+         * @param stage The stage of the work, such as {@link #LOAD}, {@link #DONE} or {@link #FAILED}.
+         * @param done  How much of the stage is done.
+         * @param total How much there is to do in the stage.
+         */
+        void onProgress(String stage, long done, long total);
+    }
+
+    /**
+     * Creates a channel.
+     *
+     * @param listener Where to deliver progress; may be null.
+     */
+    public ProgressChannel(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets or clears where progress is delivered. Clear it when the listener goes away.
+     *
+     * @param listener Where to deliver progress; may be null.
+     */
+    public synchronized void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Clears where progress is delivered, but only if it is still the given listener, so a
+     * listener going away doesn't detach one that has since replaced it, as when an activity is
+     * recreated while the work it started is still running.
+     *
+     * @param listener The listener that is going away.
+     */
+    public synchronized void removeListener(Listener listener)
+    {
+        if (this.listener == listener) this.listener = null;
+    }
+
+    /**
+     * Records progress. Safe to call from any thread. Updates between deliveries are coalesced,
+     * but the last report is always delivered, so a final {@link #DONE} or {@link #FAILED} is
+     * never lost.
+     *
+     * @param stage The stage of the work.
+     * @param done  How much of the stage is done.
+     * @param total How much there is to do in the stage.
+     */
+    public synchronized void report(String stage, long done, long total)
+    {
+        this.stage = stage;
+        this.done = done;
+        this.total = total;
+        if (pending) return;
+        pending = true;
+        long wait = lastDelivery + MIN_INTERVAL_MS - SystemClock.uptimeMillis();
+        handler.postDelayed(deliver, Math.max(0, wait));
+    }
+
+    /**
+     * Reports that the work is finished.
+     */
+    public void finish()
+    {
+        report(DONE, 1, 1);
+    }
+
+    /**
+     * Reports that the work has failed.
+     */
+    public void fail()
+    {
+        report(FAILED, 0, 1);
+    }
+
+    /**
+     * Delivers the latest progress to the listener. Runs on the main thread.
+     */
+    private void deliver()
+    {
+        String stage;
+        long done;
+        long total;
+        Listener listener;
+        synchronized (this)
+        {
+            pending = false;
+            lastDelivery = SystemClock.uptimeMillis();
+            stage = this.stage;
+            done = this.done;
+            total = this.total;
+            listener = this.listener;
+        }
+        if (listener != null) listener.onProgress(stage, done, total);
+    }
+}
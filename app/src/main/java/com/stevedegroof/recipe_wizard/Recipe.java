@@ -4,16 +4,27 @@ import android.os.Parcel;
 
 import androidx.annotation.NonNull;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Objects;
+import java.util.UUID;
 
 /**
  * Represents a single recipe with its title, servings, ingredients, directions, and notes.
  * This class implements {@link Comparable} to allow sorting of recipes.
  * It also supports parceling for Android.
+ * <p>
+ * Each recipe has an id that stays the same however the recipe is edited, and records when it
+ * was created and last modified. Setting any of the recipe's content to a different value
+ * updates the modified time, so the recipes changed since a given time can be found without
+ * looking at their content.
  */
 public class Recipe implements Comparable<Recipe>
 {
     private ArrayList<DirectionsPhrase> excludedPhrases = new ArrayList<>();
+    private String id;
+    private long created;
+    private long modified;
     private String title;
     private String servings;
     private boolean isMetric;
@@ -21,7 +32,14 @@ public class Recipe implements Comparable<Recipe>
     private String directions;
     private String notes;
 
+    private long fingerprint;
+    private boolean hasFingerprint;
+
     private transient double sortScore = 1d;
+    private transient int[] minHashSignature;
+    private transient SearchHit searchHit;
+    private transient long simHash;
+    private transient boolean hasSimHash;
 
 
     /**
@@ -40,12 +58,15 @@ public class Recipe implements Comparable<Recipe>
         this.isMetric = isMetric;
         this.ingredients = ingredients;
         this.directions = directions;
+        created = System.currentTimeMillis();
+        modified = created;
     }
 
 
     public Recipe()
     {
-
+        created = System.currentTimeMillis();
+        modified = created;
     }
 
     protected Recipe(Parcel in)
@@ -59,6 +80,63 @@ public class Recipe implements Comparable<Recipe>
     }
 
 
+    /**
+     * Gets the recipe's id, giving it one if it doesn't have one yet.
+     *
+     * @return The id, unique to this recipe.
+     */
+    public String getId()
+    {
+        if (id == null) id = UUID.randomUUID().toString();
+        return id;
+    }
+
+    /**
+     * Checks whether the recipe has been given an id. Recipes saved before ids were added don't have one.
+     *
+     * @return True if it has.
+     */
+    boolean hasId()
+    {
+        return id != null;
+    }
+
+    /**
+     * Gives the recipe a new id, for when its id turns out to be shared with another recipe.
+     */
+    void resetId()
+    {
+        id = UUID.randomUUID().toString();
+    }
+
+    /**
+     * Gets when the recipe was created.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getCreated()
+    {
+        return created;
+    }
+
+    /**
+     * Gets when the recipe's content last changed.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getModified()
+    {
+        return modified;
+    }
+
+    /**
+     * Records that the recipe's content has changed.
+     */
+    private void touch()
+    {
+        modified = Math.max(System.currentTimeMillis(), modified);
+    }
+
     public String getTitle()
     {
         return title;
@@ -66,7 +144,11 @@ public class Recipe implements Comparable<Recipe>
 
     public void setTitle(String title)
     {
+        if (!Objects.equals(this.title, title)) touch();
         this.title = title;
+        hasFingerprint = false;
+        hasSimHash = false;
+        searchHit = null;
     }
 
     public String getServings()
@@ -76,12 +158,14 @@ public class Recipe implements Comparable<Recipe>
 
     public void setServings(String servings)
     {
+        if (!Objects.equals(this.servings, servings)) touch();
         this.servings = servings;
+        hasFingerprint = false;
     }
 
     public void setServings(int servings)
     {
-        this.servings = Integer.toString(servings);
+        setServings(Integer.toString(servings));
     }
 
     public boolean isMetric()
@@ -91,6 +175,7 @@ public class Recipe implements Comparable<Recipe>
 
     public void setMetric(boolean metric)
     {
+        if (isMetric != metric) touch();
         isMetric = metric;
     }
 
@@ -101,7 +186,12 @@ public class Recipe implements Comparable<Recipe>
 
     public void setIngredients(String ingredients)
     {
+        if (!Objects.equals(this.ingredients, ingredients)) touch();
         this.ingredients = ingredients;
+        hasFingerprint = false;
+        hasSimHash = false;
+        minHashSignature = null;
+        searchHit = null;
     }
 
     public String getDirections()
@@ -111,7 +201,12 @@ public class Recipe implements Comparable<Recipe>
 
     public void setDirections(String directions)
     {
+        if (!Objects.equals(this.directions, directions)) touch();
         this.directions = directions;
+        hasFingerprint = false;
+        hasSimHash = false;
+        minHashSignature = null;
+        searchHit = null;
     }
 
 
@@ -123,14 +218,37 @@ public class Recipe implements Comparable<Recipe>
      */
     public String toPlainText(boolean includeNotes)
     {
-        String textContent = getTitle() + "\n";
-        textContent += "Ingredients\n" + getIngredients();
-        textContent += "Directions\n" + getDirections();
-        if (!textContent.endsWith("\n")) textContent += "\n";
-        textContent += "Serves " + getServings() + "\n";
+        StringBuilder textContent = new StringBuilder();
+        try
+        {
+            writePlainText(textContent, includeNotes);
+        } catch (IOException e)
+        {
+        }
+        return textContent.toString();
+    }
+
+    /**
+     * Writes the recipe as plain text, in the same form as {@link #toPlainText(boolean)},
+     * without building it as a string first.
+     *
+     * @param out          Where to write the recipe, such as a {@link java.io.Writer}.
+     * @param includeNotes Whether to include the notes in the output.
+     * @throws IOException If the recipe cannot be written.
+     */
+    public void writePlainText(Appendable out, boolean includeNotes) throws IOException
+    {
+        String directions = String.valueOf(getDirections());
+        out.append(String.valueOf(getTitle())).append('\n');
+        out.append("Ingredients\n").append(String.valueOf(getIngredients()));
+        out.append("Directions\n").append(directions);
+        if (!directions.isEmpty() && !directions.endsWith("\n")) out.append('\n');
+        out.append("Serves ").append(String.valueOf(getServings())).append('\n');
         if (includeNotes && notes != null && !notes.isEmpty())
-            textContent += "Notes\n" + notes + ((notes.endsWith("\n")) ? "" : "\n");
-        return textContent;
+        {
+            out.append("Notes\n").append(notes);
+            if (!notes.endsWith("\n")) out.append('\n');
+        }
     }
 
 
@@ -172,6 +290,7 @@ public class Recipe implements Comparable<Recipe>
 
     public void setExcludedPhrases(ArrayList<DirectionsPhrase> excludedPhrases)
     {
+        touch();
         this.excludedPhrases = excludedPhrases;
     }
 
@@ -186,6 +305,83 @@ public class Recipe implements Comparable<Recipe>
     }
 
 
+    /**
+     * Gets the matches found in this recipe by the most recent search.
+     *
+     * @return The matches, or null if the recipe didn't match or no search is active.
+     */
+    public SearchHit getSearchHit()
+    {
+        return searchHit;
+    }
+
+    public void setSearchHit(SearchHit searchHit)
+    {
+        this.searchHit = searchHit;
+    }
+
+    /**
+     * Gets the cached MinHash signature used by {@link RecipeSimilarityIndex}.
+     * The cache is cleared whenever the ingredients or directions change.
+     *
+     * @return The signature, or null if it has not been computed.
+     */
+    int[] getMinHashSignature()
+    {
+        return minHashSignature;
+    }
+
+    void setMinHashSignature(int[] minHashSignature)
+    {
+        this.minHashSignature = minHashSignature;
+    }
+
+    /**
+     * Checks whether the content fingerprint used by {@link RecipeFingerprint} has been cached.
+     * The cache is cleared whenever the title, servings, ingredients, directions or notes change.
+     * Unlike the other cached values it is saved with the recipe, so the recipe book's
+     * {@link FingerprintIndex} can be rebuilt after loading without rereading every recipe.
+     *
+     * @return True if {@link #getFingerprint()} is valid.
+     */
+    boolean hasFingerprint()
+    {
+        return hasFingerprint;
+    }
+
+    long getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    void setFingerprint(long fingerprint)
+    {
+        this.fingerprint = fingerprint;
+        hasFingerprint = true;
+    }
+
+    /**
+     * Checks whether the SimHash used by {@link NearDuplicateFinder} has been cached.
+     * The cache is cleared whenever the title, ingredients or directions change.
+     *
+     * @return True if {@link #getSimHash()} is valid.
+     */
+    boolean hasSimHash()
+    {
+        return hasSimHash;
+    }
+
+    long getSimHash()
+    {
+        return simHash;
+    }
+
+    void setSimHash(long simHash)
+    {
+        this.simHash = simHash;
+        hasSimHash = true;
+    }
+
     public String getNotes()
     {
         return notes;
@@ -193,6 +389,9 @@ public class Recipe implements Comparable<Recipe>
 
     public void setNotes(String notes)
     {
+        if (!Objects.equals(this.notes, notes)) touch();
         this.notes = notes;
+        hasFingerprint = false;
+        searchHit = null;
     }
 }
@@ -7,6 +7,7 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
@@ -103,17 +104,23 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeView
     static class RecipeViewHolder extends RecyclerView.ViewHolder
     {
         TextView recipeNameTextView;
+        TextView recipeSnippetTextView;
+        int highlightColor;
 
         RecipeViewHolder(View itemView)
         {
             super(itemView);
             recipeNameTextView = itemView.findViewById(R.id.text_view_recipe_name);
+            recipeSnippetTextView = itemView.findViewById(R.id.text_view_recipe_snippet);
+            highlightColor = ContextCompat.getColor(itemView.getContext(), R.color.search_highlight);
         }
 
 
         /**
          * Binds a recipe to the ViewHolder.
          * Sets the recipe name in the TextView and applies bold typeface if it's the current recipe.
+         * If the recipe matched the current search, the matches in the name are highlighted and a
+         * snippet around the first other match is shown below it.
          * Sets an OnClickListener to handle item clicks.
          *
          * @param recipe   The recipe to bind.
@@ -121,9 +128,20 @@ public class RecipeAdapter extends RecyclerView.Adapter<RecipeAdapter.RecipeView
          */
         void bind(final Recipe recipe, final OnItemClickListener listener)
         {
-            recipeNameTextView.setText(recipe.getTitle());
+            SearchHit hit = recipe.getSearchHit();
+            recipeNameTextView.setText(SearchHighlighter.highlightField(recipe.getTitle(), hit, MatchSpan.TITLE, highlightColor));
+            CharSequence snippet = SearchHighlighter.snippet(recipe, hit, highlightColor);
+            if (snippet == null)
+            {
+                recipeSnippetTextView.setVisibility(View.GONE);
+            } else
+            {
+                recipeSnippetTextView.setText(snippet);
+                recipeSnippetTextView.setVisibility(View.VISIBLE);
+            }
             recipeNameTextView.setTypeface(null, recipe == Recipes.getInstance().getCurrentRecipe() ? Typeface.BOLD : Typeface.NORMAL);
             recipeNameTextView.setPadding(16, 0, 0, 0);
+            recipeSnippetTextView.setPadding(16, 0, 0, 0);
             itemView.setOnClickListener(v ->
             {
                 if (listener != null)
@@ -0,0 +1,176 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a recipe book one recipe at a time.
+ * <p>
+ * A recipe book is UTF-8 text with recipes separated by lines starting with
+ * {@link MainActivity#RECIPE_BREAK_DETECT}. Lines are read from the stream and collected in a
+ * single reusable buffer until the next break, so memory use is bounded by the largest recipe
+ * rather than by the size of the file, and each recipe can be parsed as soon as it has been read.
+ * <p>
+ * Lines are split on the raw bytes, so the reader always knows exactly how many bytes of the
+ * file it has consumed. An import can record that position and later start a new reader there.
+ */
+public class RecipeBookReader implements Closeable, ImportPipeline.ChunkSource
+{
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final InputStream input;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final StringBuilder recipeText = new StringBuilder();
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private int position = 0;
+    private int limit = 0;
+    private boolean skipLineFeed = false;
+    private volatile long bytesRead = 0;
+    private boolean finished = false;
+
+    /**
+     * Creates a reader for a whole recipe book.
+     *
+     * @param inputStream The recipe book. It is closed when the reader is closed.
+     */
+    public RecipeBookReader(InputStream inputStream)
+    {
+        this(inputStream, 0);
+    }
+
+    /**
+     * Creates a reader that picks up part way through a recipe book.
+     *
+     * @param inputStream The recipe book, already positioned at {@code startOffset}.
+     *                    It is closed when the reader is closed.
+     * @param startOffset The byte offset the stream starts at, as returned by {@link #getBytesRead()}
+     *                    just after an earlier reader returned a recipe.
+     */
+    public RecipeBookReader(InputStream inputStream, long startOffset)
+    {
+        input = inputStream;
+        bytesRead = startOffset;
+        skipLineFeed = startOffset > 0;
+    }
+
+    /**
+     * Reads one line, accepting "\n", "\r\n" or "\r" as the line end.
+     *
+     * @return The line without its line end, or null at the end of the book.
+     * @throws IOException If the book cannot be read.
+     */
+    private String readLine() throws IOException
+    {
+        lineLength = 0;
+        boolean empty = true;
+        long count = bytesRead;
+        try
+        {
+            while (true)
+            {
+                if (position == limit)
+                {
+                    limit = input.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0)
+                    {
+                        limit = 0;
+                        return empty ? null : decodeLine();
+                    }
+                }
+                byte b = buffer[position++];
+                count++;
+                if (skipLineFeed)
+                {
+                    skipLineFeed = false;
+                    if (b == '\n') continue;
+                }
+                empty = false;
+                if (b == '\n') return decodeLine();
+                if (b == '\r')
+                {
+                    skipLineFeed = true;
+                    return decodeLine();
+                }
+                if (lineLength == line.length)
+                {
+                    byte[] larger = new byte[line.length * 2];
+                    System.arraycopy(line, 0, larger, 0, lineLength);
+                    line = larger;
+                }
+                line[lineLength++] = b;
+            }
+        } finally
+        {
+            bytesRead = count;
+        }
+    }
+
+    private String decodeLine()
+    {
+        return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next recipe.
+     * Blank lines at the very end of the book are dropped, and a book that ends in blank
+     * lines after its last break has no final recipe.
+     *
+     * @return The text of the next recipe, one line per line of the book, each ending in a newline;
+     * or null when the book has been read.
+     * @throws IOException If the book cannot be read.
+     */
+    public String nextRecipe() throws IOException
+    {
+        if (finished) return null;
+        recipeText.setLength(0);
+        int contentLength = 0;
+        String line;
+        while ((line = readLine()) != null)
+        {
+            if (line.startsWith(MainActivity.RECIPE_BREAK_DETECT))
+            {
+                return recipeText.toString();
+            }
+            recipeText.append(line).append('\n');
+            if (!line.isEmpty()) contentLength = recipeText.length();
+        }
+        finished = true;
+        recipeText.setLength(contentLength);
+        if (recipeText.length() == 0) return null;
+        return recipeText.toString();
+    }
+
+    @Override
+    public String next() throws IOException
+    {
+        return nextRecipe();
+    }
+
+    /**
+     * Gets the number of bytes of the book read so far, including any skipped before a
+     * {@code startOffset}. Just after {@link #nextRecipe()} returns, this is where the
+     * following recipe starts. Safe to call from any thread.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return bytesRead;
+    }
+
+    @Override
+    public long getPosition()
+    {
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        input.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.stevedegroof.recipe_wizard;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Reads and writes the changes to a recipe book since a backup, so a backup can be kept up to
+ * date without exporting every recipe each time.
+ * <p>
+ * A delta file is in JSON Lines. The first line is a header, {@code {"delta":1,"since":...,"until":...}},
+ * giving the times the changes run between. Each recipe added or changed in that time follows
+ * on a line of its own, as written by {@link RecipeJsonLines}, and then each recipe deleted
+ * in that time as {@code {"deleted":"id"}}.
+ * <p>
+ * Which recipes have changed is worked out from their {@link Recipe#getModified() modified times}
+ * and the {@link ChangeLog}, so finding the changes never reads any recipe's content; only the
+ * recipes that changed are written.
+ */
+public class RecipeDelta
+{
+    static final String HEADER_KEY = "delta";
+    private static final String DELETED_KEY = "deleted";
+
+    private RecipeDelta()
+    {
+    }
+
+    /**
+     * Finds the recipes added or changed since a time, from their modified times alone.
+     *
+     * @param recipes The recipes in the book.
+     * @param since   The time.
+     * @return The recipes modified at or after the time, in book order.
+     */
+    public static List<Recipe> changedSince(List<Recipe> recipes, long since)
+    {
+        ArrayList<Recipe> changed = new ArrayList<>();
+        for (Recipe recipe : recipes)
+        {
+            if (recipe.getModified() >= since) changed.add(recipe);
+        }
+        return changed;
+    }
+
+    /**
+     * Writes the header line of a delta.
+     *
+     * @param out   Where to write it.
+     * @param since The time the changes start at.
+     * @param until The time the changes run up to.
+     * @throws IOException If it cannot be written.
+     */
+    static void writeHeader(Appendable out, long since, long until) throws IOException
+    {
+        out.append("{\"").append(HEADER_KEY).append("\":1,\"since\":").append(Long.toString(since))
+                .append(",\"until\":").append(Long.toString(until)).append("}\n");
+    }
+
+    /**
+     * Writes the line for a deleted recipe.
+     *
+     * @param out Where to write it.
+     * @param id  The id of the deleted recipe.
+     * @throws IOException If it cannot be written.
+     */
+    static void writeDeletion(Appendable out, String id) throws IOException
+    {
+        JsonObject deletion = new JsonObject();
+        deletion.addProperty(DELETED_KEY, id);
+        out.append(deletion.toString()).append('\n');
+    }
+
+    /**
+     * Applies a delta to a recipe book.
+     * <p>
+     * A changed recipe replaces the recipe in the book with the same id, unless the book's copy
+     * was modified more recently; a recipe the book doesn't have is added. Deleted recipes are
+     * removed from the book. Lines that can't be read are skipped.
+     * The book is changed through {@link Recipes#add(Recipe)}, {@link Recipes#replace(int, Recipe)}
+     * and {@link Recipes#removeIf(java.util.function.Predicate)}, so its fingerprint index stays
+     * in step with it.
+     *
+     * @param inputStream The delta file, in UTF-8. It is not closed.
+     * @param book        The recipe book; changed in place.
+     * @param progress    Run after each line is read, to report progress; may be null.
+     * @return The number of recipes added, replaced or removed.
+     * @throws IOException If the file cannot be read.
+     */
+    public static int apply(InputStream inputStream, Recipes book, Runnable progress) throws IOException
+    {
+        List<Recipe> recipes = book.getList();
+        HashMap<String, Integer> positions = new HashMap<>();
+        for (int i = 0; i < recipes.size(); i++)
+        {
+            positions.put(recipes.get(i).getId(), i);
+        }
+        HashSet<String> deleted = new HashSet<>();
+        int changes = 0;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            if (progress != null) progress.run();
+            JsonObject object;
+            try
+            {
+                JsonElement element = JsonParser.parseString(line);
+                if (!element.isJsonObject()) continue;
+                object = element.getAsJsonObject();
+            } catch (RuntimeException e)
+            {
+                continue;
+            }
+            if (object.has(HEADER_KEY)) continue;
+            if (object.has(DELETED_KEY))
+            {
+                String id = object.get(DELETED_KEY).getAsString();
+                if (positions.containsKey(id) && deleted.add(id)) changes++;
+                continue;
+            }
+            Recipe recipe = RecipeJsonLines.parse(object);
+            if (recipe == null) continue;
+            Integer position = positions.get(recipe.getId());
+            if (position == null)
+            {
+                positions.put(recipe.getId(), recipes.size());
+                book.add(recipe);
+                changes++;
+            } else if (recipe.getModified() >= recipes.get(position).getModified())
+            {
+                book.replace(position, recipe);
+                changes++;
+            }
+        }
+        if (!deleted.isEmpty())
+        {
+            book.removeIf(recipe -> deleted.contains(recipe.getId()));
+        }
+        return changes;
+    }
+}
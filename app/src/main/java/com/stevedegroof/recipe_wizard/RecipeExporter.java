@@ -0,0 +1,169 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a recipe book straight to an output stream, in one of these formats:
+ * <ul>
+ *     <li>{@link #TEXT}: plain text with recipes separated by {@link MainActivity#RECIPE_BREAK}
+ *     lines, the same as {@link Recipes#toPlainText(boolean)}.</li>
+ *     <li>{@link #JSON_LINES}: one JSON recipe per line from {@link RecipeJsonLines}. Nothing is
+ *     lost, so the file can be imported again exactly. Notes are always included.</li>
+ *     <li>{@link #MARKDOWN}: Markdown from {@link RecipeMarkdown}, for reading.</li>
+ *     <li>{@link #DELTA}: only the recipes changed or deleted since a time, as a
+ *     {@link RecipeDelta}. Made with {@link #changesSince}.</li>
+ * </ul>
+ * Each recipe is written through a buffered UTF-8 {@link Writer} as it is reached, so the book
+ * is never held in memory as one string. Memory use is bounded by the buffer, not by the size
+ * of the book.
+ * <p>
+ * The exporter works on a copy of the recipe list taken when it is created, so it can run on a
+ * background thread while the book is changed on the main thread. It can be cancelled from any
+ * thread; it stops before the next recipe.
+ */
+public class RecipeExporter
+{
+    public static final int TEXT = 0;
+    public static final int JSON_LINES = 1;
+    public static final int MARKDOWN = 2;
+    public static final int DELTA = 3;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final List<Recipe> recipes;
+    private final boolean includeNotes;
+    private final int format;
+    private List<String> deletedIds = new ArrayList<>();
+    private long since = 0;
+    private long until = 0;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates an exporter.
+     *
+     * @param recipes      The recipes to write, in order. The list is copied.
+     * @param includeNotes Whether to include each recipe's notes.
+     */
+    public RecipeExporter(List<Recipe> recipes, boolean includeNotes)
+    {
+        this(recipes, includeNotes, TEXT);
+    }
+
+    /**
+     * Creates an exporter for a format.
+     *
+     * @param recipes      The recipes to write, in order. The list is copied.
+     * @param includeNotes Whether to include each recipe's notes.
+     * @param format       {@link #TEXT}, {@link #JSON_LINES} or {@link #MARKDOWN}.
+     */
+    public RecipeExporter(List<Recipe> recipes, boolean includeNotes, int format)
+    {
+        this.recipes = new ArrayList<>(recipes);
+        this.includeNotes = includeNotes;
+        this.format = format;
+    }
+
+    /**
+     * Creates an exporter for the changes to a book since a time. Only the recipes' modified
+     * times are looked at to find the changes.
+     *
+     * @param recipes    All the recipes in the book.
+     * @param deletedIds The ids of the recipes deleted since the time, from the {@link ChangeLog}.
+     * @param since      The time.
+     * @param until      The time now, which the next export of changes will start from.
+     * @return The exporter.
+     */
+    public static RecipeExporter changesSince(List<Recipe> recipes, List<String> deletedIds, long since, long until)
+    {
+        RecipeExporter exporter = new RecipeExporter(RecipeDelta.changedSince(recipes, since), true, DELTA);
+        exporter.deletedIds = new ArrayList<>(deletedIds);
+        exporter.since = since;
+        exporter.until = until;
+        return exporter;
+    }
+
+    /**
+     * Tells whether there is anything to export: any recipes, or for {@link #DELTA}, any deletions.
+     *
+     * @return True if the export would have content.
+     */
+    public boolean isEmpty()
+    {
+        return recipes.isEmpty() && deletedIds.isEmpty();
+    }
+
+    /**
+     * Writes the recipes. The stream is closed when done, cancelled or failed.
+     *
+     * @param outputStream Where to write the recipes.
+     * @param progress     Where to report progress as {@link ProgressChannel#EXPORT}; may be null.
+     * @return True if every recipe was written; false if the export was cancelled part way.
+     * @throws IOException If the recipes cannot be written.
+     */
+    public boolean write(OutputStream outputStream, ProgressChannel progress) throws IOException
+    {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE))
+        {
+            int count = recipes.size();
+            int total = count + deletedIds.size();
+            if (format == DELTA) RecipeDelta.writeHeader(writer, since, until);
+            for (int i = 0; i < count; i++)
+            {
+                if (cancelled) return false;
+                writeRecipe(writer, recipes.get(i), i == 0);
+                if (progress != null) progress.report(ProgressChannel.EXPORT, i + 1, total);
+            }
+            for (String id : deletedIds)
+            {
+                RecipeDelta.writeDeletion(writer, id);
+            }
+            return !cancelled;
+        }
+    }
+
+    /**
+     * Writes one recipe in the exporter's format, with a separator before it if it isn't the first.
+     */
+    private void writeRecipe(Writer writer, Recipe recipe, boolean first) throws IOException
+    {
+        switch (format)
+        {
+            case JSON_LINES:
+            case DELTA:
+                RecipeJsonLines.write(recipe, writer);
+                break;
+            case MARKDOWN:
+                if (!first) writer.write(RecipeMarkdown.RECIPE_SEPARATOR);
+                RecipeMarkdown.write(recipe, writer, includeNotes);
+                break;
+            default:
+                if (!first) writer.write(MainActivity.RECIPE_BREAK + "\n");
+                recipe.writePlainText(writer, includeNotes);
+                break;
+        }
+    }
+
+    /**
+     * Stops the export before the next recipe. Safe to call from any thread.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Tells whether the export has been cancelled.
+     *
+     * @return True if {@link #cancel()} has been called.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled;
+    }
+}
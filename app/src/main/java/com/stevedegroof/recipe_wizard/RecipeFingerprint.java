@@ -0,0 +1,139 @@
+package com.stevedegroof.recipe_wizard;
+
+/**
+ * Content fingerprints for detecting exact duplicate recipes.
+ * <p>
+ * Two recipes are duplicates if their plain text ({@link Recipe#toPlainText(boolean)}, with
+ * notes) is the same once whitespace is removed and case is ignored. Rather than building and
+ * comparing that text for every pair of recipes, each recipe is reduced once to a 64-bit hash of
+ * the same characters, fed straight from its fields. Recipes with different fingerprints are
+ * never duplicates; recipes with the same fingerprint are compared with
+ * {@link #sameContent(Recipe, Recipe)} to rule out a hash collision.
+ */
+public class RecipeFingerprint
+{
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private RecipeFingerprint()
+    {
+    }
+
+    /**
+     * Checks for the characters matched by the regular expression {@code \s}, which is what
+     * duplicates have always been compared without.
+     *
+     * @param c The character.
+     * @return True if the character is ignored.
+     */
+    private static boolean isIgnored(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Folds a character the same way {@link String#equalsIgnoreCase(String)} does.
+     *
+     * @param c The character.
+     * @return The folded character.
+     */
+    private static char fold(char c)
+    {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    private static long hash(long hash, String text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (isIgnored(c)) continue;
+            hash = (hash ^ fold(c)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static void append(StringBuilder canonical, String text)
+    {
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+            if (!isIgnored(c)) canonical.append(fold(c));
+        }
+    }
+
+    /**
+     * Gets the fields of a recipe that make up its plain text, in order, as
+     * {@link Recipe#toPlainText(boolean)} would write them with notes included.
+     *
+     * @param recipe The recipe.
+     * @return The text of each part.
+     */
+    private static String[] parts(Recipe recipe)
+    {
+        String notes = recipe.getNotes();
+        boolean hasNotes = notes != null && !notes.isEmpty();
+        return new String[]{String.valueOf(recipe.getTitle()), "Ingredients", String.valueOf(recipe.getIngredients()),
+                "Directions", String.valueOf(recipe.getDirections()), "Serves", String.valueOf(recipe.getServings()),
+                hasNotes ? "Notes" : "", hasNotes ? notes : ""};
+    }
+
+    /**
+     * Computes the fingerprint of a recipe.
+     *
+     * @param recipe The recipe.
+     * @return A 64-bit hash of the recipe's whitespace-stripped, case-folded plain text.
+     */
+    static long compute(Recipe recipe)
+    {
+        long hash = FNV_OFFSET;
+        for (String part : parts(recipe))
+        {
+            hash = hash(hash, part);
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * Gets the fingerprint of a recipe, computing and caching it if necessary.
+     *
+     * @param recipe The recipe.
+     * @return The fingerprint.
+     */
+    public static long of(Recipe recipe)
+    {
+        if (!recipe.hasFingerprint()) recipe.setFingerprint(compute(recipe));
+        return recipe.getFingerprint();
+    }
+
+    /**
+     * Builds the text a fingerprint is computed from.
+     *
+     * @param recipe The recipe.
+     * @return The recipe's plain text without whitespace, case-folded.
+     */
+    private static String canonicalText(Recipe recipe)
+    {
+        StringBuilder canonical = new StringBuilder();
+        for (String part : parts(recipe))
+        {
+            append(canonical, part);
+        }
+        return canonical.toString();
+    }
+
+    /**
+     * Checks whether two recipes are duplicates, i.e. have the same plain text ignoring
+     * whitespace and case. Only worth calling when the fingerprints are equal.
+     *
+     * @param a The first recipe.
+     * @param b The second recipe.
+     * @return True if the recipes are duplicates.
+     */
+    public static boolean sameContent(Recipe a, Recipe b)
+    {
+        return a == b || canonicalText(a).equals(canonicalText(b));
+    }
+}
@@ -0,0 +1,298 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A positional inverted index over the recipe book, used by {@link SearchQuery}.
+ * <p>
+ * Every field of every recipe is split into words (runs of letters and digits, folded to lower
+ * case). For each distinct word the index keeps a {@link Postings} list recording, for each
+ * occurrence, the recipe, the field, the word's position within the field and its character
+ * offset. Positions let phrase queries be answered by checking that the words of the phrase
+ * occur at consecutive positions, without reading any recipe text.
+ * <p>
+ * Words are also indexed in their {@link IngredientNormalizer#foldWord(String) folded} form
+ * (singular, with synonyms replaced), and known two-word synonyms such as "green onions" are
+ * indexed under their preferred name, so searches find "tomato" for "tomatoes" and
+ * "green onions" for "scallion".
+ * <p>
+ * The index is rebuilt whenever the {@link Recipes#getVersion() version} of the recipe book
+ * changes. Recipes are numbered in the order they were indexed, which is independent of
+ * the order the list is later sorted into.
+ */
+public class RecipeIndex
+{
+    private static final RecipeIndex theInstance = new RecipeIndex();
+
+    private final HashMap<String, Postings> terms = new HashMap<>();
+    private Recipe[] recipes = new Recipe[0];
+    private int indexedVersion = -1;
+
+    private RecipeIndex()
+    {
+    }
+
+    public static RecipeIndex getInstance()
+    {
+        return theInstance;
+    }
+
+    /**
+     * The occurrences of one word, in order of recipe, field and position.
+     * Each occurrence takes {@link #STRIDE} consecutive ints: recipe number, field,
+     * word position within the field, and the start and end character offsets within the field.
+     */
+    static class Postings
+    {
+        static final int STRIDE = 5;
+
+        private int[] data = new int[STRIDE * 2];
+        private int size = 0;
+
+        private void add(int doc, int field, int position, int start, int end)
+        {
+            if (size + STRIDE > data.length) data = Arrays.copyOf(data, data.length * 2);
+            data[size++] = doc;
+            data[size++] = field;
+            data[size++] = position;
+            data[size++] = start;
+            data[size++] = end;
+        }
+
+        /**
+         * Gets the number of occurrences.
+         *
+         * @return The number of occurrences.
+         */
+        int count()
+        {
+            return size / STRIDE;
+        }
+
+        int doc(int i)
+        {
+            return data[i * STRIDE];
+        }
+
+        int field(int i)
+        {
+            return data[i * STRIDE + 1];
+        }
+
+        int position(int i)
+        {
+            return data[i * STRIDE + 2];
+        }
+
+        int start(int i)
+        {
+            return data[i * STRIDE + 3];
+        }
+
+        int end(int i)
+        {
+            return data[i * STRIDE + 4];
+        }
+
+        /**
+         * Checks whether the word occurs at a given position, using a binary search.
+         *
+         * @param doc      The recipe number.
+         * @param field    The field.
+         * @param position The word position within the field.
+         * @return The occurrence number, or -1 if the word doesn't occur there.
+         */
+        int find(int doc, int field, int position)
+        {
+            int low = 0;
+            int high = count() - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int cmp = Integer.compare(doc(mid), doc);
+                if (cmp == 0) cmp = Integer.compare(field(mid), field);
+                if (cmp == 0) cmp = Integer.compare(position(mid), position);
+                if (cmp < 0) low = mid + 1;
+                else if (cmp > 0) high = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Splits text into lower-case words, the same way recipe fields are split when indexed.
+     *
+     * @param text The text.
+     * @return The words, in order.
+     */
+    static List<String> tokenize(String text)
+    {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        int length = text.length();
+        int i = 0;
+        while (i < length)
+        {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= length) break;
+            word.setLength(0);
+            while (i < length && Character.isLetterOrDigit(text.charAt(i)))
+            {
+                word.append(Character.toLowerCase(text.charAt(i)));
+                i++;
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * Records one occurrence of a word.
+     */
+    private void addPosting(String term, int doc, int field, int position, int start, int end)
+    {
+        Postings postings = terms.get(term);
+        if (postings == null)
+        {
+            postings = new Postings();
+            terms.put(term, postings);
+        }
+        postings.add(doc, field, position, start, end);
+    }
+
+    /**
+     * Adds the words of one field of a recipe to the index.
+     *
+     * @param doc   The recipe number.
+     * @param field The field.
+     * @param text  The field text; may be null.
+     * @param word  A scratch buffer.
+     */
+    private void indexField(int doc, int field, String text, StringBuilder word)
+    {
+        if (text == null) return;
+        int length = text.length();
+        int position = 0;
+        String previous = null;
+        int previousStart = 0;
+        int i = 0;
+        while (i < length)
+        {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= length) break;
+            int start = i;
+            word.setLength(0);
+            while (i < length && Character.isLetterOrDigit(text.charAt(i)))
+            {
+                word.append(Character.toLowerCase(text.charAt(i)));
+                i++;
+            }
+            String term = word.toString();
+            addPosting(term, doc, field, position, start, i);
+            String singular = IngredientNormalizer.singular(term);
+            String folded = IngredientNormalizer.foldWord(term);
+            if (!folded.equals(term)) addPosting(folded, doc, field, position, start, i);
+            if (previous != null)
+            {
+                String synonym = IngredientNormalizer.synonymFor(previous, singular);
+                if (synonym != null) addPosting(synonym, doc, field, position - 1, previousStart, i);
+            }
+            previous = singular;
+            previousStart = start;
+            position++;
+        }
+    }
+
+    /**
+     * Checks whether the index was built from the recipe book at a given version.
+     *
+     * @param version The {@link Recipes#getVersion() version} of the recipe book.
+     * @return True if {@link #refresh(List, int)} would do nothing for that version.
+     */
+    public synchronized boolean isCurrent(int version)
+    {
+        return version == indexedVersion;
+    }
+
+    /**
+     * Brings the index up to date with the given recipe list.
+     * Nothing is done if the version matches the last refresh, whether or not the list is the
+     * same object, since copies of the book taken at one version hold the same recipes.
+     * Building the index reads every recipe, so it is best done off the main thread.
+     *
+     * @param list    The recipes to index.
+     * @param version The {@link Recipes#getVersion() version} the list was taken at.
+     */
+    public synchronized void refresh(List<Recipe> list, int version)
+    {
+        if (version == indexedVersion) return;
+        terms.clear();
+        recipes = list.toArray(new Recipe[0]);
+        StringBuilder word = new StringBuilder();
+        for (int doc = 0; doc < recipes.length; doc++)
+        {
+            Recipe recipe = recipes[doc];
+            indexField(doc, MatchSpan.TITLE, recipe.getTitle(), word);
+            indexField(doc, MatchSpan.INGREDIENTS, recipe.getIngredients(), word);
+            indexField(doc, MatchSpan.DIRECTIONS, recipe.getDirections(), word);
+            indexField(doc, MatchSpan.NOTES, recipe.getNotes(), word);
+        }
+        indexedVersion = version;
+    }
+
+    /**
+     * Gets the number of recipes in the index.
+     *
+     * @return The number of recipes.
+     */
+    public synchronized int size()
+    {
+        return recipes.length;
+    }
+
+    /**
+     * Gets an indexed recipe by number.
+     *
+     * @param doc The recipe number.
+     * @return The recipe.
+     */
+    public synchronized Recipe getRecipe(int doc)
+    {
+        return recipes[doc];
+    }
+
+    /**
+     * Gets the occurrences of a word.
+     *
+     * @param term The word, in lower case.
+     * @return The word's postings, or null if it doesn't occur in any recipe.
+     */
+    synchronized Postings getPostings(String term)
+    {
+        return terms.get(term);
+    }
+
+    /**
+     * Gets the occurrences of every indexed word that contains the given text, so a search
+     * for "berr" still finds "blueberries". Only the word list is scanned, not the recipes.
+     *
+     * @param fragment The text, in lower case.
+     * @return The postings of each matching word.
+     */
+    synchronized List<Postings> getPostingsContaining(String fragment)
+    {
+        ArrayList<Postings> matches = new ArrayList<>();
+        Postings exact = terms.get(fragment);
+        if (exact != null) matches.add(exact);
+        for (Map.Entry<String, Postings> entry : terms.entrySet())
+        {
+            if (entry.getValue() != exact && entry.getKey().contains(fragment)) matches.add(entry.getValue());
+        }
+        return matches;
+    }
+}
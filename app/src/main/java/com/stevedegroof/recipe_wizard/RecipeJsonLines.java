@@ -0,0 +1,110 @@
+package com.stevedegroof.recipe_wizard;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes recipes as JSON Lines: one recipe per line, each line a JSON object.
+ * <p>
+ * A recipe is written with the same fields as the saved recipe book, including its id, its
+ * created and modified times, its units setting and the phrases excluded from unit conversion,
+ * so reading it back gives the same recipe without any guessing by {@link RecipeParser}.
+ * Cached values that are worked out from the recipe, such as its fingerprint, are left out and
+ * worked out again when needed.
+ * Each line stands alone, so the lines of a file can be read in parallel.
+ */
+public class RecipeJsonLines
+{
+    private static final Gson GSON = new GsonBuilder()
+            .setExclusionStrategies(new ExclusionStrategy()
+            {
+                @Override
+                public boolean shouldSkipField(FieldAttributes f)
+                {
+                    return f.getDeclaringClass() == Recipe.class && (f.getName().equals("fingerprint") || f.getName().equals("hasFingerprint"));
+                }
+
+                @Override
+                public boolean shouldSkipClass(Class<?> clazz)
+                {
+                    return false;
+                }
+            })
+            .create();
+
+    private RecipeJsonLines()
+    {
+    }
+
+    /**
+     * Writes a recipe as one line of JSON, ending with a line break. A recipe without an id is
+     * given one first, so it can be matched up when read back.
+     *
+     * @param recipe The recipe.
+     * @param out    Where to write it.
+     * @throws IOException If it cannot be written.
+     */
+    public static void write(Recipe recipe, Appendable out) throws IOException
+    {
+        recipe.getId();
+        try
+        {
+            GSON.toJson(recipe, Recipe.class, out);
+        } catch (JsonParseException e)
+        {
+            throw new IOException(e);
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Reads a recipe from one line of JSON. Safe to call from several threads at once.
+     *
+     * @param line The line.
+     * @return The recipe, or null if the line isn't a recipe.
+     */
+    public static Recipe parse(String line)
+    {
+        try
+        {
+            return check(GSON.fromJson(line, Recipe.class));
+        } catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Reads a recipe from a JSON object that has already been parsed.
+     *
+     * @param object The object.
+     * @return The recipe, or null if the object isn't a recipe.
+     */
+    static Recipe parse(JsonObject object)
+    {
+        try
+        {
+            return check(GSON.fromJson(object, Recipe.class));
+        } catch (RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Checks that a recipe read from JSON has a title, and fills in missing text.
+     */
+    private static Recipe check(Recipe recipe)
+    {
+        if (recipe == null || recipe.getTitle() == null) return null;
+        if (recipe.getIngredients() == null) recipe.setIngredients("");
+        if (recipe.getDirections() == null) recipe.setDirections("");
+        return recipe;
+    }
+}
@@ -0,0 +1,588 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Splits recipe text into lines and classifies each line exactly once, for {@link RecipeParser}.
+ * <p>
+ * Each line gets a token kind: blank, one of the special lines (servings, prep time, cook time,
+ * total time), a section header, a numbered step or plain text. A header line also records which
+ * section it starts, and every line records whether its first word is a unit of measure in the
+ * {@link UnitVocabulary}, its number of words, and whether it starts with a quantity or a
+ * cooking verb or ends a sentence. The {@link LineLabeller} uses these to tell ingredients from
+ * directions when a recipe has no headers.
+ * <p>
+ * The keywords are matched by two small automata built once from the keyword lists: one walked
+ * forward from the start of the line for keywords a line starts with, and one walked backward
+ * from the end for keywords a line ends with. Letters are lower-cased one at a time as they are
+ * read, so no lower-cased copy of the line is made, and each walk stops at the first character
+ * that no keyword can continue with.
+ * <p>
+ * A lexer keeps its arrays between calls, so one lexer can be reused for many recipes without
+ * allocating new ones each time. It also keeps where each line starts in the text, so text that
+ * is being edited can be lexed again by reading only the lines the edits touched: see
+ * {@link #edited(int, int, int)} and {@link #relex(String, boolean)}. It is not safe to use from
+ * more than one thread at once.
+ */
+class RecipeLexer
+{
+    static final int BLANK = 0;
+    static final int SERVINGS = 1;
+    static final int PREP_TIME = 2;
+    static final int COOK_TIME = 3;
+    static final int TOTAL_TIME = 4;
+    static final int HEADER = 5;
+    static final int STEP = 6;
+    static final int TEXT = 7;
+
+    static final int LEADING_QUANTITY = 1;
+    static final int LEADING_VERB = 2;
+    static final int ENDS_SENTENCE = 4;
+
+    static final int NO_SECTION = 0;
+    static final int INGREDIENTS = 1;
+    static final int DIRECTIONS = 2;
+    static final int NOTES = 3;
+
+    /**
+     * Keywords a line may start with: the keyword, the token kind it gives (or {@link #HEADER}),
+     * the section it starts, and whether it must be the whole line.
+     */
+    private static final Keyword[] PREFIXES = {
+            new Keyword("serves", SERVINGS, NO_SECTION, false, false),
+            new Keyword("servings", SERVINGS, NO_SECTION, false, false),
+            new Keyword("prep time", PREP_TIME, NO_SECTION, false, false),
+            new Keyword("preparation time", PREP_TIME, NO_SECTION, false, false),
+            new Keyword("cook time", COOK_TIME, NO_SECTION, false, false),
+            new Keyword("bake time", COOK_TIME, NO_SECTION, false, false),
+            new Keyword("total time", TOTAL_TIME, NO_SECTION, false, false),
+            new Keyword("ingredients", HEADER, INGREDIENTS, false, false),
+            new Keyword("you will need", HEADER, INGREDIENTS, true, false),
+            new Keyword("directions", HEADER, DIRECTIONS, false, false),
+            new Keyword("instructions", HEADER, DIRECTIONS, false, false),
+            new Keyword("preparation", HEADER, DIRECTIONS, false, false),
+            new Keyword("notes", HEADER, NOTES, false, false)};
+
+    /**
+     * Keywords a line may end with. Those marked as guesses are ignored for verbatim text.
+     */
+    private static final Keyword[] SUFFIXES = {
+            new Keyword("servings", SERVINGS, NO_SECTION, false, true),
+            new Keyword("servings.", SERVINGS, NO_SECTION, false, true),
+            new Keyword("baking time", COOK_TIME, NO_SECTION, false, false),
+            new Keyword("cooking time", COOK_TIME, NO_SECTION, false, false)};
+
+    /**
+     * Words that directions often start with.
+     */
+    private static final HashSet<String> VERBS = new HashSet<>(Arrays.asList(
+            "add", "arrange", "bake", "beat", "blend", "boil", "bring", "broil", "coat", "combine",
+            "cook", "cool", "cover", "divide", "drain", "drizzle", "fold", "fry", "garnish",
+            "grease", "grill", "heat", "in", "knead", "let", "marinate", "mash", "meanwhile", "melt",
+            "microwave", "mix", "place", "pour", "preheat", "put", "reduce", "refrigerate",
+            "remove", "repeat", "return", "roast", "roll", "saute", "sauté", "serve", "set", "shape",
+            "sift", "simmer", "slice", "spoon", "sprinkle", "stir", "strain", "take", "then", "toss",
+            "transfer", "turn", "using", "when", "whisk", "wrap"));
+    private static final int LONGEST_VERB = 10;
+
+    private static final Automaton PREFIX_AUTOMATON = new Automaton(PREFIXES, false);
+    private static final Automaton SUFFIX_AUTOMATON = new Automaton(SUFFIXES, true);
+
+    private String[] lines = new String[0];
+    private int[] kinds = new int[0];
+    private int[] sections = new int[0];
+    private boolean[] units = new boolean[0];
+    private int[] words = new int[0];
+    private int[] traits = new int[0];
+    private int[] starts = new int[0];
+    private boolean[] empty = new boolean[0];
+    private int count = 0;
+    private int rawCount = 0;
+    private int textLength = -1;
+    private boolean lexedVerbatim = false;
+    private int editStart = -1;
+    private int editEnd = -1;
+    private int editDelta = 0;
+
+    /**
+     * A keyword and what a line matching it is.
+     */
+    private static class Keyword
+    {
+        final String text;
+        final int kind;
+        final int section;
+        final boolean wholeLine;
+        final boolean guess;
+
+        Keyword(String text, int kind, int section, boolean wholeLine, boolean guess)
+        {
+            this.text = text;
+            this.kind = kind;
+            this.section = section;
+            this.wholeLine = wholeLine;
+            this.guess = guess;
+        }
+    }
+
+    /**
+     * A deterministic automaton over lower-case letters, spaces and full stops that recognises
+     * a set of keywords. Each state records, as a bit mask, the keywords that end there.
+     */
+    private static class Automaton
+    {
+        private static final int LETTERS = 26;
+        private static final int SYMBOLS = LETTERS + 2;
+
+        final int[][] next;
+        final int[] accepts;
+
+        Automaton(Keyword[] keywords, boolean reversed)
+        {
+            ArrayList<int[]> transitions = new ArrayList<>();
+            ArrayList<Integer> accepting = new ArrayList<>();
+            transitions.add(newState());
+            accepting.add(0);
+            for (int k = 0; k < keywords.length; k++)
+            {
+                String text = keywords[k].text;
+                int state = 0;
+                for (int i = 0; i < text.length(); i++)
+                {
+                    int symbol = symbol(text.charAt(reversed ? text.length() - 1 - i : i));
+                    if (transitions.get(state)[symbol] < 0)
+                    {
+                        transitions.get(state)[symbol] = transitions.size();
+                        transitions.add(newState());
+                        accepting.add(0);
+                    }
+                    state = transitions.get(state)[symbol];
+                }
+                accepting.set(state, accepting.get(state) | (1 << k));
+            }
+            next = transitions.toArray(new int[0][]);
+            accepts = new int[accepting.size()];
+            for (int i = 0; i < accepts.length; i++)
+            {
+                accepts[i] = accepting.get(i);
+            }
+        }
+
+        private static int[] newState()
+        {
+            int[] state = new int[SYMBOLS];
+            Arrays.fill(state, -1);
+            return state;
+        }
+
+        /**
+         * Gets the symbol for a lower-case character, or -1 if no keyword contains it.
+         */
+        static int symbol(char c)
+        {
+            if (c >= 'a' && c <= 'z') return c - 'a';
+            if (c == ' ') return LETTERS;
+            if (c == '.') return LETTERS + 1;
+            return -1;
+        }
+
+        /**
+         * Finds the keywords a line starts with, or ends with if walking backward.
+         *
+         * @param line      The line.
+         * @param backward  Whether to walk from the end of the line.
+         * @param wholeLine A bit mask of the keywords that only match the whole line.
+         * @return A bit mask of the keywords matched.
+         */
+        int match(String line, boolean backward, int wholeLine)
+        {
+            int matched = 0;
+            int state = 0;
+            int length = line.length();
+            for (int i = 0; i < length; i++)
+            {
+                int symbol = symbol(Character.toLowerCase(line.charAt(backward ? length - 1 - i : i)));
+                if (symbol < 0) break;
+                state = next[state][symbol];
+                if (state < 0) break;
+                int accepted = accepts[state];
+                if (accepted != 0)
+                {
+                    matched |= (i == length - 1) ? accepted : accepted & ~wholeLine;
+                }
+            }
+            return matched;
+        }
+    }
+
+    private static final int PREFIX_WHOLE_LINE = mask(PREFIXES, true, false);
+    private static final int SUFFIX_GUESSES = mask(SUFFIXES, false, true);
+
+    /**
+     * Gets a bit mask of the keywords that must match the whole line, or that are guesses.
+     */
+    private static int mask(Keyword[] keywords, boolean wholeLine, boolean guess)
+    {
+        int mask = 0;
+        for (int k = 0; k < keywords.length; k++)
+        {
+            if ((wholeLine && keywords[k].wholeLine) || (guess && keywords[k].guess)) mask |= 1 << k;
+        }
+        return mask;
+    }
+
+    /**
+     * Splits text into trimmed lines and classifies each one.
+     * Lines are split as {@code text.split("\\r?\\n")} would split them, so trailing empty lines
+     * are dropped.
+     *
+     * @param text     The text of a recipe.
+     * @param verbatim Whether the text is known to be well laid out, in which case lines are
+     *                 not taken as servings just because they end with "servings".
+     * @return The number of lines.
+     */
+    int lex(String text, boolean verbatim)
+    {
+        rawCount = 0;
+        replaceLines(text, 0, -1, 0, text.length(), 0, verbatim);
+        lexedVerbatim = verbatim;
+        textLength = text.length();
+        editStart = -1;
+        return count;
+    }
+
+    /**
+     * Records that the text last lexed has been edited, as a {@link android.text.TextWatcher}
+     * is told: {@code before} characters from {@code start} were replaced by {@code after} new
+     * ones. Edits are merged until the next {@link #relex(String, boolean)}, into one span of
+     * the new text that covers everything they changed.
+     *
+     * @param start  Where the edit starts.
+     * @param before The number of characters replaced.
+     * @param after  The number of characters that replaced them.
+     */
+    void edited(int start, int before, int after)
+    {
+        if (editStart < 0)
+        {
+            editStart = start;
+            editEnd = start + after;
+            editDelta = after - before;
+            return;
+        }
+        int end = editEnd;
+        if (end >= start + before)
+        {
+            end += after - before;
+        } else if (end > start)
+        {
+            end = start + after;
+        }
+        editStart = Math.min(editStart, start);
+        editEnd = Math.max(end, start + after);
+        editDelta += after - before;
+    }
+
+    /**
+     * Lexes text again after the edits recorded by {@link #edited(int, int, int)}. Only the lines
+     * the edits touched are split and classified again; the lines after them are moved along,
+     * and the rest are kept as they were. Gives the same lines as {@link #lex(String, boolean)}.
+     * If the text is not the text last lexed with those edits made, as far as its length tells,
+     * the whole text is lexed.
+     *
+     * @param text     The edited text.
+     * @param verbatim Whether the text is known to be well laid out.
+     * @return The number of lines.
+     */
+    int relex(String text, boolean verbatim)
+    {
+        if (textLength < 0 || verbatim != lexedVerbatim || (editStart < 0 ? 0 : editDelta) != text.length() - textLength)
+        {
+            return lex(text, verbatim);
+        }
+        if (editStart < 0) return count;
+        if (editStart > textLength || editEnd - editDelta > textLength) return lex(text, verbatim);
+        int first = lineAt(editStart);
+        int last = lineAt(editEnd - editDelta);
+        int to = (last + 1 < rawCount ? starts[last + 1] - 1 : textLength) + editDelta;
+        replaceLines(text, first, last, starts[first], to, editDelta, verbatim);
+        textLength = text.length();
+        editStart = -1;
+        return count;
+    }
+
+    /**
+     * Finds the line a character of the text last lexed is in.
+     */
+    private int lineAt(int offset)
+    {
+        int low = 0;
+        int high = rawCount - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= offset)
+            {
+                low = middle;
+            } else
+            {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Replaces lines {@code first} to {@code last} with the lines in a span of the text, which
+     * runs from the start of a line to a line break or the end of the text, and classifies them.
+     * The lines after the span are moved along, and their starts moved by {@code delta}.
+     */
+    private void replaceLines(String text, int first, int last, int from, int to, int delta, boolean verbatim)
+    {
+        int added = 1;
+        for (int i = from; i < to; i++)
+        {
+            if (text.charAt(i) == '\n') added++;
+        }
+        int after = rawCount - last - 1;
+        int needed = first + added + after;
+        if (lines.length < needed)
+        {
+            int capacity = Math.max(needed, lines.length * 2);
+            lines = Arrays.copyOf(lines, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            sections = Arrays.copyOf(sections, capacity);
+            units = Arrays.copyOf(units, capacity);
+            words = Arrays.copyOf(words, capacity);
+            traits = Arrays.copyOf(traits, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            empty = Arrays.copyOf(empty, capacity);
+        }
+        if (after > 0 && first + added != last + 1)
+        {
+            System.arraycopy(lines, last + 1, lines, first + added, after);
+            System.arraycopy(kinds, last + 1, kinds, first + added, after);
+            System.arraycopy(sections, last + 1, sections, first + added, after);
+            System.arraycopy(units, last + 1, units, first + added, after);
+            System.arraycopy(words, last + 1, words, first + added, after);
+            System.arraycopy(traits, last + 1, traits, first + added, after);
+            System.arraycopy(starts, last + 1, starts, first + added, after);
+            System.arraycopy(empty, last + 1, empty, first + added, after);
+        }
+        if (delta != 0)
+        {
+            for (int i = first + added; i < needed; i++)
+            {
+                starts[i] += delta;
+            }
+        }
+        int start = from;
+        int i = first;
+        for (int c = from; c <= to; c++)
+        {
+            if (c == to || text.charAt(c) == '\n')
+            {
+                int end = (c < text.length() && c > start && text.charAt(c - 1) == '\r') ? c - 1 : c;
+                String line = text.substring(start, end).trim();
+                starts[i] = start;
+                empty[i] = end == start;
+                lines[i] = line;
+                classify(i, line, verbatim);
+                start = c + 1;
+                i++;
+            }
+        }
+        rawCount = needed;
+        count = rawCount;
+        if (rawCount > 1)
+        {
+            while (count > 0 && empty[count - 1]) count--;
+        }
+    }
+
+    /**
+     * Classifies one trimmed line.
+     */
+    private void classify(int i, String line, boolean verbatim)
+    {
+        sections[i] = NO_SECTION;
+        units[i] = false;
+        words[i] = 0;
+        traits[i] = 0;
+        if (line.isEmpty())
+        {
+            kinds[i] = BLANK;
+            return;
+        }
+        int kind = TEXT;
+        int prefixes = PREFIX_AUTOMATON.match(line, false, PREFIX_WHOLE_LINE);
+        for (int k = 0; prefixes != 0; k++, prefixes >>>= 1)
+        {
+            if ((prefixes & 1) == 0) continue;
+            Keyword keyword = PREFIXES[k];
+            if (keyword.kind == HEADER)
+            {
+                sections[i] = keyword.section;
+            } else
+            {
+                kind = Math.min(kind, keyword.kind);
+            }
+        }
+        int suffixes = SUFFIX_AUTOMATON.match(line, true, 0);
+        if (verbatim) suffixes &= ~SUFFIX_GUESSES;
+        for (int k = 0; suffixes != 0; k++, suffixes >>>= 1)
+        {
+            if ((suffixes & 1) != 0) kind = Math.min(kind, SUFFIXES[k].kind);
+        }
+        if (kind == TEXT)
+        {
+            if (isNumberedStep(line))
+            {
+                kind = STEP;
+            } else if (sections[i] != NO_SECTION)
+            {
+                kind = HEADER;
+            }
+        }
+        kinds[i] = kind;
+        units[i] = UnitVocabulary.leadingUnit(line) != null;
+        describe(i, line, kind == STEP);
+    }
+
+    /**
+     * Counts the words of a line that is not blank and finds its traits. The number of a
+     * numbered step is not counted as a word, and the step's first word is the one after it.
+     */
+    private void describe(int i, String line, boolean step)
+    {
+        int start = 0;
+        if (step)
+        {
+            start = line.indexOf(' ');
+            while (line.charAt(start) <= ' ') start++;
+        }
+        int end = start;
+        while (end < line.length() && end - start <= LONGEST_VERB && Character.isLetter(line.charAt(end))) end++;
+        int found = 0;
+        if (end > start && end - start <= LONGEST_VERB && VERBS.contains(line.substring(start, end).toLowerCase()))
+        {
+            found |= LEADING_VERB;
+        }
+        char first = line.charAt(0);
+        if (!step && (Character.isDigit(first) || (first >= '¼' && first <= '¾') || (first >= '⅐' && first <= '⅞')))
+        {
+            found |= LEADING_QUANTITY;
+        }
+        char last = line.charAt(line.length() - 1);
+        if (last == '.' || last == '!') found |= ENDS_SENTENCE;
+        int count = 0;
+        for (int c = start; c < line.length(); c++)
+        {
+            if (line.charAt(c) > ' ' && (c == start || line.charAt(c - 1) <= ' ')) count++;
+        }
+        words[i] = count;
+        traits[i] = found;
+    }
+
+    /**
+     * Tells whether a line is a numbered step, such as "1. Mix" or "2) Bake": digits, a full stop
+     * or closing bracket, a space, then the step.
+     */
+    private static boolean isNumberedStep(String line)
+    {
+        int length = line.length();
+        int i = 0;
+        while (i < length && line.charAt(i) >= '0' && line.charAt(i) <= '9') i++;
+        if (i == 0 || i + 2 >= length) return false;
+        char mark = line.charAt(i);
+        if ((mark != '.' && mark != ')') || line.charAt(i + 1) != ' ') return false;
+        for (int j = i + 2; j < length; j++)
+        {
+            char c = line.charAt(j);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gets a trimmed line.
+     *
+     * @param i The line number.
+     * @return The line.
+     */
+    String line(int i)
+    {
+        return lines[i];
+    }
+
+    /**
+     * Gets a line's token kind.
+     *
+     * @param i The line number.
+     * @return {@link #BLANK}, {@link #SERVINGS}, {@link #PREP_TIME}, {@link #COOK_TIME},
+     * {@link #TOTAL_TIME}, {@link #HEADER}, {@link #STEP} or {@link #TEXT}.
+     */
+    int kind(int i)
+    {
+        return kinds[i];
+    }
+
+    /**
+     * Gets the section a line starts, if it is a header. A line can start a section and be a
+     * special line too, such as "Preparation time: 10 minutes".
+     *
+     * @param i The line number.
+     * @return {@link #INGREDIENTS}, {@link #DIRECTIONS}, {@link #NOTES} or {@link #NO_SECTION}.
+     */
+    int section(int i)
+    {
+        return sections[i];
+    }
+
+    /**
+     * Tells whether a line starts with a unit of measure, ignoring any quantity before it.
+     *
+     * @param i The line number.
+     * @return True if the line looks like an ingredient.
+     */
+    boolean startsWithUnit(int i)
+    {
+        return units[i];
+    }
+
+    /**
+     * Gets the number of words in a line, not counting the number of a numbered step.
+     *
+     * @param i The line number.
+     * @return The number of words.
+     */
+    int words(int i)
+    {
+        return words[i];
+    }
+
+    /**
+     * Tells whether a line has a trait.
+     *
+     * @param i     The line number.
+     * @param trait {@link #LEADING_QUANTITY}, {@link #LEADING_VERB} or {@link #ENDS_SENTENCE}.
+     * @return True if it has.
+     */
+    boolean hasTrait(int i, int trait)
+    {
+        return (traits[i] & trait) != 0;
+    }
+
+    /**
+     * Tells whether a token kind is one of the special lines that give the servings or a time.
+     *
+     * @param kind The token kind.
+     * @return True for {@link #SERVINGS}, {@link #PREP_TIME}, {@link #COOK_TIME} and {@link #TOTAL_TIME}.
+     */
+    static boolean isSpecial(int kind)
+    {
+        return kind >= SERVINGS && kind <= TOTAL_TIME;
+    }
+}
@@ -0,0 +1,114 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.IOException;
+
+/**
+ * Writes recipes as Markdown, for reading or publishing rather than importing again.
+ * <p>
+ * Each recipe gets a level one heading for its title, followed by the servings, a bulleted
+ * list of ingredients, a numbered list of directions, and the notes if wanted. Ingredient
+ * lines ending in a colon, such as "Frosting:", are written as subheadings rather than
+ * bullets. Characters at the start of a line that Markdown would take as formatting are escaped.
+ */
+public class RecipeMarkdown
+{
+    /**
+     * What goes between two recipes.
+     */
+    public static final String RECIPE_SEPARATOR = "\n---\n\n";
+
+    private RecipeMarkdown()
+    {
+    }
+
+    /**
+     * Writes a recipe.
+     *
+     * @param recipe       The recipe.
+     * @param out          Where to write it.
+     * @param includeNotes Whether to include the notes.
+     * @throws IOException If it cannot be written.
+     */
+    public static void write(Recipe recipe, Appendable out, boolean includeNotes) throws IOException
+    {
+        out.append("# ");
+        appendEscaped(out, String.valueOf(recipe.getTitle()).trim());
+        out.append("\n\n");
+        out.append("Serves ").append(String.valueOf(recipe.getServings())).append("\n\n");
+
+        out.append("## Ingredients\n\n");
+        boolean first = true;
+        for (String line : lines(recipe.getIngredients()))
+        {
+            if (line.endsWith(":") && line.length() > 1)
+            {
+                if (!first) out.append('\n');
+                out.append("### ");
+                appendEscaped(out, line.substring(0, line.length() - 1));
+                out.append("\n\n");
+            } else
+            {
+                out.append("- ");
+                appendEscaped(out, line);
+                out.append('\n');
+            }
+            first = false;
+        }
+
+        out.append("\n## Directions\n\n");
+        int step = 0;
+        for (String line : lines(recipe.getDirections()))
+        {
+            out.append(Integer.toString(++step)).append(". ");
+            appendEscaped(out, line);
+            out.append('\n');
+        }
+
+        String notes = recipe.getNotes();
+        if (includeNotes && notes != null && !notes.trim().isEmpty())
+        {
+            out.append("\n## Notes\n\n");
+            for (String line : lines(notes))
+            {
+                appendEscaped(out, line);
+                out.append("\n\n");
+            }
+        }
+    }
+
+    /**
+     * Splits text into its non-blank lines, trimmed.
+     */
+    private static String[] lines(String text)
+    {
+        if (text == null) return new String[0];
+        String[] lines = text.split("\n");
+        int count = 0;
+        for (String line : lines)
+        {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) lines[count++] = trimmed;
+        }
+        String[] nonBlank = new String[count];
+        System.arraycopy(lines, 0, nonBlank, 0, count);
+        return nonBlank;
+    }
+
+    /**
+     * Writes a line of text, escaping a leading character that would start a heading, list,
+     * quote or numbered list, and any characters that would be taken as emphasis or code.
+     */
+    private static void appendEscaped(Appendable out, String line) throws IOException
+    {
+        int digits = 0;
+        while (digits < line.length() && Character.isDigit(line.charAt(digits))) digits++;
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if (i == 0 && (c == '#' || c == '>' || c == '-' || c == '+')) out.append('\\');
+            if (i == digits && digits > 0 && (c == '.' || c == ')')) out.append('\\');
+            if (c == '*' || c == '_' || c == '`' || c == '\\' || c == '[' || c == ']') out.append('\\');
+            out.append(c);
+        }
+    }
+}
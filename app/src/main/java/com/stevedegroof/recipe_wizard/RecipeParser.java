@@ -1,5 +1,8 @@
 package com.stevedegroof.recipe_wizard;
 
+import java.util.ArrayList;
+import java.util.Collections;
+
 /**
  * Parses plain text from various sources and attempts to convert it into a structured recipe format.
  * This class uses a set of heuristics to identify different sections of a recipe,
@@ -7,8 +10,9 @@ package com.stevedegroof.recipe_wizard;
  * determine if the recipe uses metric or imperial units.
  *
  * <p>The parser works by analyzing the input text line by line, looking for keywords
- * (e.g., "ingredients", "directions") and common formatting patterns (e.g., blank lines
- * separating sections, numbered lists for directions).
+ * (e.g., "ingredients", "directions") and, where those are missing, scoring the ways the lines
+ * could be split into sections from common formatting patterns (e.g., units and quantities
+ * in ingredients, numbered steps and cooking verbs in directions, blank lines between sections).
  *
  * <p>Key features include:
  * <ul>
@@ -22,32 +26,38 @@ package com.stevedegroof.recipe_wizard;
  * <p>Usage:
  * <pre>
  * {@code
- * RecipeParser parser = new RecipeParser();
  * String recipeText = "My Awesome Cake\n\nIngredients:\n1 cup flour\n1 egg\n\nDirections:\nMix ingredients.\nBake at 350.";
- * parser.setRawText(recipeText, false); // false for heuristic-based parsing
+ * ParsedRecipe parsed = RecipeParser.parse(recipeText, false); // false for heuristic-based parsing
  *
- * String title = parser.getTitle();
- * String ingredients = parser.getIngredients();
- * String directions = parser.getDirections();
- * int servings = parser.getServings();
- * boolean isMetric = parser.isMetric();
- * // ... and so on for other extracted information.
+ * String title = parsed.getTitle();
+ * String ingredients = parsed.getIngredients();
+ * int servings = parsed.getServings();
+ * Recipe recipe = parsed.toRecipe();
  * }
  * </pre>
  *
+ * <p>{@link #parse(String, boolean)} may be called from any number of threads at once. Each
+ * thread keeps one parser of its own, created the first time the thread parses, and reuses it
+ * and its lexer's buffers for every recipe after that, so parallel import workers neither share
+ * state nor allocate a parser per recipe. A parser created with {@code new}, used through
+ * {@link #setRawText(String, boolean)} and the getters, can be reused for many recipes but
+ * must only be used by one thread at a time.
+ *
  * <p>Note: The parser's accuracy depends on the formatting and clarity of the input text.
  * It may not correctly parse all possible recipe formats, especially those that are
  * highly unconventional or poorly structured.
  */
 public class RecipeParser
 {
-    public static final String[] IMPERIAL_DETECTION_UNITS = {"tbsp", "tablespoons", "tablespoon", "tsp", "teaspoons", "teaspoon", "oz", "cup", "cups", "c", "lb", "pound", "lbs", "pounds", "can", "package", "pkg"};
-    public static final String[] METRIC_DETECTION_UNITS = {"ml", "g", "kg", "gram", "grams", "l", "liter", "liters", "litre", "litres", "can", "package", "pkg"};
-    private String[] lines = null;
+    private static final ThreadLocal<RecipeParser> PARSERS = ThreadLocal.withInitial(RecipeParser::new);
+    private final RecipeLexer lexer = new RecipeLexer();
+    private final LineLabeller labeller = new LineLabeller();
+    private int lineCount = 0;
 
     private int titleStart = -1;
     private int ingredientsStart = -1;
     private int directionsStart = -1;
+    private int ingredientsEnd = -1;
     private int notesStart = -1;
     private String prepTimeString = "";
     private String cookTimeString = "";
@@ -61,6 +71,8 @@ public class RecipeParser
     private String notes = "";
     private String rawText = "";
     private boolean isVerbatim = false;
+    private double confidence = 1d;
+    private int layoutCount = 0;
 
     /**
      * Converts a string to title case.
@@ -111,11 +123,11 @@ public class RecipeParser
     {
         String title = "unknown";
         boolean found = false;
-        for (int i = 0; i < lines.length && !found; i++)
+        for (int i = 0; i < lineCount && !found; i++)
         {
-            if (!lines[i].isEmpty() && !isSpecialLine(lines[i]))
+            if (lexer.kind(i) != RecipeLexer.BLANK && !isSpecialLine(i))
             {
-                title = lines[i];
+                title = lexer.line(i);
                 found = true;
                 titleStart = i;
             }
@@ -133,15 +145,15 @@ public class RecipeParser
     private void parseIngredients()
     {
         StringBuilder ingredients = new StringBuilder();
-        for (int i = ingredientsStart + 1; i < ((directionsStart > ingredientsStart) ? directionsStart : ((notesStart > directionsStart) ? notesStart : lines.length)); i++)
+        for (int i = ingredientsStart + 1; i < ingredientsEnd; i++)
         {
-            if (!lines[i].trim().isEmpty() && !isSpecialLine(lines[i]))
+            if (lexer.kind(i) != RecipeLexer.BLANK && !isSpecialLine(i))
             {
                 if (ingredients.length() > 0)
                 {
                     ingredients.append("\n");
                 }
-                ingredients.append(parseDoubleLine(lines[i]));
+                ingredients.append(parseDoubleLine(lexer.line(i)));
             }
         }
         this.ingredients = ingredients + "\n";
@@ -156,48 +168,46 @@ public class RecipeParser
      */
     private String parseDoubleLine(String line)
     {
-        return line.replaceAll("\\s\\s\\s+", "\n");
+        return RecipePatterns.WIDE_GAP.matcher(line).replaceAll("\n");
     }
 
     /**
      * Tries to determine if the recipe uses metric or imperial units.
-     * It iterates through the ingredient lines, strips out numbers and common fractions,
-     * and then checks the first word (assumed to be the unit) against lists of
-     * known imperial and metric units.
+     * It iterates through the ingredient lines, skips numbers and common fractions,
+     * and then looks up the first word (assumed to be the unit) in the {@link UnitVocabulary}.
+     * Units that belong to neither system, such as cans and pinches, are not counted.
      * Sets the `isMetric` flag to true if more metric units are found than imperial units.
      */
     private void parseMetric()
     {
+        if (detectMetric(ingredients)) isMetric = true;
+    }
+
+    /**
+     * Decides whether a list of ingredients is mostly in metric units, as {@link #parseMetric()} does.
+     *
+     * @param ingredients The ingredients, one per line.
+     * @return True if more lines start with a metric unit than with an imperial one.
+     */
+    static boolean detectMetric(String ingredients)
+    {
+        boolean isMetric = false;
         int metricCount = 0;
         int imperialCount = 0;
         String[] lines = ingredients.split("\n");
         for (String line : lines)
         {
-            try
+            UnitVocabulary.Unit unit = UnitVocabulary.leadingUnit(line);
+            if (unit != null && unit.getSystem() == UnitsConverter.IMPERIAL)
             {
-                String strippedLine = line.toLowerCase().replaceAll("[0-9¼½¾⅐⅑⅒⅓⅔⅕⅖⅗⅘⅙⅚⅛⅜⅝⅞/\\.-]", "").trim();
-                String units = strippedLine.split("\\s|\\t|\\xA0")[0];
-                boolean found = false;
-                for (int i = 0; i < IMPERIAL_DETECTION_UNITS.length && !found; i++)
-                {
-                    found = IMPERIAL_DETECTION_UNITS[i].equals(units);
-                }
-                if (found)
-                {
-                    imperialCount++;
-                } else
-                {
-                    for (int i = 0; i < METRIC_DETECTION_UNITS.length && !found; i++)
-                    {
-                        found = METRIC_DETECTION_UNITS[i].equals(units);
-                    }
-                    if (found) metricCount++;
-                }
-            } catch (Exception e)
+                imperialCount++;
+            } else if (unit != null && unit.getSystem() == UnitsConverter.METRIC)
             {
+                metricCount++;
             }
             if (metricCount > imperialCount) isMetric = true;
         }
+        return isMetric;
     }
 
     public boolean isMetric()
@@ -218,35 +228,41 @@ public class RecipeParser
      *     <li>Removes leading numbers and periods/parentheses from lines that appear to be numbered steps
      *         (e.g., "1. Mix ingredients" becomes "Mix ingredients").</li>
      *     <li>Appends the processed line to a {@link StringBuilder}.</li>
-     *     <li>Adds a newline character if the accumulated directions end with a period or colon, or if
+     *     <li>Adds a newline character if the line ends with a period or colon, or if
      *         {@code isVerbatim} is true (indicating pre-formatted input).</li>
      *     <li>Removes a trailing hyphen if present.</li>
      *     <li>Otherwise, adds a space to separate sentences or phrases.</li>
      * </ul>
+     * Lines are trimmed by the lexer, so what the directions end with after a line is appended
+     * is always that line's last character; nothing already in the builder is looked at again,
+     * and the directions are built in a single pass in time proportional to their length.
      * The final formatted directions string is stored in the {@code this.directions} field.
      */
     private void parseDirections()
     {
-        StringBuilder directions = new StringBuilder();
-        for (int i = directionsStart + 1; i < ((notesStart > directionsStart) ? notesStart : lines.length); i++)
+        StringBuilder directions = new StringBuilder(rawText.length());
+        for (int i = directionsStart + 1; i < ((notesStart > directionsStart) ? notesStart : lineCount); i++)
         {
-            if (!lines[i].trim().isEmpty() && !isSpecialLine(lines[i]))
+            if (lexer.kind(i) != RecipeLexer.BLANK && !isSpecialLine(i))
             {
-                String line = lines[i];
-                if (line.matches("[0-9]+[).] .+"))
+                String line = lexer.line(i);
+                int start = 0;
+                if (lexer.kind(i) == RecipeLexer.STEP)
                 {
-                    line = line.substring(line.indexOf(" ")).trim();
+                    start = line.indexOf(' ');
+                    while (line.charAt(start) <= ' ') start++;
                 }
-                directions.append(line);
-                if (directions.toString().trim().endsWith(".") || directions.toString().trim().endsWith(":") || isVerbatim)
+                directions.append(line, start, line.length());
+                char last = line.charAt(line.length() - 1);
+                if (last == '.' || last == ':' || isVerbatim)
                 {
-                    directions = new StringBuilder(directions.toString().trim() + "\n");
-                } else if (directions.toString().endsWith("-"))
+                    directions.append('\n');
+                } else if (last == '-')
                 {
-                    directions = new StringBuilder(directions.substring(0, directions.length() - 1));
+                    directions.setLength(directions.length() - 1);
                 } else
                 {
-                    directions.append(" ");
+                    directions.append(' ');
                 }
             }
         }
@@ -263,11 +279,11 @@ public class RecipeParser
     private void parseNotes()
     {
         StringBuilder notes = new StringBuilder();
-        for (int i = notesStart + 1; i < lines.length; i++)
+        for (int i = notesStart + 1; i < lineCount; i++)
         {
-            if (!lines[i].trim().isEmpty())
+            if (lexer.kind(i) != RecipeLexer.BLANK)
             {
-                notes.append(lines[i]);
+                notes.append(lexer.line(i));
                 notes.append("\n");
             }
         }
@@ -276,36 +292,33 @@ public class RecipeParser
 
 
     /**
-     * Checks if a line contains special recipe information like servings, prep time, or cook time.
+     * Checks if a line contains special recipe information like servings, prep time, or cook time,
+     * from the token the {@link RecipeLexer} gave it.
      * If a special line is found, the corresponding instance variable (e.g., {@code servingsString},
      * {@code prepTimeString}) is updated with the line's content.
      *
-     * @param line The line of text to check.
+     * @param i The number of the line to check.
      * @return {@code true} if the line is identified as a special line, {@code false} otherwise.
      */
-    private boolean isSpecialLine(String line)
+    private boolean isSpecialLine(int i)
     {
-        if (line.toLowerCase().startsWith("serves") || line.toLowerCase().startsWith("servings") || (!isVerbatim && (line.toLowerCase().endsWith("servings") || line.toLowerCase().endsWith("servings.") || line.trim().toLowerCase().matches("^.+[0-9]+ servings\\.$"))))
-        {
-            servingsString = line;
-            return true;
-        }
-        if (line.toLowerCase().startsWith("prep time") || line.toLowerCase().startsWith("preparation time"))
-        {
-            prepTimeString = line;
-            return true;
-        }
-        if (line.toLowerCase().startsWith("cook time") || line.toLowerCase().startsWith("bake time") || line.toLowerCase().endsWith("baking time") || line.toLowerCase().endsWith("cooking time"))
-        {
-            cookTimeString = line;
-            return true;
-        }
-        if (line.toLowerCase().startsWith("total time"))
+        switch (lexer.kind(i))
         {
-            totalTimeString = line;
-            return true;
+            case RecipeLexer.SERVINGS:
+                servingsString = lexer.line(i);
+                return true;
+            case RecipeLexer.PREP_TIME:
+                prepTimeString = lexer.line(i);
+                return true;
+            case RecipeLexer.COOK_TIME:
+                cookTimeString = lexer.line(i);
+                return true;
+            case RecipeLexer.TOTAL_TIME:
+                totalTimeString = lexer.line(i);
+                return true;
+            default:
+                return false;
         }
-        return false;
     }
 
     /**
@@ -320,7 +333,7 @@ public class RecipeParser
         int servings = 4;
         if (!servingsString.isEmpty())
         {
-            String[] elements = servingsString.split("\\s|\\xA0|\\.|\\t");
+            String[] elements = RecipePatterns.SERVINGS_SEPARATOR.split(servingsString);
             for (String element : elements)
             {
                 try
@@ -343,139 +356,191 @@ public class RecipeParser
      * @param text     The raw text of the recipe.
      * @param verbatim If true, the parser assumes the recipe is formatted perfectly
      *                 and will skip certain heuristic checks.
+     *                 Anything found in previously parsed text is discarded first, so one parser
+     *                 can be reused for many recipes.
      */
     public void setRawText(String text, boolean verbatim)
     {
+        reset();
         isVerbatim = verbatim;
         rawText = text;
-        parse();
+        lineCount = lexer.lex(rawText, isVerbatim);
+        parseText();
     }
 
     /**
-     * Main parsing routine. This method orchestrates the parsing of the raw recipe text.
-     * It first splits the text into lines and then identifies the start of key sections
-     * like ingredients, directions, and notes based on common keywords or blank lines.
-     * If keywords are not found, it uses blank lines as potential separators.
-     * After identifying the sections, it calls specific parsing methods for each part
-     * (title, ingredients, directions, notes, servings).
+     * Records an edit to the text last parsed, as a {@link android.text.TextWatcher} is told of
+     * it, so that {@link #setChangedText(String, boolean)} can read only the lines it touched.
+     *
+     * @param start  Where the edit starts.
+     * @param before The number of characters replaced.
+     * @param count  The number of characters that replaced them.
      */
-    private void parse()
+    public void textChanged(int start, int before, int count)
     {
-        boolean foundFirstNonBlankLine = false;
-        int firstBreak = -1;
-        int secondBreak = -1;
-        lines = rawText.split("\\r?\\n");
-        for (int i = 0; i < lines.length; i++)
-        {
-            lines[i] = lines[i].trim();
-            if (!foundFirstNonBlankLine && !lines[i].isEmpty())
-            {
-                foundFirstNonBlankLine = true;
-            }
-            if (foundFirstNonBlankLine && firstBreak > -1 && secondBreak < 0 && lines[i].isEmpty())
-            {
-                secondBreak = i;
-            }
-            if (foundFirstNonBlankLine && firstBreak < 0 && lines[i].isEmpty())
-            {
-                firstBreak = i;
-            }
+        lexer.edited(start, before, count);
+    }
 
-            if (lines[i].toLowerCase().startsWith("ingredients") || lines[i].equalsIgnoreCase("you will need"))
-            {
-                ingredientsStart = i;
-            }
+    /**
+     * Parses the text last parsed again, after the edits recorded by
+     * {@link #textChanged(int, int, int)}. Only the lines the edits touched are read again;
+     * the sections are then found from the lines already read, exactly as
+     * {@link #setRawText(String, boolean)} would find them.
+     *
+     * @param text     The edited text.
+     * @param verbatim If true, the parser assumes the recipe is formatted perfectly
+     *                 and will skip certain heuristic checks.
+     */
+    public void setChangedText(String text, boolean verbatim)
+    {
+        reset();
+        isVerbatim = verbatim;
+        rawText = text;
+        lineCount = lexer.relex(rawText, isVerbatim);
+        parseText();
+    }
 
-            if (lines[i].toLowerCase().startsWith("directions") || lines[i].toLowerCase().startsWith("instructions") || lines[i].toLowerCase().startsWith("preparation"))
-            {
-                directionsStart = i;
-            }
-            if (lines[i].toLowerCase().startsWith("notes"))
-            {
-                notesStart = i;
-            }
-        }
-        if (ingredientsStart < 0)
+    /**
+     * Parses the text of a recipe. Safe to call from any number of threads at once: each thread
+     * parses with a parser of its own, which is kept for the thread's next recipe.
+     *
+     * @param text     The raw text of the recipe.
+     * @param verbatim If true, the parser assumes the recipe is formatted perfectly
+     *                 and will skip certain heuristic checks.
+     * @return What was found in the text.
+     */
+    public static ParsedRecipe parse(String text, boolean verbatim)
+    {
+        RecipeParser parser = PARSERS.get();
+        parser.setRawText(text, verbatim);
+        ParsedRecipe parsed = parser.getResult();
+        parser.rawText = "";
+        return parsed;
+    }
+
+    /**
+     * Gets everything found by the last call to {@link #setRawText(String, boolean)}, as a value
+     * that does not change when this parser is reused. If the ingredients and directions were
+     * told apart by the {@link LineLabeller}, the runners-up are parsed as well and come with it
+     * as its alternatives.
+     *
+     * @return What was found.
+     */
+    public ParsedRecipe getResult()
+    {
+        ArrayList<ParsedRecipe> alternatives = new ArrayList<>();
+        if (layoutCount > 1)
         {
-            ingredientsStart = firstBreak;
-            if (ingredientsStart < 0)
+            int ingredientsStart = this.ingredientsStart;
+            int ingredientsEnd = this.ingredientsEnd;
+            int directionsStart = this.directionsStart;
+            String ingredients = this.ingredients;
+            String directions = this.directions;
+            boolean isMetric = this.isMetric;
+            for (int k = 1; k < layoutCount; k++)
             {
-                scanForIngredients();
+                LineLabeller.Layout layout = labeller.layout(k);
+                this.ingredientsStart = layout.ingredientsStart;
+                this.ingredientsEnd = layout.ingredientsEnd;
+                this.directionsStart = layout.directionsStart;
+                this.isMetric = false;
+                parseIngredients();
+                parseDirections();
+                alternatives.add(new ParsedRecipe(title, this.ingredients, this.directions, notes, servings, this.isMetric,
+                        prepTimeString, cookTimeString, totalTimeString, layout.confidence, Collections.<ParsedRecipe>emptyList()));
             }
+            this.ingredientsStart = ingredientsStart;
+            this.ingredientsEnd = ingredientsEnd;
+            this.directionsStart = directionsStart;
+            this.ingredients = ingredients;
+            this.directions = directions;
+            this.isMetric = isMetric;
         }
+        return new ParsedRecipe(title, ingredients, directions, notes, servings, isMetric,
+                prepTimeString, cookTimeString, totalTimeString, confidence, Collections.unmodifiableList(alternatives));
+    }
 
-        if (directionsStart < 0)
-        {
-            directionsStart = secondBreak;
-        }
-        parseTitle();
-        parseIngredients();
-        parseDirections();
-        if (notesStart > 0) parseNotes();
-        parseServings();
+    /**
+     * Gets how likely it is that the last recipe parsed was split into ingredients and directions
+     * correctly.
+     *
+     * @return The chance, from 0 to 1; 1 if the recipe had headers for both.
+     */
+    public double getConfidence()
+    {
+        return confidence;
     }
 
     /**
-     * Scans the lines of the recipe to identify the start of the ingredients list
-     * and the start of the directions. This method is typically used when the
-     * standard markers for these sections (e.g., "ingredients", "directions") are
-     * not found.
-     * <p>
-     * It iterates through each line (starting from the second line, assuming the
-     * first line might be the title) and attempts to detect ingredient units
-     * (both imperial and metric).
-     * <p>
-     * If an ingredient unit is found and the `ingredientsStart` index hasn't
-     * been set yet, it sets `ingredientsStart` to the previous line index.
-     * <p>
-     * Regardless of whether `ingredientsStart` was set by this line, if an
-     * ingredient unit is found, it updates `directionsStart` to the current
-     * line index. This implies that the line after the last detected ingredient
-     * is considered the start of the directions.
-     * <p>
-     * The method uses predefined lists of imperial and metric units for detection.
-     * It preprocesses each line by converting it to lowercase and removing numbers,
-     * fractions, and common punctuation to isolate potential unit keywords.
-     * <p>
-     * Any exceptions encountered during the processing of a line are caught and
-     * ignored, allowing the scan to continue with the next line.
+     * Clears the results of the previous parse.
      */
-    private void scanForIngredients()
+    private void reset()
     {
-        for (int i = 1; i < lines.length; i++)
+        lineCount = 0;
+        titleStart = -1;
+        ingredientsStart = -1;
+        directionsStart = -1;
+        ingredientsEnd = -1;
+        notesStart = -1;
+        prepTimeString = "";
+        cookTimeString = "";
+        totalTimeString = "";
+        servingsString = "";
+        isMetric = false;
+        directions = "";
+        title = "";
+        ingredients = "";
+        servings = 4;
+        notes = "";
+        confidence = 1d;
+        layoutCount = 0;
+    }
+
+    /**
+     * Main parsing routine. This method orchestrates the parsing of the raw recipe text,
+     * once the {@link RecipeLexer} has split it into lines and classified each one.
+     * It identifies the start of key sections like ingredients, directions, and notes from the
+     * header tokens.
+     * If the ingredients or directions have no header, the {@link LineLabeller} scores the
+     * possible layouts of the lines before the notes and the most likely one is used; how likely
+     * it is and the runners-up are kept for {@link #getResult()}.
+     * After identifying the sections, it calls specific parsing methods for each part
+     * (title, ingredients, directions, notes, servings), which work from the same tokens.
+     */
+    private void parseText()
+    {
+        for (int i = 0; i < lineCount; i++)
         {
-            String line = lines[i];
-            try
+            switch (lexer.section(i))
             {
-                String strippedLine = line.toLowerCase().replaceAll("[0-9¼½¾⅐⅑⅒⅓⅔⅕⅖⅗⅘⅙⅚⅛⅜⅝⅞/\\.-]", "").trim();
-                String units = strippedLine.split("\\s|\\t|\\xA0")[0];
-                boolean found = false;
-                for (int j = 0; j < IMPERIAL_DETECTION_UNITS.length && !found; j++)
-                {
-                    found = IMPERIAL_DETECTION_UNITS[j].equals(units);
-                }
-                if (found && ingredientsStart < 0)
-                {
-                    ingredientsStart = i - 1;
-                } else
-                {
-                    for (int k = 0; k < METRIC_DETECTION_UNITS.length && !found; k++)
-                    {
-                        found = METRIC_DETECTION_UNITS[k].equals(units);
-                    }
-                }
-                if (found && ingredientsStart < 0)
-                {
-                    ingredientsStart = i - 1;
-                }
-                if (found)
-                {
+                case RecipeLexer.INGREDIENTS:
+                    ingredientsStart = i;
+                    break;
+                case RecipeLexer.DIRECTIONS:
                     directionsStart = i;
-                }
-            } catch (Exception e)
-            {
+                    break;
+                case RecipeLexer.NOTES:
+                    notesStart = i;
+                    break;
             }
         }
+        if (ingredientsStart < 0 || directionsStart < 0)
+        {
+            layoutCount = labeller.label(lexer, notesStart > 0 ? notesStart : lineCount, ingredientsStart, directionsStart);
+            LineLabeller.Layout layout = labeller.layout(0);
+            ingredientsStart = layout.ingredientsStart;
+            ingredientsEnd = layout.ingredientsEnd;
+            directionsStart = layout.directionsStart;
+            confidence = layout.confidence;
+        } else
+        {
+            ingredientsEnd = (directionsStart > ingredientsStart) ? directionsStart : ((notesStart > directionsStart) ? notesStart : lineCount);
+        }
+        parseTitle();
+        parseIngredients();
+        parseDirections();
+        if (notesStart > 0) parseNotes();
+        parseServings();
     }
 
     public String getDirections()
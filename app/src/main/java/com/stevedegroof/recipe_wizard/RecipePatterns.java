@@ -0,0 +1,85 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.regex.Pattern;
+
+/**
+ * The regular expressions used to read recipe text and convert quantities, compiled once when
+ * the class is loaded.
+ * <p>
+ * {@link RecipeParser} and {@link UnitsConverter} run their expressions on every line of every
+ * recipe they see. Calling {@link String#matches(String)}, {@link String#replaceAll(String, String)},
+ * a multi-character {@link String#split(String)} or {@link Pattern#compile(String)} in those
+ * classes would compile the expression again on each call, so they use these patterns instead.
+ * A compiled {@link Pattern} can be shared by any number of threads; each use makes its own
+ * {@link java.util.regex.Matcher}.
+ */
+final class RecipePatterns
+{
+    private static final String UNITS_DETECT = "([\\s-])?(oz|cups?|T\\b|t\\b|c\\b|c\\.|TBSP\\b|tbsp\\b|tsp\\b|tablespoons?\\b|Tablespoons?\\b|teaspoons?\\b|quart\\b|qt\\b|inch(es)?\\b|mls?\\b|cm\\b|mm\\b|liters?\\b|litres?\\b|g\\b|grams?\\b|kgs?\\b)";
+    private static final String VALUE_DETECT1 = "\\s[0-9]+\\.[0-9]+";
+    private static final String VALUE_DETECT2 = "\\s([0-9]+)?([\\s-])?(([0-9]+/[0-9]+)|[¼½¾⅓⅔⅛])";
+    private static final String VALUE_DETECT3 = "\\s[0-9]+";
+
+    /**
+     * Three or more spaces in a row, as between side-by-side ingredients.
+     */
+    static final Pattern WIDE_GAP = Pattern.compile("\\s\\s\\s+");
+
+    /**
+     * A single white space character, including a no-break space.
+     */
+    static final Pattern WHITESPACE = Pattern.compile("\\s|\\t|\\xA0");
+
+    /**
+     * What separates the words of a servings line, such as "Serves 4." or "Servings: 6".
+     */
+    static final Pattern SERVINGS_SEPARATOR = Pattern.compile("\\s|\\xA0|\\.|\\t");
+
+    /**
+     * The quantity at the start of an ingredient: {@link UnitsConverter#VALUE_PARSE}.
+     */
+    static final Pattern QUANTITY = Pattern.compile(UnitsConverter.VALUE_PARSE);
+
+    /**
+     * What separates the parts of a mixed number, such as "1 1/2" or "1-1/2".
+     */
+    static final Pattern QUANTITY_SEPARATOR = Pattern.compile("[ -]");
+
+    /**
+     * One of the fraction characters a quantity may end with.
+     */
+    static final Pattern FRACTION = Pattern.compile("[¼½¾⅓⅔⅛]");
+
+    /**
+     * Text that starts with white space.
+     */
+    static final Pattern LEADING_SPACE = Pattern.compile("\\s.+");
+
+    /**
+     * A Fahrenheit temperature, such as "350°F" or "350 degrees".
+     */
+    static final Pattern FAHRENHEIT = Pattern.compile("([0-9]{3})(°?F| degrees? ?F?)");
+
+    /**
+     * A temperature in degrees without a scale, such as "350°".
+     */
+    static final Pattern DEGREES = Pattern.compile("([0-9]{3})°");
+
+    /**
+     * A Celsius temperature, such as "180°C" or "180 degrees C".
+     */
+    static final Pattern CELSIUS = Pattern.compile("([0-9]{3})(°?C| degrees? ?C?)");
+
+    /**
+     * A quantity and unit within directions: a decimal, a fraction or mixed number, or a whole
+     * number, followed by a unit. They are tried in this order.
+     */
+    static final Pattern[] MEASUREMENTS = {
+            Pattern.compile(VALUE_DETECT1 + UNITS_DETECT),
+            Pattern.compile(VALUE_DETECT2 + UNITS_DETECT),
+            Pattern.compile(VALUE_DETECT3 + UNITS_DETECT)};
+
+    private RecipePatterns()
+    {
+    }
+}
@@ -0,0 +1,205 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Matches recipes against a search query from the main screen.
+ * <p>
+ * A query is either a {@link SearchQuery} (words, quoted phrases, negation, AND/OR and field
+ * prefixes), which is run against the {@link RecipeIndex}, or a comma-separated list of
+ * ingredients, which scores recipes by how many of the listed ingredients they use.
+ * <p>
+ * Matching is case-insensitive. Every match found is recorded in a {@link SearchHit} on the
+ * recipe so the results can be highlighted without searching again.
+ */
+public class RecipeSearch
+{
+    private final SearchQuery query;
+    private final String[] terms;
+    private final String[] termNames;
+    private final boolean ranked;
+
+    /**
+     * Prepares a search.
+     *
+     * @param query The query as typed by the user.
+     */
+    public RecipeSearch(String query)
+    {
+        String lowerCaseQuery = query.toLowerCase().trim();
+        ranked = lowerCaseQuery.contains(",");
+        this.query = ranked ? null : SearchQuery.parse(query);
+        terms = lowerCaseQuery.split(",");
+        termNames = new String[terms.length];
+        for (int i = 0; i < terms.length; i++)
+        {
+            terms[i] = terms[i].trim();
+            termNames[i] = ranked ? IngredientNormalizer.getInstance().canonicalName(terms[i]) : "";
+        }
+    }
+
+    /**
+     * Finds the next occurrence of a lower-case term in some text, ignoring case.
+     *
+     * @param text  The text to search.
+     * @param term  The term to find, already in lower case.
+     * @param from  The offset to start searching at.
+     * @return The offset of the match, or -1 if there is none.
+     */
+    static int indexOfIgnoreCase(String text, String term, int from)
+    {
+        int termLength = term.length();
+        if (termLength == 0) return -1;
+        char first = term.charAt(0);
+        int last = text.length() - termLength;
+        for (int i = from; i <= last; i++)
+        {
+            if (Character.toLowerCase(text.charAt(i)) != first) continue;
+            int k = 1;
+            while (k < termLength && Character.toLowerCase(text.charAt(i + k)) == term.charAt(k)) k++;
+            if (k == termLength) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Counts the lines in a block of text, ignoring trailing blank lines.
+     *
+     * @param text The text.
+     * @return The number of lines, at least 1.
+     */
+    private static int countLines(String text)
+    {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') end--;
+        int lines = 1;
+        for (int i = 0; i < end; i++)
+        {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    /**
+     * Records every occurrence of a term in one field of a recipe.
+     *
+     * @param hit   The hit to record matches in.
+     * @param text  The field text.
+     * @param field The field.
+     * @param term  The lower-case term.
+     * @return True if the term was found.
+     */
+    private static boolean findAll(SearchHit hit, String text, int field, String term)
+    {
+        if (text == null) return false;
+        boolean found = false;
+        int at = indexOfIgnoreCase(text, term, 0);
+        while (at >= 0)
+        {
+            found = true;
+            hit.addSpan(field, at, at + term.length());
+            at = indexOfIgnoreCase(text, term, at + term.length());
+        }
+        return found;
+    }
+
+    /**
+     * Whether results should be ordered by score rather than by name.
+     *
+     * @return True for a comma-separated ingredient search.
+     */
+    public boolean isRanked()
+    {
+        return ranked;
+    }
+
+    /**
+     * Matches every recipe against the query, setting each recipe's
+     * {@link Recipe#getSortScore() sort score} and {@link Recipe#getSearchHit() search hit}.
+     * A recipe that doesn't match gets a score of 0 and no hit.
+     *
+     * @param recipes The recipes to search.
+     * @param version The {@link Recipes#getVersion() version} the list was taken at.
+     */
+    public void run(List<Recipe> recipes, int version)
+    {
+        if (ranked)
+        {
+            for (Recipe recipe : recipes)
+            {
+                recipe.setSortScore(matchIngredients(recipe));
+            }
+            return;
+        }
+        RecipeIndex index = RecipeIndex.getInstance();
+        index.refresh(recipes, version);
+        SearchHit[] hits = new SearchHit[index.size()];
+        BitSet matches = query.run(index, hits);
+        for (int doc = 0; doc < hits.length; doc++)
+        {
+            Recipe recipe = index.getRecipe(doc);
+            recipe.setSortScore(matches.get(doc) ? 1 : 0);
+            recipe.setSearchHit(hits[doc]);
+        }
+    }
+
+    /**
+     * Scores a recipe against a comma-separated list of ingredients.
+     * An ingredient line matches a listed ingredient if it contains it as written or if its
+     * {@link IngredientNormalizer canonical name} contains the listed ingredient's canonical name,
+     * so "tomato" matches "2 tomatoes, diced".
+     * The score averages the fraction of listed ingredients the recipe uses and the fraction of
+     * the recipe's ingredients that were listed. The recipe's
+     * {@link Recipe#getSearchHit() search hit} is set to the matches found, or to null if there
+     * are none.
+     *
+     * @param recipe The recipe to match.
+     * @return The recipe's score; 0 if it doesn't match.
+     */
+    private double matchIngredients(Recipe recipe)
+    {
+        SearchHit hit = new SearchHit();
+        String ingredients = recipe.getIngredients() == null ? "" : recipe.getIngredients();
+        int termMatchCount = 0;
+        for (int t = 0; t < terms.length; t++)
+        {
+            if (terms[t].isEmpty()) continue;
+            boolean found = findAll(hit, ingredients, MatchSpan.INGREDIENTS, terms[t]);
+            if (!found && !termNames[t].isEmpty()) found = findByName(hit, ingredients, termNames[t]);
+            if (found) termMatchCount++;
+        }
+        double termScore = ((double) termMatchCount) / terms.length;
+        double ingredientScore = ((double) termMatchCount) / countLines(ingredients);
+        double score = (termScore + ingredientScore) / 2.0;
+        recipe.setSearchHit(score > 0 && !hit.isEmpty() ? hit : null);
+        return score;
+    }
+
+    /**
+     * Records every ingredient line whose canonical name contains the given name.
+     *
+     * @param hit         The hit to record matches in.
+     * @param ingredients The ingredient list.
+     * @param name        The canonical name to look for.
+     * @return True if any line matched.
+     */
+    private static boolean findByName(SearchHit hit, String ingredients, String name)
+    {
+        IngredientNormalizer normalizer = IngredientNormalizer.getInstance();
+        boolean found = false;
+        int start = 0;
+        while (start < ingredients.length())
+        {
+            int end = ingredients.indexOf('\n', start);
+            if (end < 0) end = ingredients.length();
+            if (end > start && normalizer.canonicalName(ingredients.substring(start, end)).contains(name))
+            {
+                found = true;
+                hit.addSpan(MatchSpan.INGREDIENTS, start, end);
+            }
+            start = end + 1;
+        }
+        return found;
+    }
+}
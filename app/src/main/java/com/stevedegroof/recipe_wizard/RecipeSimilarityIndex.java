@@ -0,0 +1,446 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Finds recipes that are similar to a given recipe, based on the ingredients they share
+ * and the wording of their directions.
+ * <p>
+ * Comparing every pair of recipes is O(n&sup2;), so instead each recipe is reduced to a
+ * MinHash signature: {@link #NUM_HASHES} minimum hash values taken over its features
+ * (ingredient words and three-word shingles of the directions). The fraction of positions at
+ * which two signatures agree estimates the Jaccard similarity of the two feature sets.
+ * <p>
+ * Signatures are split into {@link #BANDS} bands of {@link #ROWS} values each, and every band is
+ * hashed into a bucket (locality-sensitive hashing). Recipes that land in the same bucket for at
+ * least one band are candidates, and only candidates are scored, so a lookup touches a handful of
+ * recipes rather than the whole book.
+ * <p>
+ * Signatures are cached on each {@link Recipe} and discarded when its ingredients or directions
+ * change. When the {@link Recipes#getVersion() version} of the recipe book changes, the index
+ * is brought up to date rather than rebuilt: only recipes that were added, edited or removed
+ * have their buckets changed, and only added or edited recipes are signed. A recipe read in
+ * again from the saved book reuses the signature of the recipe it was saved from, found by its
+ * id and modified time, so reloading the book doesn't sign every recipe again.
+ */
+public class RecipeSimilarityIndex
+{
+    public static final int NUM_HASHES = 64;
+    public static final int BANDS = 16;
+    public static final int ROWS = NUM_HASHES / BANDS;
+    public static final double MIN_SIMILARITY = 0.2d;
+
+    private static final RecipeSimilarityIndex theInstance = new RecipeSimilarityIndex();
+    private static final long[] SEEDS = new long[NUM_HASHES];
+    private static final long INGREDIENT_SALT = 0x1b873593L;
+    private static final long DIRECTIONS_SALT = 0xcc9e2d51L;
+    private static final int SHINGLE_SIZE = 3;
+    private static final HashSet<String> IGNORED_WORDS = new HashSet<>();
+
+    static
+    {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < NUM_HASHES; i++)
+        {
+            seed = mix(seed + 0x9e3779b97f4a7c15L);
+            SEEDS[i] = seed;
+        }
+        for (String spelling : UnitVocabulary.spellings())
+        {
+            IGNORED_WORDS.add(spelling.toLowerCase());
+        }
+        IGNORED_WORDS.addAll(Arrays.asList("and", "or", "of", "the", "for", "to", "with", "into",
+                "about", "large", "small", "medium", "fresh", "whole", "taste"));
+    }
+
+    private final HashMap<Long, ArrayList<Entry>> buckets = new HashMap<>();
+    private final IdentityHashMap<Recipe, Entry> entries = new IdentityHashMap<>();
+    private final HashMap<String, Entry> entriesById = new HashMap<>();
+    private int indexedVersion = -1;
+
+    private RecipeSimilarityIndex()
+    {
+    }
+
+    public static RecipeSimilarityIndex getInstance()
+    {
+        return theInstance;
+    }
+
+    /**
+     * SplitMix64 finalizer. Spreads the bits of a 64-bit value so that nearby inputs
+     * produce unrelated outputs.
+     *
+     * @param z The value to mix.
+     * @return The mixed value.
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the MinHash signature of a recipe from its ingredients and directions.
+     * Direction words are hashed in place from the source text; ingredient lines go through the
+     * memoized {@link IngredientNormalizer} first.
+     *
+     * @param recipe The recipe to sign.
+     * @return The signature, or null if the recipe has no usable features.
+     */
+    static int[] computeSignature(Recipe recipe)
+    {
+        long[] mins = new long[NUM_HASHES];
+        Arrays.fill(mins, Long.MAX_VALUE);
+        int features = addIngredientFeatures(recipe.getIngredients(), mins);
+        features += addDirectionFeatures(recipe.getDirections(), mins);
+        if (features == 0) return null;
+        int[] signature = new int[NUM_HASHES];
+        for (int i = 0; i < NUM_HASHES; i++)
+        {
+            signature[i] = (int) (mins[i] ^ (mins[i] >>> 32));
+        }
+        return signature;
+    }
+
+    /**
+     * Folds one feature hash into the running minimums.
+     *
+     * @param feature The feature hash.
+     * @param mins    The running minimum for each hash function.
+     */
+    private static void addFeature(long feature, long[] mins)
+    {
+        for (int i = 0; i < NUM_HASHES; i++)
+        {
+            long h = mix(feature ^ SEEDS[i]);
+            if (h < mins[i]) mins[i] = h;
+        }
+    }
+
+    /**
+     * Adds a feature for every meaningful word in the ingredient list.
+     * Each line is reduced to its {@link IngredientNormalizer canonical name} first, so
+     * "2 cups flour" and "500 g flour" contribute the same feature, as do "tomatoes, diced" and
+     * "1 tomato". Filler words are skipped.
+     *
+     * @param ingredients The ingredient text.
+     * @param mins        The running minimum for each hash function.
+     * @return The number of features added.
+     */
+    private static int addIngredientFeatures(String ingredients, long[] mins)
+    {
+        if (ingredients == null) return 0;
+        IngredientNormalizer normalizer = IngredientNormalizer.getInstance();
+        int count = 0;
+        int lineStart = 0;
+        while (lineStart < ingredients.length())
+        {
+            int lineEnd = ingredients.indexOf('\n', lineStart);
+            if (lineEnd < 0) lineEnd = ingredients.length();
+            String name = lineEnd > lineStart ? normalizer.canonicalName(ingredients.substring(lineStart, lineEnd)) : "";
+            lineStart = lineEnd + 1;
+            int length = name.length();
+            int i = 0;
+            while (i < length)
+            {
+                while (i < length && name.charAt(i) == ' ') i++;
+                int start = i;
+                long hash = 0xcbf29ce484222325L;
+                while (i < length && name.charAt(i) != ' ')
+                {
+                    hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+                    i++;
+                }
+                int wordLength = i - start;
+                if (wordLength > 2 && !IGNORED_WORDS.contains(name.substring(start, i)))
+                {
+                    addFeature(hash ^ INGREDIENT_SALT, mins);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds a feature for every run of {@link #SHINGLE_SIZE} consecutive words in the directions.
+     *
+     * @param directions The directions text.
+     * @param mins       The running minimum for each hash function.
+     * @return The number of features added.
+     */
+    private static int addDirectionFeatures(String directions, long[] mins)
+    {
+        if (directions == null) return 0;
+        int count = 0;
+        long[] window = new long[SHINGLE_SIZE];
+        int words = 0;
+        int length = directions.length();
+        int i = 0;
+        while (i < length)
+        {
+            while (i < length && !Character.isLetterOrDigit(directions.charAt(i))) i++;
+            if (i >= length) break;
+            long hash = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(directions.charAt(i)))
+            {
+                hash = (hash ^ Character.toLowerCase(directions.charAt(i))) * 0x100000001b3L;
+                i++;
+            }
+            window[words % SHINGLE_SIZE] = hash;
+            words++;
+            if (words >= SHINGLE_SIZE)
+            {
+                long shingle = DIRECTIONS_SALT;
+                for (int j = words - SHINGLE_SIZE; j < words; j++)
+                {
+                    shingle = mix(shingle + window[j % SHINGLE_SIZE]);
+                }
+                addFeature(shingle, mins);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the signature of a recipe, computing and caching it if necessary.
+     *
+     * @param recipe The recipe.
+     * @return The signature, or null if the recipe has no usable features.
+     */
+    private static int[] signatureOf(Recipe recipe)
+    {
+        int[] signature = recipe.getMinHashSignature();
+        if (signature == null)
+        {
+            signature = computeSignature(recipe);
+            recipe.setMinHashSignature(signature);
+        }
+        return signature;
+    }
+
+    /**
+     * Hashes one band of a signature into a bucket key.
+     *
+     * @param signature The signature.
+     * @param band      The band number.
+     * @return The bucket key.
+     */
+    private static long bandKey(int[] signature, int band)
+    {
+        long key = mix(band + 1L);
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++)
+        {
+            key = mix(key ^ (signature[row] & 0xffffffffL));
+        }
+        return key;
+    }
+
+    /**
+     * Estimates the Jaccard similarity of two recipes from their signatures.
+     *
+     * @param a The first signature.
+     * @param b The second signature.
+     * @return The fraction of signature positions that agree, from 0 to 1.
+     */
+    static double estimateSimilarity(int[] a, int[] b)
+    {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++)
+        {
+            if (a[i] == b[i]) same++;
+        }
+        return ((double) same) / NUM_HASHES;
+    }
+
+    /**
+     * Checks whether the bucket index was built from the recipe book at a given version.
+     *
+     * @param version The {@link Recipes#getVersion() version} of the recipe book.
+     * @return True if {@link #refresh(List, int)} would do nothing for that version.
+     */
+    public synchronized boolean isCurrent(int version)
+    {
+        return version == indexedVersion;
+    }
+
+    /**
+     * Brings the bucket index up to date with the given recipe list.
+     * Nothing is done if the version matches the last refresh, whether or not the list is the
+     * same object, since copies of the book taken at one version hold the same recipes.
+     * Otherwise every recipe is looked up in the index, which takes no hashing for recipes
+     * that are filed and unchanged. A recipe read in again takes over the place of the recipe
+     * with its id and modified time, along with its signature. Recipes that are new or have
+     * been edited since they were filed are signed and filed again, and recipes no longer in
+     * the list are taken out.
+     *
+     * @param recipes The recipes to index.
+     * @param version The {@link Recipes#getVersion() version} the list was taken at.
+     */
+    public synchronized void refresh(List<Recipe> recipes, int version)
+    {
+        if (version == indexedVersion) return;
+        int seen = 0;
+        for (Recipe recipe : recipes)
+        {
+            Entry entry = entries.get(recipe);
+            if (entry == null && recipe.getMinHashSignature() == null)
+            {
+                entry = entriesById.get(recipe.getId());
+                if (entry != null && entry.version != version && entry.modified == recipe.getModified())
+                {
+                    entries.remove(entry.recipe);
+                    entry.recipe = recipe;
+                    entries.put(recipe, entry);
+                    recipe.setMinHashSignature(entry.signature);
+                } else
+                {
+                    entry = null;
+                }
+            }
+            if (entry != null && entry.signature == recipe.getMinHashSignature() && entry.modified == recipe.getModified())
+            {
+                if (entry.version != version) seen++;
+                entry.version = version;
+                continue;
+            }
+            if (entry != null)
+            {
+                if (entry.version == version) seen--;
+                entries.remove(recipe);
+                unfile(entry);
+            }
+            file(new Entry(recipe, signatureOf(recipe), version));
+            seen++;
+        }
+        if (seen != entries.size())
+        {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext())
+            {
+                Entry entry = iterator.next();
+                if (entry.version == version) continue;
+                iterator.remove();
+                unfile(entry);
+            }
+        }
+        indexedVersion = version;
+    }
+
+    /**
+     * Adds a recipe to the index, in the bucket of each band of its signature.
+     *
+     * @param entry The recipe and its signature.
+     */
+    private void file(Entry entry)
+    {
+        entries.put(entry.recipe, entry);
+        entriesById.put(entry.recipe.getId(), entry);
+        if (entry.signature == null) return;
+        for (int band = 0; band < BANDS; band++)
+        {
+            long key = bandKey(entry.signature, band);
+            ArrayList<Entry> bucket = buckets.get(key);
+            if (bucket == null)
+            {
+                bucket = new ArrayList<>(2);
+                buckets.put(key, bucket);
+            }
+            bucket.add(entry);
+        }
+    }
+
+    /**
+     * Takes a recipe out of the buckets it was filed in, using the signature it was filed
+     * with rather than the one it has now. The caller takes it out of {@link #entries}.
+     *
+     * @param entry The recipe and the signature it was filed with.
+     */
+    private void unfile(Entry entry)
+    {
+        if (entriesById.get(entry.recipe.getId()) == entry) entriesById.remove(entry.recipe.getId());
+        if (entry.signature == null) return;
+        for (int band = 0; band < BANDS; band++)
+        {
+            long key = bandKey(entry.signature, band);
+            ArrayList<Entry> bucket = buckets.get(key);
+            if (bucket == null) continue;
+            for (int i = 0; i < bucket.size(); i++)
+            {
+                if (bucket.get(i) == entry)
+                {
+                    bucket.remove(i);
+                    break;
+                }
+            }
+            if (bucket.isEmpty()) buckets.remove(key);
+        }
+    }
+
+    /**
+     * Finds the recipes most similar to the given one.
+     * Only recipes that share at least one LSH bucket with it are scored.
+     * The index should be brought up to date with {@link #refresh(List, int)} first.
+     *
+     * @param recipe     The recipe to find neighbours for.
+     * @param maxResults The maximum number of recipes to return.
+     * @return Similar recipes, most similar first.
+     */
+    public synchronized List<Recipe> findSimilar(Recipe recipe, int maxResults)
+    {
+        ArrayList<Recipe> results = new ArrayList<>();
+        int[] signature = signatureOf(recipe);
+        if (signature == null) return results;
+        IdentityHashMap<Recipe, Double> scores = new IdentityHashMap<>();
+        for (int band = 0; band < BANDS; band++)
+        {
+            ArrayList<Entry> bucket = buckets.get(bandKey(signature, band));
+            if (bucket == null) continue;
+            for (Entry entry : bucket)
+            {
+                Recipe candidate = entry.recipe;
+                if (candidate == recipe || scores.containsKey(candidate)) continue;
+                if (candidate.getMinHashSignature() != entry.signature) continue;
+                scores.put(candidate, estimateSimilarity(signature, entry.signature));
+            }
+        }
+        for (Recipe candidate : scores.keySet())
+        {
+            if (scores.get(candidate) >= MIN_SIMILARITY) results.add(candidate);
+        }
+        results.sort((a, b) -> Double.compare(scores.get(b), scores.get(a)));
+        if (results.size() > maxResults)
+        {
+            return new ArrayList<>(results.subList(0, maxResults));
+        }
+        return results;
+    }
+
+    /**
+     * A recipe in the index, with the signature and modified time it was filed with.
+     */
+    private static class Entry
+    {
+        private Recipe recipe;
+        private final int[] signature;
+        private final long modified;
+        private int version;
+
+        Entry(Recipe recipe, int[] signature, int version)
+        {
+            this.recipe = recipe;
+            this.signature = signature;
+            this.modified = recipe.getModified();
+            this.version = version;
+        }
+    }
+}
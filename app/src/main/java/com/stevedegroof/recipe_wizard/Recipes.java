@@ -1,19 +1,25 @@
 package com.stevedegroof.recipe_wizard;
 
 import android.content.Context;
-import android.content.Intent;
 
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.mlkit.vision.text.Text;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
 
 /**
  * A singleton class for managing a collection of {@link Recipe} objects.
@@ -65,6 +71,15 @@ public class Recipes
     private Recipe currentRecipe;
 
     private int sortOn = NAME;
+    private int version = 0;
+    private int modification = 0;
+    private long generation = 0;
+    private long nextGeneration = new Random().nextLong();
+    private boolean loaded = false;
+    private int savedStamp = 0;
+    private boolean fingerprintsIndexed = false;
+    private HashSet<String> savedIds = null;
+    private final FingerprintIndex fingerprintIndex = new FingerprintIndex();
 
     private String rawText = "";
     private Text visionText;
@@ -88,74 +103,317 @@ public class Recipes
         Collections.sort(list);
     }
 
+    /**
+     * Adds a recipe to the book, and to its {@link #getFingerprintIndex() fingerprint index}.
+     * The book still has to be saved.
+     *
+     * @param recipe The recipe.
+     */
+    public void add(Recipe recipe)
+    {
+        list.add(recipe);
+        if (fingerprintsIndexed) fingerprintIndex.add(recipe);
+    }
+
+    /**
+     * Removes a recipe from the book, and from its {@link #getFingerprintIndex() fingerprint index}.
+     * The book still has to be saved.
+     *
+     * @param recipe The recipe.
+     */
+    public void remove(Recipe recipe)
+    {
+        list.remove(recipe);
+        if (fingerprintsIndexed) fingerprintIndex.remove(recipe);
+    }
+
+    /**
+     * Puts a recipe in the book in place of another, and in its place in the
+     * {@link #getFingerprintIndex() fingerprint index}. The book still has to be saved.
+     *
+     * @param index  The position of the recipe to replace.
+     * @param recipe The recipe to put in its place.
+     */
+    public void replace(int index, Recipe recipe)
+    {
+        Recipe replaced = list.set(index, recipe);
+        if (fingerprintsIndexed)
+        {
+            fingerprintIndex.remove(replaced);
+            fingerprintIndex.add(recipe);
+        }
+    }
+
+    /**
+     * Removes every recipe that matches a filter from the book, and from its
+     * {@link #getFingerprintIndex() fingerprint index}, in one pass over the book.
+     * The book still has to be saved.
+     *
+     * @param filter Which recipes to remove.
+     */
+    public void removeIf(Predicate<Recipe> filter)
+    {
+        if (fingerprintsIndexed)
+        {
+            for (Recipe recipe : list)
+            {
+                if (filter.test(recipe)) fingerprintIndex.remove(recipe);
+            }
+        }
+        list.removeIf(filter);
+    }
+
+    /**
+     * Removes every recipe from the book, and from its {@link #getFingerprintIndex() fingerprint index}.
+     * The book still has to be saved.
+     */
+    public void clear()
+    {
+        list.clear();
+        fingerprintIndex.clear();
+        fingerprintsIndexed = true;
+    }
+
+    /**
+     * Gets the version of the recipe book. The version changes whenever the list is read in
+     * again, saved or deduplicated, so anything derived from the list (such as
+     * {@link RecipeSimilarityIndex}) can tell when it needs to be rebuilt. A load that finds
+     * the book just as it was last loaded or saved leaves the version as it is.
+     *
+     * @return The current version.
+     */
+    public int getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * Gets the modification version of the recipe book. Unlike {@link #getVersion()}, this only
+     * changes when the recipes themselves may have changed: when they are saved or deduplicated,
+     * not when the same saved recipes are loaded again. Things written out from the book, such as
+     * the {@link ShareBookCache shared book file}, use it to tell whether they are still current.
+     *
+     * @return The current modification version.
+     */
+    public int getModification()
+    {
+        return modification;
+    }
+
+    /**
+     * Gets the generation of the saved recipe book. Each save writes a new generation number
+     * into the book file along with the recipes, so the number read back tells exactly which
+     * save the file holds. A book saved before generations were written is generation 0.
+     *
+     * @return The generation of the book as it was last loaded or saved.
+     */
+    public long getGeneration()
+    {
+        return generation;
+    }
+
+    /**
+     * Gets the generation the book will have once it is next saved. An import checkpoint
+     * records it before saving, so that after the app is killed it can tell from
+     * {@link #getGeneration()} whether the save happened.
+     *
+     * @return The next generation.
+     */
+    public long getNextGeneration()
+    {
+        return nextGeneration;
+    }
+
     /**
      * Loads recipes from private storage.
      * <p>
-     * This method reads a JSON file containing recipe data, deserializes it,
+     * This method reads a JSON file containing recipe data and the book's
+     * {@link #getGeneration() generation}, deserializes it,
      * and populates the internal list of recipes. If the file is not found or
      * an error occurs during reading or parsing, the list remains empty or
      * in its previous state. After successfully loading, the recipes are sorted.
+     * Recipes saved before recipes had ids are given one, and the book is saved again
+     * so their ids and created times stay the same from then on.
+     * <p>
+     * Nothing is read if the saved book is still the {@link #getGeneration() generation} last
+     * loaded or saved and no recipe has been added, removed or changed in memory since then,
+     * so the list, its {@link #getVersion() version} and everything indexed from it stay as
+     * they are.
      *
      * @param ctx The application context, used to access private file storage.
      */
     public void load(Context ctx)
     {
+        if (loaded && savedGeneration(ctx) == generation && stamp(list) == savedStamp) return;
         Gson gson = new Gson();
-        String json = "";
         list.clear();
-        StringBuilder sb;
-        try
-        {
-            FileInputStream fis = ctx.openFileInput(MainActivity.RECIPE_FILE_NAME);
-            InputStreamReader isr = new InputStreamReader(fis);
-            BufferedReader bufferedReader = new BufferedReader(isr);
-            sb = new StringBuilder();
-            String line;
-            while ((line = bufferedReader.readLine()) != null)
+        version++;
+        generation = 0;
+        fingerprintsIndexed = false;
+        try (JsonReader reader = new JsonReader(new InputStreamReader(ctx.openFileInput(MainActivity.RECIPE_FILE_NAME))))
+        {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY)
             {
-                sb.append(line);
+                list = gson.fromJson(reader, recipesType);
+            } else
+            {
+                SavedBook book = gson.fromJson(reader, SavedBook.class);
+                generation = book.generation;
+                if (book.recipes != null) list = book.recipes;
             }
-            json = sb.toString();
-            bufferedReader.close();
-            if (!json.isEmpty())
+            sort();
+        } catch (Exception e)
+        {
+        }
+        boolean needsIds = false;
+        for (Recipe recipe : list)
+        {
+            if (!recipe.hasId()) needsIds = true;
+        }
+        if (needsIds)
+        {
+            save(ctx);
+        } else
+        {
+            savedIds = idsOf(list, false);
+            savedStamp = stamp(list);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Reads the generation of the saved book, which is written before its recipes, without
+     * reading the recipes.
+     *
+     * @param ctx The application context.
+     * @return The generation; 0 if there is no saved book or it was saved without one, and -1
+     * if it can't be read.
+     */
+    private static long savedGeneration(Context ctx)
+    {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(ctx.openFileInput(MainActivity.RECIPE_FILE_NAME))))
+        {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) return 0;
+            reader.beginObject();
+            while (reader.hasNext())
             {
-                list = gson.fromJson(json, recipesType);
-                sort();
+                if (reader.nextName().equals("generation")) return reader.nextLong();
+                reader.skipValue();
             }
+        } catch (FileNotFoundException e)
+        {
+            return 0;
         } catch (Exception e)
         {
         }
+        return -1;
+    }
+
+    /**
+     * Sums up which recipes are in a list and when each was last modified, in any order, so
+     * that a recipe being added, removed, replaced or edited changes the result.
+     *
+     * @param recipes The recipes.
+     * @return The stamp.
+     */
+    private static int stamp(List<Recipe> recipes)
+    {
+        int stamp = recipes.size();
+        for (Recipe recipe : recipes)
+        {
+            stamp += 31 * System.identityHashCode(recipe) + Long.hashCode(recipe.getModified());
+        }
+        return stamp;
+    }
 
+    /**
+     * Collects the ids of a list of recipes.
+     *
+     * @param recipes   The recipes.
+     * @param makeUnique If true, a recipe whose id is already taken by an earlier one is given a new id.
+     * @return The ids.
+     */
+    private static HashSet<String> idsOf(List<Recipe> recipes, boolean makeUnique)
+    {
+        HashSet<String> ids = new HashSet<>();
+        for (Recipe recipe : recipes)
+        {
+            if (!ids.add(recipe.getId()) && makeUnique)
+            {
+                recipe.resetId();
+                ids.add(recipe.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Records in the {@link ChangeLog} the recipes that were in the book when it was last loaded
+     * or saved but aren't now, however they were removed. Only ids are compared.
+     *
+     * @param ctx The application context.
+     * @param ids The ids of the recipes in the book now.
+     */
+    private void recordDeletions(Context ctx, HashSet<String> ids)
+    {
+        if (savedIds == null) return;
+        ArrayList<String> deleted = new ArrayList<>();
+        for (String id : savedIds)
+        {
+            if (!ids.contains(id)) deleted.add(id);
+        }
+        ChangeLog.getInstance().recordDeletions(ctx, deleted, System.currentTimeMillis());
     }
 
     /**
      * Saves the list of recipes to private storage.
-     * The recipes are serialized to JSON format before being written to a file.
-     * After saving, the list of recipes is sorted.
+     * The recipes are serialized to JSON format, along with the book's
+     * {@link #getNextGeneration() next generation}, and written to a temporary file, which then
+     * replaces the saved recipes, so the saved recipes are never left half written and the
+     * generation in the file always matches the recipes with it.
+     * Recipes that have gone from the book since it was last loaded or saved are recorded as
+     * deleted in the {@link ChangeLog}, and any recipe sharing an id with another gets a new one.
+     * Recipes edited since they were put in the {@link #getFingerprintIndex() fingerprint index}
+     * are filed again. After saving, the list of recipes is sorted.
      *
      * @param ctx The context used to access private storage.
      */
     public void save(Context ctx)
     {
-        FileOutputStream outputStream;
+        HashSet<String> ids = idsOf(list, true);
+        recordDeletions(ctx, ids);
+        savedIds = ids;
+        if (fingerprintsIndexed) fingerprintsIndexed = fingerprintIndex.update(list);
 
         final Gson gson = new Gson();
-        String serializedRecipes = gson.toJson(list, recipesType);
+        String serializedBook = gson.toJson(new SavedBook(nextGeneration, list));
 
-        try
+        File temp = new File(ctx.getFilesDir(), MainActivity.RECIPE_FILE_NAME + ".tmp");
+        boolean written = false;
+        try (FileOutputStream outputStream = new FileOutputStream(temp))
         {
-            outputStream = ctx.openFileOutput(MainActivity.RECIPE_FILE_NAME, Context.MODE_PRIVATE);
-            outputStream.write(serializedRecipes.getBytes());
-            outputStream.close();
+            outputStream.write(serializedBook.getBytes());
+            outputStream.getFD().sync();
+            written = true;
         } catch (Exception e)
         {
         }
+        if (written && temp.renameTo(ctx.getFileStreamPath(MainActivity.RECIPE_FILE_NAME)))
+        {
+            generation = nextGeneration;
+            nextGeneration = new Random().nextLong();
+            savedStamp = stamp(list);
+        }
+        version++;
+        modification++;
         sort();
     }
 
     /**
      * Extracts the entire recipe book into plain text.
      * Each recipe is separated by {@link MainActivity#RECIPE_BREAK}.
+     * The whole book is built in memory; to write a book to a file, stream it with a
+     * {@link RecipeExporter} instead.
      *
      * @param includeNotes If true, notes for each recipe will be included in the output.
      * @return A string containing all recipes in plain text format.
@@ -168,7 +426,12 @@ public class Recipes
         {
             recipe = getList().get(i);
             if (i != 0) textContent.append(MainActivity.RECIPE_BREAK + "\n");
-            textContent.append(recipe.toPlainText(includeNotes));
+            try
+            {
+                recipe.writePlainText(textContent, includeNotes);
+            } catch (IOException e)
+            {
+            }
         }
         return textContent.toString();
     }
@@ -184,40 +447,50 @@ public class Recipes
     }
 
     /**
-     * Removes duplicate recipes from the list.
+     * Removes duplicate recipes from the list, keeping the first of each.
      * <p>
-     * This method iterates through the existing list of recipes and identifies duplicates
-     * based on a case-insensitive comparison of their titles and plain text content
-     * (with all whitespace removed). It broadcasts progress updates during the deduplication
-     * process.
+     * Recipes are duplicates if their plain text content, with all whitespace removed, is the
+     * same ignoring case. Each recipe is added to a {@link FingerprintIndex} of the recipes
+     * already kept, so the pass is linear in the number of recipes.
      *
-     * @param context The application context, used to send broadcast intents for progress updates.
+     * @param progress Where to report progress.
      */
-    public void dedupe(Context context)
+    public void dedupe(ProgressChannel progress)
     {
-        Intent intent = new Intent();
-        intent.setAction(MainActivity.ProgressReceiver.ACTION);
-        boolean found = false;
         ArrayList<Recipe> newRecipes = new ArrayList<>();
+        FingerprintIndex kept = new FingerprintIndex();
         int recipeNumber = 0;
         int recipeCount = theInstance.getList().size();
         for (Recipe recipe : theInstance.getList())
         {
             recipeNumber++;
-            intent.putExtra(MainActivity.ProgressReceiver.PROGRESS, MainActivity.ProgressReceiver.MERGE);
-            intent.putExtra(MainActivity.ProgressReceiver.VALUE, (long) recipeNumber);
-            intent.putExtra(MainActivity.ProgressReceiver.TOTAL, (long) recipeCount);
-            context.sendBroadcast(intent);
-            found = false;
-            for (int i = 0; i < newRecipes.size() && !found; i++)
-            {
-                Recipe newRecipe = newRecipes.get(i);
-                found = newRecipe.getTitle().replaceAll("\\s", "").equalsIgnoreCase(recipe.getTitle().replaceAll("\\s", ""))
-                        && newRecipe.toPlainText(true).replaceAll("\\s", "").equalsIgnoreCase(recipe.toPlainText(true).replaceAll("\\s", ""));
-            }
-            if (!found) newRecipes.add(recipe);
+            progress.report(ProgressChannel.MERGE, recipeNumber, recipeCount);
+            if (kept.add(recipe)) newRecipes.add(recipe);
         }
         theInstance.list = newRecipes;
+        fingerprintsIndexed = false;
+        version++;
+        modification++;
+    }
+
+    /**
+     * Gets an index of the recipes in the book by content fingerprint.
+     * The index is built the first time it is needed after the book is read in or deduplicated,
+     * and from then on kept up to date by {@link #add(Recipe)}, {@link #remove(Recipe)},
+     * {@link #replace(int, Recipe)}, {@link #removeIf(Predicate)} and {@link #clear()}. Recipes edited, or added to {@link #getList()} directly, are filed again
+     * when the book is saved; if recipes were removed from the list directly, the index is
+     * built again.
+     *
+     * @return The index.
+     */
+    public FingerprintIndex getFingerprintIndex()
+    {
+        if (!fingerprintsIndexed || fingerprintIndex.size() != list.size())
+        {
+            fingerprintIndex.rebuild(list);
+            fingerprintsIndexed = true;
+        }
+        return fingerprintIndex;
     }
 
 
@@ -251,4 +524,20 @@ public class Recipes
         this.visionText = visionText;
 
     }
+
+    /**
+     * The recipe book as it is saved: its generation, then its recipes. Books saved before
+     * generations were written are a bare list of recipes.
+     */
+    private static class SavedBook
+    {
+        private final long generation;
+        private final ArrayList<Recipe> recipes;
+
+        SavedBook(long generation, ArrayList<Recipe> recipes)
+        {
+            this.generation = generation;
+            this.recipes = recipes;
+        }
+    }
 }
@@ -0,0 +1,310 @@
+package com.stevedegroof.recipe_wizard;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Turns schema.org {@code Recipe} objects, as found in the JSON-LD of recipe web pages, into
+ * {@link Recipe} objects.
+ * <p>
+ * The structured fields are copied across directly rather than being rebuilt as text and
+ * guessed at by {@link RecipeParser}:
+ * <ul>
+ *     <li>{@code name} becomes the title.</li>
+ *     <li>{@code recipeIngredient} (or the older {@code ingredients}) becomes the ingredients, one per line.</li>
+ *     <li>{@code recipeInstructions} becomes the directions, one step per line. Steps may be plain
+ *     text, {@code HowToStep} objects, or {@code HowToSection} objects holding steps.</li>
+ *     <li>The first number in {@code recipeYield} becomes the servings.</li>
+ *     <li>{@code description} becomes the notes.</li>
+ * </ul>
+ * Recipes are found at the top level, in arrays, in an {@code @graph}, or as the
+ * {@code mainEntity} or items of a page or list. HTML tags and character references that sites
+ * leave in their text are cleaned out.
+ */
+public class SchemaRecipeMapper
+{
+    private static final String DEFAULT_SERVINGS = "4";
+    private static final Pattern TAG = Pattern.compile("<[^>]*>");
+    private static final Pattern ENTITY = Pattern.compile("&(#[0-9]+|#[xX][0-9a-fA-F]+|[a-zA-Z][a-zA-Z0-9]*);");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+    private static final Pattern STEP_BREAK = Pattern.compile("\\r?\\n|<br\\s*/?>|</p>", Pattern.CASE_INSENSITIVE);
+    private static final String[] WRAPPER_MARKERS = {"<![CDATA[", "]]>", "<!--", "-->"};
+    private static final String[] NESTED = {"@graph", "mainEntity", "mainEntityOfPage", "itemListElement", "item"};
+
+    private SchemaRecipeMapper()
+    {
+    }
+
+    /**
+     * Finds and converts the recipes in a JSON-LD block.
+     *
+     * @param jsonLd The text of the block.
+     * @return The recipes; empty if the block has none or isn't valid JSON.
+     */
+    public static List<Recipe> toRecipes(String jsonLd)
+    {
+        ArrayList<Recipe> recipes = new ArrayList<>();
+        try
+        {
+            collect(JsonParser.parseString(stripWrapper(jsonLd)), recipes, 0);
+        } catch (RuntimeException e)
+        {
+        }
+        return recipes;
+    }
+
+    /**
+     * Removes the comment or CDATA markers some sites wrap JSON-LD in.
+     *
+     * @param jsonLd The text of the block.
+     * @return The JSON inside.
+     */
+    private static String stripWrapper(String jsonLd)
+    {
+        for (String marker : WRAPPER_MARKERS)
+        {
+            if (jsonLd.contains(marker)) jsonLd = jsonLd.replace(marker, "");
+        }
+        int start = 0;
+        int end = jsonLd.length();
+        while (start < end && jsonLd.charAt(start) != '{' && jsonLd.charAt(start) != '[') start++;
+        while (end > start && jsonLd.charAt(end - 1) != '}' && jsonLd.charAt(end - 1) != ']') end--;
+        return jsonLd.substring(start, end);
+    }
+
+    private static void collect(JsonElement element, List<Recipe> recipes, int depth)
+    {
+        if (element == null || depth > 8) return;
+        if (element.isJsonArray())
+        {
+            for (JsonElement item : element.getAsJsonArray())
+            {
+                collect(item, recipes, depth + 1);
+            }
+            return;
+        }
+        if (!element.isJsonObject()) return;
+        JsonObject object = element.getAsJsonObject();
+        if (isType(object, "Recipe"))
+        {
+            Recipe recipe = toRecipe(object);
+            if (recipe != null) recipes.add(recipe);
+            return;
+        }
+        for (String key : NESTED)
+        {
+            collect(object.get(key), recipes, depth + 1);
+        }
+    }
+
+    /**
+     * Checks the {@code @type} of an object, which may be a single type or a list of them.
+     */
+    private static boolean isType(JsonObject object, String type)
+    {
+        JsonElement types = object.get("@type");
+        if (types == null) return false;
+        if (types.isJsonArray())
+        {
+            for (JsonElement t : types.getAsJsonArray())
+            {
+                if (t.isJsonPrimitive() && matchesType(t.getAsString(), type)) return true;
+            }
+            return false;
+        }
+        return types.isJsonPrimitive() && matchesType(types.getAsString(), type);
+    }
+
+    private static boolean matchesType(String value, String type)
+    {
+        return value.equals(type) || value.endsWith("/" + type) || value.endsWith(":" + type);
+    }
+
+    /**
+     * Converts one schema.org Recipe.
+     *
+     * @param object The Recipe object.
+     * @return The recipe, or null if it has neither ingredients nor directions.
+     */
+    private static Recipe toRecipe(JsonObject object)
+    {
+        StringBuilder ingredients = new StringBuilder();
+        JsonElement ingredientList = object.has("recipeIngredient") ? object.get("recipeIngredient") : object.get("ingredients");
+        addLines(ingredientList, ingredients);
+        StringBuilder directions = new StringBuilder();
+        addInstructions(object.get("recipeInstructions"), directions, 0);
+        if (ingredients.length() == 0 && directions.length() == 0) return null;
+
+        Recipe recipe = new Recipe();
+        recipe.setTitle(text(object.get("name")));
+        recipe.setServings(servings(object.get("recipeYield")));
+        recipe.setIngredients(ingredients.toString());
+        recipe.setMetric(RecipeParser.detectMetric(recipe.getIngredients()));
+        recipe.setDirections(directions.toString());
+        recipe.setNotes(text(object.get("description")));
+        return recipe;
+    }
+
+    /**
+     * Adds each string in a value, which may be a single string or a list, as a line.
+     */
+    private static void addLines(JsonElement value, StringBuilder lines)
+    {
+        if (value == null) return;
+        if (value.isJsonArray())
+        {
+            for (JsonElement item : value.getAsJsonArray())
+            {
+                addLines(item, lines);
+            }
+            return;
+        }
+        String line = text(value);
+        if (!line.isEmpty()) lines.append(line).append('\n');
+    }
+
+    /**
+     * Adds the steps of {@code recipeInstructions} as lines. Text that isn't split into steps
+     * is split on its line breaks.
+     */
+    private static void addInstructions(JsonElement value, StringBuilder lines, int depth)
+    {
+        if (value == null || depth > 4) return;
+        if (value.isJsonArray())
+        {
+            for (JsonElement item : value.getAsJsonArray())
+            {
+                addInstructions(item, lines, depth + 1);
+            }
+            return;
+        }
+        if (value.isJsonObject())
+        {
+            JsonObject step = value.getAsJsonObject();
+            if (step.has("itemListElement"))
+            {
+                addInstructions(step.get("itemListElement"), lines, depth + 1);
+            } else
+            {
+                addInstructions(step.has("text") ? step.get("text") : step.get("name"), lines, depth + 1);
+            }
+            return;
+        }
+        if (!value.isJsonPrimitive()) return;
+        for (String line : STEP_BREAK.split(value.getAsString()))
+        {
+            String step = clean(line);
+            if (!step.isEmpty()) lines.append(step).append('\n');
+        }
+    }
+
+    /**
+     * Gets the servings from {@code recipeYield}, such as "4", 4, "Serves 4" or ["4", "4 servings"].
+     */
+    private static String servings(JsonElement value)
+    {
+        if (value == null) return DEFAULT_SERVINGS;
+        if (value.isJsonArray())
+        {
+            for (JsonElement item : value.getAsJsonArray())
+            {
+                if (NUMBER.matcher(text(item)).find()) return servings(item);
+            }
+            return DEFAULT_SERVINGS;
+        }
+        Matcher number = NUMBER.matcher(text(value));
+        if (!number.find()) return DEFAULT_SERVINGS;
+        try
+        {
+            int servings = Integer.parseInt(number.group());
+            return servings > 0 ? Integer.toString(servings) : DEFAULT_SERVINGS;
+        } catch (NumberFormatException e)
+        {
+            return DEFAULT_SERVINGS;
+        }
+    }
+
+    /**
+     * Gets a value as cleaned-up text. Objects such as {@code HowToStep} give their {@code text}.
+     */
+    private static String text(JsonElement value)
+    {
+        if (value == null || value.isJsonNull()) return "";
+        if (value.isJsonPrimitive()) return clean(value.getAsString());
+        if (value.isJsonObject())
+        {
+            JsonObject object = value.getAsJsonObject();
+            return text(object.has("text") ? object.get("text") : object.get("name"));
+        }
+        JsonArray array = value.getAsJsonArray();
+        return array.size() > 0 ? text(array.get(0)) : "";
+    }
+
+    /**
+     * Removes HTML tags and character references, and collapses white space.
+     *
+     * @param text The text.
+     * @return The cleaned text.
+     */
+    static String clean(String text)
+    {
+        if (text.indexOf('<') >= 0) text = TAG.matcher(text).replaceAll(" ");
+        if (text.indexOf('&') >= 0)
+        {
+            Matcher entity = ENTITY.matcher(text);
+            StringBuffer decoded = new StringBuffer();
+            while (entity.find())
+            {
+                entity.appendReplacement(decoded, Matcher.quoteReplacement(decodeEntity(entity.group(1), entity.group())));
+            }
+            entity.appendTail(decoded);
+            text = decoded.toString();
+        }
+        return SPACES.matcher(text).replaceAll(" ").trim();
+    }
+
+    private static String decodeEntity(String name, String original)
+    {
+        try
+        {
+            if (name.startsWith("#x") || name.startsWith("#X")) return new String(Character.toChars(Integer.parseInt(name.substring(2), 16)));
+            if (name.startsWith("#")) return new String(Character.toChars(Integer.parseInt(name.substring(1))));
+        } catch (IllegalArgumentException e)
+        {
+            return original;
+        }
+        switch (name)
+        {
+            case "amp":
+                return "&";
+            case "lt":
+                return "<";
+            case "gt":
+                return ">";
+            case "quot":
+                return "\"";
+            case "apos":
+                return "'";
+            case "nbsp":
+                return " ";
+            case "frac12":
+                return "½";
+            case "frac14":
+                return "¼";
+            case "frac34":
+                return "¾";
+            case "deg":
+                return "°";
+            default:
+                return original;
+        }
+    }
+}
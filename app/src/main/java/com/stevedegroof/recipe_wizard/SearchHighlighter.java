@@ -0,0 +1,96 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.graphics.Typeface;
+import android.text.Spannable;
+import android.text.SpannableString;
+import android.text.SpannableStringBuilder;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.StyleSpan;
+
+/**
+ * Turns the {@link MatchSpan match spans} of a {@link SearchHit} into highlighted text for display.
+ * The offsets come straight from the search, so none of these methods search the text again.
+ */
+public class SearchHighlighter
+{
+    public static final int SNIPPET_CONTEXT = 30;
+    private static final String ELLIPSIS = "…";
+
+    private SearchHighlighter()
+    {
+    }
+
+    /**
+     * Highlights one range of a spannable.
+     *
+     * @param text  The text to mark up.
+     * @param start The start of the range.
+     * @param end   The end of the range.
+     * @param color The highlight background color.
+     */
+    static void highlight(Spannable text, int start, int end, int color)
+    {
+        if (start < 0 || end > text.length() || start >= end) return;
+        text.setSpan(new BackgroundColorSpan(color), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(new StyleSpan(Typeface.BOLD), start, end, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
+    }
+
+    /**
+     * Highlights the matches in one field of a recipe.
+     *
+     * @param text  The field text, exactly as stored in the recipe.
+     * @param hit   The search hit, or null.
+     * @param field The field the text came from.
+     * @param color The highlight background color.
+     * @return The text with its matches highlighted, or the text itself if there are none.
+     */
+    public static CharSequence highlightField(String text, SearchHit hit, int field, int color)
+    {
+        if (text == null || hit == null) return text;
+        SpannableString highlighted = null;
+        for (MatchSpan span : hit.getSpans())
+        {
+            if (span.getField() != field) continue;
+            if (highlighted == null) highlighted = new SpannableString(text);
+            highlight(highlighted, span.getStart(), span.getEnd(), color);
+        }
+        return highlighted == null ? text : highlighted;
+    }
+
+    /**
+     * Builds a one-line snippet around the first match outside the title.
+     * Only the line holding the match is copied, trimmed to {@link #SNIPPET_CONTEXT}
+     * characters either side of the match.
+     *
+     * @param recipe The recipe that matched.
+     * @param hit    Its search hit.
+     * @param color  The highlight background color.
+     * @return The snippet, or null if all the matches are in the title.
+     */
+    public static CharSequence snippet(Recipe recipe, SearchHit hit, int color)
+    {
+        if (hit == null) return null;
+        MatchSpan span = hit.getSnippetSpan();
+        if (span == null) return null;
+        String text = MatchSpan.fieldText(recipe, span.getField());
+        if (text == null || span.getEnd() > text.length()) return null;
+        int lineStart = text.lastIndexOf('\n', span.getStart() - 1) + 1;
+        int lineEnd = text.indexOf('\n', span.getEnd());
+        if (lineEnd < 0) lineEnd = text.length();
+        int from = Math.max(lineStart, span.getStart() - SNIPPET_CONTEXT);
+        int to = Math.min(lineEnd, span.getEnd() + SNIPPET_CONTEXT);
+        SpannableStringBuilder snippet = new SpannableStringBuilder();
+        if (from > lineStart) snippet.append(ELLIPSIS);
+        int offset = snippet.length() - from;
+        snippet.append(text, from, to);
+        if (to < lineEnd) snippet.append(ELLIPSIS);
+        for (MatchSpan match : hit.getSpans())
+        {
+            if (match.getField() == span.getField() && match.getStart() >= from && match.getEnd() <= to)
+            {
+                highlight(snippet, match.getStart() + offset, match.getEnd() + offset, color);
+            }
+        }
+        return snippet;
+    }
+}
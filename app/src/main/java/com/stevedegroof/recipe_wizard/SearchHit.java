@@ -0,0 +1,64 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The matches found in one recipe by a search.
+ * Spans are recorded while the search verifies the recipe, so highlighting the
+ * results never needs to search the recipe text a second time.
+ */
+public class SearchHit
+{
+    public static final int MAX_SPANS = 32;
+
+    private final ArrayList<MatchSpan> spans = new ArrayList<>();
+
+    /**
+     * Records a match, unless it has already been recorded or {@link #MAX_SPANS} have
+     * already been recorded.
+     *
+     * @param field The field the match is in.
+     * @param start The offset of the first matched character.
+     * @param end   The offset after the last matched character.
+     */
+    void addSpan(int field, int start, int end)
+    {
+        if (spans.size() >= MAX_SPANS) return;
+        for (MatchSpan span : spans)
+        {
+            if (span.getField() == field && span.getStart() == start && span.getEnd() == end) return;
+        }
+        spans.add(new MatchSpan(field, start, end));
+    }
+
+    public List<MatchSpan> getSpans()
+    {
+        return spans;
+    }
+
+    public boolean isEmpty()
+    {
+        return spans.isEmpty();
+    }
+
+    /**
+     * Finds the first match outside the title, which is the most useful one to show
+     * as a snippet since the title is already displayed.
+     *
+     * @return The first match in the ingredients, directions or notes, or null if there is none.
+     */
+    public MatchSpan getSnippetSpan()
+    {
+        MatchSpan best = null;
+        for (MatchSpan span : spans)
+        {
+            if (span.getField() != MatchSpan.TITLE && (best == null || span.getField() < best.getField()
+                    || (span.getField() == best.getField() && span.getStart() < best.getStart())))
+            {
+                best = span;
+            }
+        }
+        return best;
+    }
+}
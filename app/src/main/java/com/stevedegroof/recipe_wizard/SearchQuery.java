@@ -0,0 +1,566 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A parsed search query, compiled to a plan that runs against the {@link RecipeIndex}.
+ * <p>
+ * The query language:
+ * <ul>
+ * <li>{@code flour} - any word containing "flour", in any field. Plurals and synonyms are
+ * folded, so "tomatoes" finds "tomato" and "scallions" finds "green onions"</li>
+ * <li>{@code "brown sugar"} - the words "brown sugar", next to each other and in that order</li>
+ * <li>{@code -nuts} or {@code NOT nuts} - recipes that don't mention nuts</li>
+ * <li>{@code a b} or {@code a AND b} - both; {@code a OR b} or {@code a | b} - either.
+ * AND binds more tightly than OR, and parentheses can be used for grouping</li>
+ * <li>{@code title:}, {@code ing:}, {@code dir:} and {@code notes:} - restrict the following
+ * word, phrase or group to the title, ingredients, directions or notes</li>
+ * </ul>
+ * Each word and phrase becomes a leaf of the plan that reads postings from the index, and
+ * the boolean operators combine the sets of recipes the leaves produce. Nothing in the plan
+ * reads recipe text.
+ */
+public class SearchQuery
+{
+    private static final int ALL_FIELDS = (1 << MatchSpan.TITLE) | (1 << MatchSpan.INGREDIENTS)
+            | (1 << MatchSpan.DIRECTIONS) | (1 << MatchSpan.NOTES);
+
+    private final Node plan;
+
+    private SearchQuery(Node plan)
+    {
+        this.plan = plan;
+    }
+
+    /**
+     * Parses a query. Parsing is forgiving: unbalanced quotes and parentheses are closed at the
+     * end of the query and a dangling operator is ignored.
+     *
+     * @param query The query as typed by the user.
+     * @return The parsed query.
+     */
+    public static SearchQuery parse(String query)
+    {
+        Parser parser = new Parser(query);
+        return new SearchQuery(parser.parseOr(ALL_FIELDS));
+    }
+
+    /**
+     * Whether the query contains anything to search for.
+     *
+     * @return False if the query had no words in it.
+     */
+    public boolean isEmpty()
+    {
+        return plan == null;
+    }
+
+    /**
+     * Runs the query against an index.
+     *
+     * @param index The index, already refreshed.
+     * @param hits  Receives the matches found in each matching recipe, by recipe number.
+     *              Must be at least as long as the index.
+     * @return The numbers of the matching recipes.
+     */
+    public BitSet run(RecipeIndex index, SearchHit[] hits)
+    {
+        BitSet matches = plan == null ? new BitSet() : plan.evaluate(index);
+        if (plan != null) plan.collect(index, matches, hits);
+        return matches;
+    }
+
+    /**
+     * A step in a query plan.
+     */
+    private abstract static class Node
+    {
+        /**
+         * Finds the recipes this part of the query matches.
+         *
+         * @param index The index.
+         * @return The matching recipe numbers.
+         */
+        abstract BitSet evaluate(RecipeIndex index);
+
+        /**
+         * Records the matches of this part of the query in recipes that matched the whole query.
+         *
+         * @param index   The index.
+         * @param matches The recipes that matched the whole query.
+         * @param hits    The hits to record matches in, by recipe number.
+         */
+        abstract void collect(RecipeIndex index, BitSet matches, SearchHit[] hits);
+
+        /**
+         * Whether this node only excludes recipes.
+         *
+         * @return True for a negation.
+         */
+        boolean isNegated()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Records one match, creating the recipe's hit if necessary.
+     */
+    private static void addSpan(SearchHit[] hits, int doc, int field, int start, int end)
+    {
+        if (hits[doc] == null) hits[doc] = new SearchHit();
+        hits[doc].addSpan(field, start, end);
+    }
+
+    /**
+     * A single word, matching any indexed word that contains it.
+     */
+    private static class TermNode extends Node
+    {
+        private final String fragment;
+        private final int fields;
+        private List<RecipeIndex.Postings> matchingWords = null;
+
+        TermNode(String fragment, int fields)
+        {
+            this.fragment = fragment;
+            this.fields = fields;
+        }
+
+        private List<RecipeIndex.Postings> getMatchingWords(RecipeIndex index)
+        {
+            if (matchingWords == null) matchingWords = index.getPostingsContaining(fragment);
+            return matchingWords;
+        }
+
+        @Override
+        BitSet evaluate(RecipeIndex index)
+        {
+            BitSet result = new BitSet(index.size());
+            for (RecipeIndex.Postings postings : getMatchingWords(index))
+            {
+                for (int i = 0; i < postings.count(); i++)
+                {
+                    if ((fields & (1 << postings.field(i))) != 0) result.set(postings.doc(i));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void collect(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+            for (RecipeIndex.Postings postings : getMatchingWords(index))
+            {
+                for (int i = 0; i < postings.count(); i++)
+                {
+                    int doc = postings.doc(i);
+                    if (matches.get(doc) && (fields & (1 << postings.field(i))) != 0)
+                    {
+                        addSpan(hits, doc, postings.field(i), postings.start(i), postings.end(i));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A sequence of words that must appear at consecutive positions in the same field.
+     * Occurrences of the first word are checked against the postings of the following words
+     * by binary search.
+     */
+    private static class PhraseNode extends Node
+    {
+        private final String[] words;
+        private final int fields;
+
+        PhraseNode(List<String> words, int fields)
+        {
+            this.words = words.toArray(new String[0]);
+            this.fields = fields;
+        }
+
+        /**
+         * Runs the phrase, optionally recording matches.
+         *
+         * @param index   The index.
+         * @param matches If not null, only these recipes are considered and their matches are recorded.
+         * @param hits    The hits to record matches in.
+         * @return The recipes containing the phrase.
+         */
+        private BitSet scan(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+            BitSet result = new BitSet(index.size());
+            RecipeIndex.Postings[] postings = new RecipeIndex.Postings[words.length];
+            for (int w = 0; w < words.length; w++)
+            {
+                postings[w] = index.getPostings(words[w]);
+                if (postings[w] == null) return result;
+            }
+            RecipeIndex.Postings first = postings[0];
+            for (int i = 0; i < first.count(); i++)
+            {
+                int doc = first.doc(i);
+                int field = first.field(i);
+                if ((fields & (1 << field)) == 0) continue;
+                if (matches != null && !matches.get(doc)) continue;
+                if (matches == null && result.get(doc)) continue;
+                int position = first.position(i);
+                int last = i;
+                for (int w = 1; w < words.length && last >= 0; w++)
+                {
+                    last = postings[w].find(doc, field, position + w);
+                }
+                if (last < 0) continue;
+                result.set(doc);
+                if (matches != null)
+                {
+                    addSpan(hits, doc, field, first.start(i), postings[words.length - 1].end(last));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        BitSet evaluate(RecipeIndex index)
+        {
+            return scan(index, null, null);
+        }
+
+        @Override
+        void collect(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+            scan(index, matches, hits);
+        }
+    }
+
+    /**
+     * Excludes recipes matching its operand. On its own it matches every other recipe.
+     */
+    private static class NotNode extends Node
+    {
+        private final Node operand;
+
+        NotNode(Node operand)
+        {
+            this.operand = operand;
+        }
+
+        @Override
+        BitSet evaluate(RecipeIndex index)
+        {
+            BitSet result = operand.evaluate(index);
+            result.flip(0, index.size());
+            return result;
+        }
+
+        @Override
+        void collect(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+        }
+
+        @Override
+        boolean isNegated()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Matches recipes matching all of its operands. Negated operands are subtracted from the
+     * result rather than complemented and intersected.
+     */
+    private static class AndNode extends Node
+    {
+        private final List<Node> operands;
+
+        AndNode(List<Node> operands)
+        {
+            this.operands = operands;
+        }
+
+        @Override
+        BitSet evaluate(RecipeIndex index)
+        {
+            BitSet result = null;
+            for (Node operand : operands)
+            {
+                if (operand.isNegated()) continue;
+                BitSet matches = operand.evaluate(index);
+                if (result == null) result = matches;
+                else result.and(matches);
+                if (result.isEmpty()) return result;
+            }
+            if (result == null)
+            {
+                result = new BitSet(index.size());
+                result.set(0, index.size());
+            }
+            for (Node operand : operands)
+            {
+                if (operand.isNegated()) result.andNot(((NotNode) operand).operand.evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        void collect(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+            for (Node operand : operands)
+            {
+                operand.collect(index, matches, hits);
+            }
+        }
+    }
+
+    /**
+     * Matches recipes matching any of its operands.
+     */
+    private static class OrNode extends Node
+    {
+        private final List<Node> operands;
+
+        OrNode(List<Node> operands)
+        {
+            this.operands = operands;
+        }
+
+        @Override
+        BitSet evaluate(RecipeIndex index)
+        {
+            BitSet result = new BitSet(index.size());
+            for (Node operand : operands)
+            {
+                result.or(operand.evaluate(index));
+            }
+            return result;
+        }
+
+        @Override
+        void collect(RecipeIndex index, BitSet matches, SearchHit[] hits)
+        {
+            for (Node operand : operands)
+            {
+                operand.collect(index, matches, hits);
+            }
+        }
+    }
+
+    /**
+     * A recursive descent parser for the query language.
+     */
+    private static class Parser
+    {
+        private final String query;
+        private int pos = 0;
+        private int depth = 0;
+
+        Parser(String query)
+        {
+            this.query = query;
+        }
+
+        private void skipSpaces()
+        {
+            while (pos < query.length() && Character.isWhitespace(query.charAt(pos))) pos++;
+        }
+
+        /**
+         * Consumes an operator keyword if it is next in the query.
+         *
+         * @param keyword The keyword, which must be followed by a space, a quote or a parenthesis.
+         * @return True if the keyword was consumed.
+         */
+        private boolean accept(String keyword)
+        {
+            skipSpaces();
+            if (!query.startsWith(keyword, pos)) return false;
+            int end = pos + keyword.length();
+            if (end < query.length())
+            {
+                char next = query.charAt(end);
+                if (!Character.isWhitespace(next) && next != '"' && next != '(' && keyword.length() > 1) return false;
+            }
+            pos = end;
+            return true;
+        }
+
+        private boolean atEnd()
+        {
+            skipSpaces();
+            return pos >= query.length();
+        }
+
+        private boolean atGroupEnd()
+        {
+            return atEnd() || (depth > 0 && query.charAt(pos) == ')');
+        }
+
+        /**
+         * or := and ( ("OR" | "|") and )*
+         */
+        Node parseOr(int fields)
+        {
+            ArrayList<Node> operands = new ArrayList<>();
+            do
+            {
+                Node operand = parseAnd(fields);
+                if (operand != null) operands.add(operand);
+            } while (accept("OR") || accept("|"));
+            if (operands.isEmpty()) return null;
+            return operands.size() == 1 ? operands.get(0) : new OrNode(operands);
+        }
+
+        /**
+         * and := unary ( ["AND" | "&"] unary )*
+         */
+        private Node parseAnd(int fields)
+        {
+            ArrayList<Node> operands = new ArrayList<>();
+            while (!atGroupEnd())
+            {
+                if (accept("AND") || accept("&")) continue;
+                int before = pos;
+                if (accept("OR") || accept("|"))
+                {
+                    pos = before;
+                    break;
+                }
+                Node operand = parseUnary(fields);
+                if (operand != null) operands.add(operand);
+            }
+            if (operands.isEmpty()) return null;
+            if (operands.size() == 1 && !operands.get(0).isNegated()) return operands.get(0);
+            return new AndNode(operands);
+        }
+
+        /**
+         * unary := ("-" | "NOT") unary | [field ":"] primary
+         */
+        private Node parseUnary(int fields)
+        {
+            skipSpaces();
+            boolean negated = false;
+            if (query.charAt(pos) == '-')
+            {
+                pos++;
+                negated = true;
+            } else if (accept("NOT"))
+            {
+                negated = true;
+            }
+            if (negated)
+            {
+                if (atGroupEnd()) return null;
+                Node operand = parseUnary(fields);
+                return operand == null ? null : new NotNode(operand);
+            }
+            int prefixed = parseField();
+            return parsePrimary(prefixed == 0 ? fields : prefixed);
+        }
+
+        /**
+         * Consumes a field prefix if there is one.
+         *
+         * @return The field mask for the prefix, or 0 if there wasn't one.
+         */
+        private int parseField()
+        {
+            int colon = query.indexOf(':', pos);
+            if (colon < 0) return 0;
+            for (int i = pos; i < colon; i++)
+            {
+                if (!Character.isLetter(query.charAt(i))) return 0;
+            }
+            int field;
+            switch (query.substring(pos, colon).toLowerCase())
+            {
+                case "title":
+                    field = MatchSpan.TITLE;
+                    break;
+                case "ing":
+                    field = MatchSpan.INGREDIENTS;
+                    break;
+                case "dir":
+                    field = MatchSpan.DIRECTIONS;
+                    break;
+                case "notes":
+                    field = MatchSpan.NOTES;
+                    break;
+                default:
+                    return 0;
+            }
+            pos = colon + 1;
+            return 1 << field;
+        }
+
+        /**
+         * primary := "(" or ")" | '"' words '"' | word
+         */
+        private Node parsePrimary(int fields)
+        {
+            if (pos >= query.length()) return null;
+            char c = query.charAt(pos);
+            if (c == '(')
+            {
+                pos++;
+                depth++;
+                Node group = parseOr(fields);
+                depth--;
+                skipSpaces();
+                if (pos < query.length() && query.charAt(pos) == ')') pos++;
+                return group;
+            }
+            if (c == '"')
+            {
+                int end = query.indexOf('"', pos + 1);
+                if (end < 0) end = query.length();
+                List<String> words = RecipeIndex.tokenize(query.substring(pos + 1, end));
+                pos = Math.min(end + 1, query.length());
+                return words(words, fields);
+            }
+            int start = pos;
+            while (pos < query.length() && !Character.isWhitespace(query.charAt(pos))
+                    && query.charAt(pos) != '(' && query.charAt(pos) != ')' && query.charAt(pos) != '"')
+            {
+                pos++;
+            }
+            if (pos == start)
+            {
+                pos++;
+                return null;
+            }
+            return words(RecipeIndex.tokenize(query.substring(start, pos)), fields);
+        }
+
+        /**
+         * Builds the node for a word or phrase. Words are {@link IngredientNormalizer#foldWord(String) folded}
+         * the same way the index folds them, and a two-word phrase with a preferred name
+         * (such as "green onions") also matches that name.
+         *
+         * @param words  The words, in lower case.
+         * @param fields The fields to search.
+         * @return The node, or null if there are no words.
+         */
+        private Node words(List<String> words, int fields)
+        {
+            if (words.isEmpty()) return null;
+            if (words.size() == 1) return new TermNode(IngredientNormalizer.foldWord(words.get(0)), fields);
+            ArrayList<String> folded = new ArrayList<>(words.size());
+            for (String word : words)
+            {
+                folded.add(IngredientNormalizer.foldWord(word));
+            }
+            PhraseNode phrase = new PhraseNode(folded, fields);
+            String synonym = words.size() == 2 ? IngredientNormalizer.synonymFor(IngredientNormalizer.singular(words.get(0)),
+                    IngredientNormalizer.singular(words.get(1))) : null;
+            if (synonym == null || synonym.indexOf(' ') >= 0) return phrase;
+            ArrayList<Node> either = new ArrayList<>();
+            either.add(phrase);
+            either.add(new TermNode(synonym, fields));
+            return new OrNode(either);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.stevedegroof.recipe_wizard;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the recipe book file that is attached when the book is shared, so it is only written
+ * again when the book has changed.
+ * <p>
+ * There is one file for the book with notes and one without, each recording the
+ * {@link Recipes#getModification() modification version} of the book it was written from.
+ * A file is current if the book hasn't been saved or deduplicated since. The files are written
+ * ahead of time, in the background, after the book changes, so sharing is usually instant.
+ * <p>
+ * Recipes are written in order of title, whatever order the list is in, so the file doesn't
+ * depend on the search that happens to be showing. A file is written to a temporary file first
+ * and then renamed into place, so an app still reading the previous copy isn't disturbed.
+ * The versions are only kept in memory; after the app restarts the files are written again.
+ */
+public class ShareBookCache
+{
+    private static final String CACHE_DIR = "share";
+    private static final String NOTES_DIR = "notes";
+    private static final String PLAIN_DIR = "plain";
+    private static final ShareBookCache theInstance = new ShareBookCache();
+
+    private int notesModification = -1;
+    private int plainModification = -1;
+    private volatile boolean lastIncludeNotes = true;
+
+    private ShareBookCache()
+    {
+    }
+
+    public static ShareBookCache getInstance()
+    {
+        return theInstance;
+    }
+
+    /**
+     * Gets where the book file for a notes setting is kept.
+     *
+     * @param ctx          The context, used to find private storage.
+     * @param includeNotes Whether the file includes notes.
+     * @return The file, named {@link MainActivity#BOOK_FILE_NAME}.
+     */
+    private static File bookFile(Context ctx, boolean includeNotes)
+    {
+        File dir = new File(new File(ctx.getFilesDir(), CACHE_DIR), includeNotes ? NOTES_DIR : PLAIN_DIR);
+        return new File(dir, MainActivity.BOOK_FILE_NAME);
+    }
+
+    /**
+     * Gets the book file if it was written from the current recipes.
+     *
+     * @param ctx          The context, used to find private storage.
+     * @param modification The book's current {@link Recipes#getModification() modification version}.
+     * @param includeNotes Whether notes are wanted.
+     * @return The file, or null if it has to be written first.
+     */
+    public synchronized File getIfCurrent(Context ctx, int modification, boolean includeNotes)
+    {
+        if ((includeNotes ? notesModification : plainModification) != modification) return null;
+        File file = bookFile(ctx, includeNotes);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Creates an exporter for the book file, over a copy of the recipes sorted by title, as
+     * the book is listed. Recipes without a title come first.
+     * Call this on the thread that owns the recipe list, then {@link #write} on a background thread.
+     *
+     * @param recipes      The recipes in the book.
+     * @param includeNotes Whether to include notes.
+     * @return The exporter.
+     */
+    public static RecipeExporter exporterFor(List<Recipe> recipes, boolean includeNotes)
+    {
+        ArrayList<Recipe> sorted = new ArrayList<>(recipes);
+        sorted.sort(Comparator.comparing(Recipe::getTitle, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return new RecipeExporter(sorted, includeNotes);
+    }
+
+    /**
+     * Makes sure the book file is current, writing it if it isn't. Run this on a background thread.
+     *
+     * @param ctx          The context, used to find private storage.
+     * @param exporter     The exporter from {@link #exporterFor}, made when the modification version was read.
+     * @param modification The {@link Recipes#getModification() modification version} the exporter's recipes were taken at.
+     * @param includeNotes Whether the exporter includes notes.
+     * @param progress     Where to report progress; may be null.
+     * @return The file, or null if the exporter was cancelled.
+     * @throws IOException If the file cannot be written.
+     */
+    public File write(Context ctx, RecipeExporter exporter, int modification, boolean includeNotes, ProgressChannel progress) throws IOException
+    {
+        File current = getIfCurrent(ctx, modification, includeNotes);
+        if (current != null) return current;
+        File file = bookFile(ctx, includeNotes);
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) throw new IOException("Unable to create " + dir);
+        File temp = new File(dir, MainActivity.BOOK_FILE_NAME + ".tmp");
+        if (!exporter.write(new FileOutputStream(temp), progress))
+        {
+            temp.delete();
+            return null;
+        }
+        synchronized (this)
+        {
+            if (!temp.renameTo(file)) throw new IOException("Unable to write " + file);
+            if (includeNotes)
+            {
+                notesModification = modification;
+            } else
+            {
+                plainModification = modification;
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Remembers whether notes were included the last time the book was shared, so the book is
+     * written ahead of time the same way.
+     *
+     * @param includeNotes Whether notes were included.
+     */
+    public void setLastIncludeNotes(boolean includeNotes)
+    {
+        lastIncludeNotes = includeNotes;
+    }
+
+    /**
+     * Tells whether notes were included the last time the book was shared.
+     *
+     * @return True if they were, or if the book hasn't been shared yet.
+     */
+    public boolean getLastIncludeNotes()
+    {
+        return lastIncludeNotes;
+    }
+}
@@ -0,0 +1,202 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The units of measure the app recognises in ingredient lines, and every spelling of each.
+ * <p>
+ * Each unit has a canonical name ("tsp", "cup", "g"), the {@link UnitsConverter} code it is
+ * converted as, the measuring system it belongs to and what it measures. {@link RecipeParser}
+ * uses it to tell ingredient lines and metric recipes apart, {@link UnitsConverter} to read the
+ * unit of a quantity it converts, and {@link IngredientNormalizer} to name units, so all three
+ * recognise the same units.
+ * <p>
+ * Spellings are looked up in a hash map built once when the class is loaded and never changed,
+ * first as written and then in lower case, so "T" is a tablespoon and "t" a teaspoon while
+ * "TSP" and "Cups" are still recognised.
+ */
+final class UnitVocabulary
+{
+    static final int ANY_SYSTEM = 0;
+
+    static final int VOLUME = 0;
+    static final int MASS = 1;
+    static final int MASS_OR_VOLUME = 2;
+    static final int LENGTH = 3;
+    static final int COUNT = 4;
+
+    private static final String FRACTIONS = "¼½¾⅐⅑⅒⅓⅔⅕⅖⅗⅘⅙⅚⅛⅜⅝⅞";
+    private static final Map<String, Unit> SPELLINGS;
+    private static final int LONGEST_SPELLING;
+
+    static
+    {
+        HashMap<String, Unit> spellings = new HashMap<>();
+        add(spellings, new Unit("tsp", UnitsConverter.TSP, UnitsConverter.IMPERIAL, VOLUME), "t", "t.", "tsp", "tsp.", "teaspoon", "teaspoons");
+        add(spellings, new Unit("tbsp", UnitsConverter.TBSP, UnitsConverter.IMPERIAL, VOLUME), "T", "T.", "tbsp", "tbsp.", "tbs", "tablespoon", "tablespoons");
+        add(spellings, new Unit("cup", UnitsConverter.CUP, UnitsConverter.IMPERIAL, VOLUME), "c", "c.", "cup", "cups");
+        add(spellings, new Unit("oz", UnitsConverter.OZ, UnitsConverter.IMPERIAL, MASS_OR_VOLUME), "oz", "oz.", "ounce", "ounces");
+        add(spellings, new Unit("lb", UnitsConverter.LB, UnitsConverter.IMPERIAL, MASS), "lb", "lb.", "lbs", "lbs.", "pound", "pounds");
+        add(spellings, new Unit("g", UnitsConverter.GRAM, UnitsConverter.METRIC, MASS), "g", "gram", "grams");
+        add(spellings, new Unit("kg", UnitsConverter.KG, UnitsConverter.METRIC, MASS), "kg", "kgs", "kilogram", "kilograms");
+        add(spellings, new Unit("ml", UnitsConverter.ML, UnitsConverter.METRIC, VOLUME), "ml", "ml.", "mls", "milliliter", "milliliters", "millilitre", "millilitres");
+        add(spellings, new Unit("l", UnitsConverter.LITER, UnitsConverter.METRIC, VOLUME), "l", "liter", "liters", "litre", "litres");
+        add(spellings, new Unit("pint", UnitsConverter.PINT, UnitsConverter.IMPERIAL, VOLUME), "pint", "pints");
+        add(spellings, new Unit("quart", UnitsConverter.QT, UnitsConverter.IMPERIAL, VOLUME), "quart", "quarts", "qt", "qts");
+        add(spellings, new Unit("pinch", UnitsConverter.PINCH, ANY_SYSTEM, VOLUME), "pinch", "pinches");
+        add(spellings, new Unit("dash", UnitsConverter.DASH, ANY_SYSTEM, VOLUME), "dash", "dashes");
+        add(spellings, new Unit("smidgen", UnitsConverter.SMIDGEN, ANY_SYSTEM, VOLUME), "smidgen");
+        add(spellings, new Unit("can", UnitsConverter.CAN, ANY_SYSTEM, COUNT), "can", "cans");
+        add(spellings, new Unit("pkg", UnitsConverter.PKG, ANY_SYSTEM, COUNT), "pkg", "pkg.", "package", "packages");
+        add(spellings, new Unit("inch", UnitsConverter.INCH, UnitsConverter.IMPERIAL, LENGTH), "inch", "inches");
+        add(spellings, new Unit("cm", UnitsConverter.CM, UnitsConverter.METRIC, LENGTH), "cm", "cm.");
+        add(spellings, new Unit("mm", UnitsConverter.MM, UnitsConverter.METRIC, LENGTH), "mm", "mm.");
+        int longest = 0;
+        for (String spelling : spellings.keySet())
+        {
+            longest = Math.max(longest, spelling.length());
+        }
+        SPELLINGS = Collections.unmodifiableMap(spellings);
+        LONGEST_SPELLING = longest;
+    }
+
+    /**
+     * A unit of measure.
+     */
+    static final class Unit
+    {
+        private final String name;
+        private final int code;
+        private final int system;
+        private final int dimension;
+
+        Unit(String name, int code, int system, int dimension)
+        {
+            this.name = name;
+            this.code = code;
+            this.system = system;
+            this.dimension = dimension;
+        }
+
+        /**
+         * @return The canonical name, such as "tbsp" or "g".
+         */
+        String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return The {@link UnitsConverter} code for the unit, such as {@link UnitsConverter#TBSP}.
+         */
+        int getCode()
+        {
+            return code;
+        }
+
+        /**
+         * @return {@link UnitsConverter#METRIC}, {@link UnitsConverter#IMPERIAL} or {@link #ANY_SYSTEM}.
+         */
+        int getSystem()
+        {
+            return system;
+        }
+
+        /**
+         * @return {@link #VOLUME}, {@link #MASS}, {@link #MASS_OR_VOLUME}, {@link #LENGTH} or {@link #COUNT}.
+         */
+        int getDimension()
+        {
+            return dimension;
+        }
+    }
+
+    private UnitVocabulary()
+    {
+    }
+
+    private static void add(HashMap<String, Unit> spellings, Unit unit, String... words)
+    {
+        for (String word : words)
+        {
+            spellings.put(word, unit);
+        }
+    }
+
+    /**
+     * Looks up a word as a unit, as written and then in lower case.
+     *
+     * @param word The word, such as "T", "cups" or "ml.".
+     * @return The unit, or null if the word isn't one.
+     */
+    static Unit lookup(String word)
+    {
+        Unit unit = SPELLINGS.get(word);
+        if (unit == null) unit = SPELLINGS.get(word.toLowerCase());
+        return unit;
+    }
+
+    /**
+     * Finds the unit an ingredient line starts with, ignoring the quantity before it. The line is
+     * scanned by hand: digits, fractions, slashes, full stops and dashes are skipped wherever
+     * they are, and the first word left, up to a space, is looked up in lower case. So
+     * "1 1/2 cups flour", "2 tbsp. butter" and "250g sugar" all start with a unit.
+     *
+     * @param line The line.
+     * @return The unit, or null if the line doesn't start with one.
+     */
+    static Unit leadingUnit(String line)
+    {
+        int length = line.length();
+        int i = 0;
+        while (i < length && (line.charAt(i) <= ' ' || isSkipped(line.charAt(i)))) i++;
+        StringBuilder word = null;
+        int wordLength = 0;
+        for (; i < length; i++)
+        {
+            char c = line.charAt(i);
+            if (isSkipped(c)) continue;
+            if (isSeparator(c)) break;
+            if (++wordLength > LONGEST_SPELLING && c > ' ') return null;
+            if (word == null) word = new StringBuilder(LONGEST_SPELLING);
+            word.append(Character.toLowerCase(c));
+        }
+        if (word == null) return null;
+        if (i == length)
+        {
+            int end = word.length();
+            while (end > 0 && word.charAt(end - 1) <= ' ') end--;
+            word.setLength(end);
+        }
+        return SPELLINGS.get(word.toString());
+    }
+
+    /**
+     * Gets every spelling of every unit.
+     *
+     * @return The spellings, which cannot be changed.
+     */
+    static Set<String> spellings()
+    {
+        return SPELLINGS.keySet();
+    }
+
+    /**
+     * Tells whether a character is skipped when looking for the unit a line starts with.
+     */
+    private static boolean isSkipped(char c)
+    {
+        return (c >= '0' && c <= '9') || c == '/' || c == '.' || c == '-' || (c > 0xBB && FRACTIONS.indexOf(c) >= 0);
+    }
+
+    /**
+     * Tells whether a character ends the word looked at for a unit: white space or a no-break space.
+     */
+    private static boolean isSeparator(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r' || c == '\u00A0';
+    }
+}
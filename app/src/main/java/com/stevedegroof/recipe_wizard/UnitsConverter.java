@@ -21,7 +21,7 @@ import java.util.regex.Pattern;
  * </ul>
  *
  * <p>It uses a set of predefined constants for units and conversion factors, along with regular expressions
- * for parsing and detecting quantities in text. The class also includes logic to make educated guesses
+ * for parsing and detecting quantities in text, which are compiled once in {@link RecipePatterns}. The class also includes logic to make educated guesses
  * about the nature of ingredients (dry vs. wet) to aid in accurate conversions.
  */
 public class UnitsConverter
@@ -33,25 +33,26 @@ public class UnitsConverter
     public static final String VALUE_PARSE = "^([0-9¼½¾⅓⅔⅛\\./ -]+|a |another )";
 
     private static final int NONE = -1;
-    private static final int SMIDGEN = 0;
-    private static final int PINCH = 1;
-    private static final int TSP = 2;
-    private static final int TBSP = 3;
-    private static final int FL_OZ = 4;
-    private static final int CUP = 5;
-    private static final int PINT = 6;
-    private static final int ML = 7;
-    private static final int OZ = 8;
-    private static final int LB = 9;
-    private static final int GRAM = 10;
-    private static final int DASH = 11;
-    private static final int KG = 12;
-    private static final int MM = 13;
-    private static final int CM = 14;
-    private static final int INCH = 15;
-    private static final int QT = 16;
-    private static final int CAN = 17;
-    private static final int PKG = 18;
+    static final int SMIDGEN = 0;
+    static final int PINCH = 1;
+    static final int TSP = 2;
+    static final int TBSP = 3;
+    static final int FL_OZ = 4;
+    static final int CUP = 5;
+    static final int PINT = 6;
+    static final int ML = 7;
+    static final int OZ = 8;
+    static final int LB = 9;
+    static final int GRAM = 10;
+    static final int DASH = 11;
+    static final int KG = 12;
+    static final int MM = 13;
+    static final int CM = 14;
+    static final int INCH = 15;
+    static final int QT = 16;
+    static final int CAN = 17;
+    static final int PKG = 18;
+    static final int LITER = 19;
 
     private static final double TSP_TO_ML = 4.93d;
     private static final double TBSP_TO_ML = 14.79d;
@@ -73,12 +74,6 @@ public class UnitsConverter
     private static final double OZ_TO_PINTS = 1d / 16d;
     private static final double OZ_TO_QTS = 1d / 32d;
     private static final double INCH_TO_MM = 25.4d;
-    private static final String FRACTIONS = "[¼½¾⅓⅔⅛]";
-    private static final String UNITS_DETECT = "([\\s-])?(oz|cups?|T\\b|t\\b|c\\b|c\\.|TBSP\\b|tbsp\\b|tsp\\b|tablespoons?\\b|Tablespoons?\\b|teaspoons?\\b|quart\\b|qt\\b|inch(es)?\\b|mls?\\b|cm\\b|mm\\b|liters?\\b|litres?\\b|g\\b|grams?\\b|kgs?\\b)";
-    private static final String VALUE_DETECT1 = "\\s[0-9]+\\.[0-9]+";
-    private static final String VALUE_DETECT2 = "\\s([0-9]+)?([\\s-])?(([0-9]+/[0-9]+)|[¼½¾⅓⅔⅛])";
-    private static final String VALUE_DETECT3 = "\\s[0-9]+";
-    private static final String[] INGREDIENT_DETECT = {VALUE_DETECT1 + UNITS_DETECT, VALUE_DETECT2 + UNITS_DETECT, VALUE_DETECT3 + UNITS_DETECT};
 
     private static final String[] DRY_INGREDIENTS = {"noodles", "ginger root", "chocolate chips",
             "asparagus", "thyme", "tomatoes", "almonds", "cheese", "prosciutto", "arugula", "macaroni",
@@ -87,7 +82,7 @@ public class UnitsConverter
     private static final String[] WET_INGREDIENTS = {"sauce", "paste", "soup", "bouillon", "juice",
             "liqueur", "extract", "puree", "purée", "stock", "salsa", "mayo", "mayonnaise", "dressing",
             "milk", "broth"};
-    private static final String[] PREP_WORDS = {"chopped", "diced", "quartered", "mashed", "shredded",
+    static final String[] PREP_WORDS = {"chopped", "diced", "quartered", "mashed", "shredded",
             "minced", "cubed", "cooked", "uncooked", "drained", "undrained", "chilled", "cold",
             "halved", "seeded", "peeled", "divided", "beaten", "rinsed", "blanched", "juiced",
             "dry", "flaked", "melted", "softened", "room temperature"};
@@ -739,6 +734,8 @@ public class UnitsConverter
                 return round ? roundGeneric(value).trim() + " c" : df.format(value) + " c";
             case KG:
                 return round ? roundGeneric(value).trim() + " kg" : df.format(value) + " kg";
+            case LITER:
+                return round ? roundGeneric(value).trim() + " l" : df.format(value) + " l";
             case TBSP:
                 return round ? roundTbsp(value) : df.format(value) + " tbsp";
             case CAN:
@@ -800,6 +797,10 @@ public class UnitsConverter
                 return "lb";
             case GRAM:
                 return "g";
+            case KG:
+                return "kg";
+            case LITER:
+                return "l";
             case CAN:
                 return "can";
             case PKG:
@@ -817,9 +818,9 @@ public class UnitsConverter
      * If a recognized unit is found, the internal {@code units} field is set
      * to the corresponding constant (e.g., {@code TBSP}, {@code TSP}, {@code CUP}).
      *
-     * <p>The method handles various abbreviations and plural forms of units.
-     * For example, "T.", "T", "tbsp.", "tbsp", "tablespoon", and "tablespoons"
-     * will all be recognized as tablespoons.
+     * <p>Units are looked up in the {@link UnitVocabulary}, so the method handles the same
+     * abbreviations and plural forms as the parser. For example, "T.", "T", "tbsp.", "tbsp",
+     * "tablespoon", and "tablespoons" will all be recognized as tablespoons.
      *
      * <p>If "fl" or "fl." is followed by "oz" or "oz.", it's treated as fluid ounces (FL_OZ).
      *
@@ -837,7 +838,7 @@ public class UnitsConverter
     {
         String unitWord = "";
         units = NONE;
-        String[] words = ingredient.split("\\s|\\t|\\xA0");
+        String[] words = RecipePatterns.WHITESPACE.split(ingredient);
         String firstWord = "";
         String secondWord = "";
         String thirdWord = "";
@@ -852,63 +853,15 @@ public class UnitsConverter
         if (!firstWord.isEmpty())
         {
             unitWord = firstWord;
-            String firstWordLc = firstWord.toLowerCase();
-            if (firstWord.equals("T.") || firstWord.equals("T") || firstWordLc.equals("tbsp.") || firstWordLc.equals("tbsp") || firstWordLc.equals("tablespoon") || firstWordLc.equals("tablespoons"))
-            {
-                units = TBSP;
-            } else if (firstWord.equals("t.") || firstWord.equals("t") || firstWordLc.equals("tsp") || firstWordLc.equals("tsp.") || firstWordLc.equals("teaspoon") || firstWordLc.equals("teaspoons"))
-            {
-                units = TSP;
-            } else if (firstWordLc.equals("c.") || firstWordLc.equals("c") || firstWordLc.equals("cup") || firstWordLc.equals("cups"))
-            {
-                units = CUP;
-            } else if (firstWordLc.equals("smidgen"))
-            {
-                units = SMIDGEN;
-            } else if (firstWordLc.equals("dash"))
-            {
-                units = DASH;
-            } else if (firstWordLc.equals("pinch"))
-            {
-                units = PINCH;
-            } else if (firstWordLc.equals("g") || firstWordLc.equals("gram") || firstWordLc.equals("grams"))
-            {
-                units = GRAM;
-            } else if (firstWordLc.equals("oz") || firstWordLc.equals("oz.") || firstWordLc.equals("ounces") || firstWordLc.equals("ounce"))
-            {
-                units = OZ;
-            } else if ((firstWordLc.equals("fl") || firstWordLc.equals("fl.")) && (secondWord.equalsIgnoreCase("oz") || secondWord.equalsIgnoreCase("oz.")))
+            UnitVocabulary.Unit unit = UnitVocabulary.lookup(firstWord);
+            if ((firstWord.equalsIgnoreCase("fl") || firstWord.equalsIgnoreCase("fl.")) && (secondWord.equalsIgnoreCase("oz") || secondWord.equalsIgnoreCase("oz.")))
             {
                 units = FL_OZ;
                 unitWord += " " + secondWord;
-            } else if (firstWordLc.equals("quart") || firstWordLc.equals("quarts") || firstWordLc.equals("qt") || firstWordLc.equals("qts"))
+            } else if (unit != null)
             {
-                units = QT;
-            } else if (firstWordLc.equals("pint") || firstWordLc.equals("pints"))
-            {
-                units = PINT;
-            } else if (firstWordLc.equals("pound") || firstWordLc.equals("pounds") || firstWordLc.equals("lb.") || firstWordLc.equals("lb") || firstWordLc.equals("lbs") || firstWordLc.equals("lbs."))
-            {
-                units = LB;
-            } else if (firstWordLc.equals("inch") || firstWordLc.equals("inches"))
-            {
-                units = INCH;
-            } else if (firstWordLc.equals("ml") || firstWordLc.equals("ml.") || firstWordLc.equals("milliliter") || firstWordLc.equals("milliliters"))
-            {
-                units = ML;
-            } else if (firstWordLc.equals("cm") || firstWordLc.equals("cm."))
-            {
-                units = CM;
-            } else if (firstWordLc.equals("mm") || firstWordLc.equals("mm."))
-            {
-                units = MM;
-                value = value / 10d;
-            } else if (firstWordLc.equals("can") || firstWordLc.equals("cans"))
-            {
-                units = CAN;
-            } else if (firstWordLc.equals("pkg.") || firstWordLc.equals("pkg") || firstWordLc.equals("package"))
-            {
-                units = PKG;
+                units = unit.getCode();
+                if (units == MM) value = value / 10d;
             } else
             {
                 units = NONE;
@@ -939,7 +892,7 @@ public class UnitsConverter
         if (value.equalsIgnoreCase("a") || value.equalsIgnoreCase("another")) return 1d;
         try
         {
-            if (value.length() > 1 && value.substring(value.length() - 1).matches(FRACTIONS))
+            if (value.length() > 1 && RecipePatterns.FRACTION.matcher(value.substring(value.length() - 1)).matches())
             {
                 return parseNumber(value.substring(0, value.length() - 1)) + parseNumber(value.substring(value.length() - 1));
             } else
@@ -999,15 +952,14 @@ public class UnitsConverter
     {
         units = NONE;
         value = 0d;
-        Pattern pattern = Pattern.compile(VALUE_PARSE);
         String valueString = "";
-        String remainingIngredient = ingredient.replaceAll("\\s|\\t|\\xA0", " ").trim();
-        Matcher matcher = pattern.matcher(remainingIngredient);
+        String remainingIngredient = RecipePatterns.WHITESPACE.matcher(ingredient).replaceAll(" ").trim();
+        Matcher matcher = RecipePatterns.QUANTITY.matcher(remainingIngredient);
         if (matcher.find())
         {
             valueString = matcher.group(0);
             remainingIngredient = remainingIngredient.substring(valueString.length());
-            remainingIngredient = remainingIngredient.replaceAll("\\s|\\t|\\xA0", " ");
+            remainingIngredient = RecipePatterns.WHITESPACE.matcher(remainingIngredient).replaceAll(" ");
             String unitWord = setUnits(remainingIngredient);
             if (!unitWord.isEmpty())
             {
@@ -1025,7 +977,7 @@ public class UnitsConverter
         }
         if (!valueString.isEmpty())
         {
-            String[] valueParts = valueString.trim().split("[ -]");
+            String[] valueParts = RecipePatterns.QUANTITY_SEPARATOR.split(valueString.trim());
             double value = 0d;
             for (String valuePart : valueParts)
             {
@@ -1109,6 +1061,11 @@ public class UnitsConverter
             return toString(round) + " " + ingredientRemainder.trim();
         }
         value = value * toServings / fromServings;
+        if ((units == KG || units == LITER) && (toSystem == IMPERIAL || setBaseUnits))
+        {
+            units = units == KG ? GRAM : ML;
+            value = value * 1000d;
+        }
         if (units == OZ && isMass(ingredientRemainder))
         {
             units = LB;
@@ -1235,8 +1192,7 @@ public class UnitsConverter
         String temperature = "";
         String phrase = "";
         boolean found = true;
-        Pattern pattern = Pattern.compile("([0-9]{3})(°?F| degrees? ?F?)");
-        Matcher matcher = pattern.matcher(newDirections);
+        Matcher matcher = RecipePatterns.FAHRENHEIT.matcher(newDirections);
         while (found)
         {
             if (matcher.find())
@@ -1251,8 +1207,7 @@ public class UnitsConverter
             }
         }
         found = true;
-        pattern = Pattern.compile("([0-9]{3})°");
-        matcher = pattern.matcher(newDirections);
+        matcher = RecipePatterns.DEGREES.matcher(newDirections);
         while (found)
         {
             if (matcher.find())
@@ -1286,8 +1241,7 @@ public class UnitsConverter
         String temperature = "";
         String phrase = "";
         boolean found = true;
-        Pattern pattern = Pattern.compile("([0-9]{3})(°?C| degrees? ?C?)");
-        Matcher matcher = pattern.matcher(newDirections);
+        Matcher matcher = RecipePatterns.CELSIUS.matcher(newDirections);
         while (found)
         {
             if (matcher.find())
@@ -1392,13 +1346,11 @@ public class UnitsConverter
         String newDirections = directions;
         String phrase;
         boolean found;
-        Pattern pattern;
         Matcher matcher;
-        for (String ingredientDetect : INGREDIENT_DETECT)
+        for (Pattern measurement : RecipePatterns.MEASUREMENTS)
         {
             found = true;
-            pattern = Pattern.compile(ingredientDetect);
-            matcher = pattern.matcher(newDirections);
+            matcher = measurement.matcher(newDirections);
             String newPhrase;
             while (found)
             {
@@ -1412,7 +1364,7 @@ public class UnitsConverter
                     {
                         newPhrase = convert(phrase, fromServings, toServings, fromSystem, toSystem, false);
                     }
-                    newDirections = newDirections.replace(phrase, (phrase.matches("\\s.+") ? " " : "") + newPhrase);
+                    newDirections = newDirections.replace(phrase, (RecipePatterns.LEADING_SPACE.matcher(phrase).matches() ? " " : "") + newPhrase);
                 } else
                 {
                     found = false;
@@ -1420,8 +1372,7 @@ public class UnitsConverter
             }
         }
         found = true;
-        pattern = Pattern.compile(INGREDIENT_DETECT[0]);
-        matcher = pattern.matcher(newDirections);
+        matcher = RecipePatterns.MEASUREMENTS[0].matcher(newDirections);
         String newPhrase;
         while (found)
         {
@@ -1429,7 +1380,7 @@ public class UnitsConverter
             {
                 phrase = matcher.group(0);
                 newPhrase = convert(phrase, toServings, toServings, toSystem, toSystem, true);
-                newDirections = newDirections.replace(phrase, (phrase.matches("\\s.+") ? " " : "") + newPhrase.trim());
+                newDirections = newDirections.replace(phrase, (RecipePatterns.LEADING_SPACE.matcher(phrase).matches() ? " " : "") + newPhrase.trim());
             } else
             {
                 found = false;
@@ -1465,7 +1416,7 @@ public class UnitsConverter
      * scalable measurements (e.g., "1 cup flour", "2 tsp salt").
      *
      * <p>This method iterates through predefined regular expression patterns (defined in
-     * {@code INGREDIENT_DETECT}) to find matches in the provided directions string.
+     * {@link RecipePatterns#MEASUREMENTS}) to find matches in the provided directions string.
      * For each match found:
      * <ul>
      *     <li>A {@link DirectionsPhrase} object is created.</li>
@@ -1491,14 +1442,12 @@ public class UnitsConverter
         ArrayList<DirectionsPhrase> phrases = new ArrayList<>();
         String phrase;
         boolean found;
-        Pattern pattern;
         Matcher matcher;
-        for (String ingredientDetect : INGREDIENT_DETECT)
+        for (Pattern measurement : RecipePatterns.MEASUREMENTS)
         {
             directions += " ";
             found = true;
-            pattern = Pattern.compile(ingredientDetect);
-            matcher = pattern.matcher(directions);
+            matcher = measurement.matcher(directions);
             while (found)
             {
                 if (matcher.find())
@@ -1578,7 +1527,7 @@ public class UnitsConverter
      * @param name The ingredient name string from which to remove preparation words.
      * @return The ingredient name string with preparation words removed, converted to lowercase.
      */
-    private String stripPrep(String name)
+    static String stripPrep(String name)
     {
         String result = name;
         for (String prep : PREP_WORDS)
@@ -2,6 +2,10 @@ package com.stevedegroof.recipe_wizard;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.SpannableString;
+import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -10,6 +14,7 @@ import android.view.Window;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.ImageButton;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -20,6 +25,11 @@ import androidx.core.view.WindowInsetsControllerCompat;
 
 import com.google.android.material.appbar.MaterialToolbar;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 enum UnitSystem
 {
     IMPERIAL, METRIC
@@ -34,6 +44,7 @@ public class ViewRecipeActivity extends AppCompatActivity
 {
     public static final int SHARE_CONVERTED = 10004;
     public static final int SHARE_ORIGINAL = 10005;
+    public static final int MAX_SIMILAR_RECIPES = 5;
     Recipe recalculatedRecipe = null;
     private ImageButton editButton;
     private ImageButton shareButton;
@@ -46,6 +57,8 @@ public class ViewRecipeActivity extends AppCompatActivity
     private TextView ingredientsTextList;
     private TextView directionsTextSteps;
     private TextView notesText;
+    private TextView similarRecipesLabel;
+    private LinearLayout similarRecipesContainer;
     private MaterialToolbar toolbarViewRecipe;
     private Recipe currentRecipe;
     private int recalcServings = 4;
@@ -53,6 +66,9 @@ public class ViewRecipeActivity extends AppCompatActivity
     private int shareMode = SHARE_ORIGINAL;
 
     private boolean includeNotes = true;
+    private ExecutorService similarityExecutor;
+    private Handler mainThreadHandler;
+    private int highlightColor;
 
     /**
      * Called when the activity is first created.
@@ -96,6 +112,12 @@ public class ViewRecipeActivity extends AppCompatActivity
         servingsValueText = findViewById(R.id.textview_servings_value);
         unitsToggleButton = findViewById(R.id.button_units_toggle);
         notesText = findViewById(R.id.textview_notes);
+        similarRecipesLabel = findViewById(R.id.label_similar_recipes);
+        similarRecipesContainer = findViewById(R.id.similar_recipes_container);
+
+        highlightColor = ContextCompat.getColor(this, R.color.search_highlight);
+        similarityExecutor = Executors.newSingleThreadExecutor();
+        mainThreadHandler = new Handler(Looper.getMainLooper());
 
         editButton.setOnClickListener(this::checkEditType);
 
@@ -107,7 +129,7 @@ public class ViewRecipeActivity extends AppCompatActivity
                 .setPositiveButton(android.R.string.yes, (dialog, which) ->
                 {
                     Recipes recipes = Recipes.getInstance();
-                    recipes.getList().remove(currentRecipe);
+                    recipes.remove(currentRecipe);
                     recipes.save(getApplicationContext());
                     navigateToMainActivity();
                 })
@@ -255,7 +277,8 @@ public class ViewRecipeActivity extends AppCompatActivity
     private void loadRecipeData()
     {
 
-        recipeNameTextDetail.setText(currentRecipe.getTitle());
+        recipeNameTextDetail.setText(SearchHighlighter.highlightField(currentRecipe.getTitle(),
+                currentRecipe.getSearchHit(), MatchSpan.TITLE, highlightColor));
         if (recalculatedRecipe == null || recalculatedRecipe.getServings() == null)
         {
             try
@@ -290,7 +313,8 @@ public class ViewRecipeActivity extends AppCompatActivity
      * d. Converts the directions using the `UnitsConverter` class, adjusting quantities based on serving changes and unit system.
      * e. Updates the `recalculatedRecipe` with the converted directions and original notes.
      * 4. Formats the directions by splitting them into lines and prepending line numbers.
-     * 5. Updates the UI elements (`ingredientsTextList`, `directionsTextSteps`, `notesText`) to display the (potentially) recalculated recipe details.
+     * 5. Updates the UI elements (`ingredientsTextList`, `directionsTextSteps`, `notesText`) to display the (potentially) recalculated recipe details,
+     * highlighting any search matches. Matches in the ingredients and directions are only highlighted while the recipe is shown as written.
      */
     private void recalculateRecipe()
     {
@@ -320,17 +344,60 @@ public class ViewRecipeActivity extends AppCompatActivity
             recalculatedRecipe.setNotes(currentRecipe.getNotes());
         }
         String[] lines = directions.toString().split("\n");
+        int[] lineOffsets = new int[lines.length];
         directions = new StringBuilder();
         for (int i = 0; i < lines.length; i++)
         {
+            lineOffsets[i] = -1;
             if (!lines[i].isEmpty())
             {
-                directions.append((i + 1)).append(". ").append(lines[i]).append("\n\n");
+                directions.append((i + 1)).append(". ");
+                lineOffsets[i] = directions.length();
+                directions.append(lines[i]).append("\n\n");
+            }
+        }
+        SearchHit hit = isRecalced() ? null : currentRecipe.getSearchHit();
+        ingredientsTextList.setText(SearchHighlighter.highlightField(ingredients.toString(), hit, MatchSpan.INGREDIENTS, highlightColor));
+        directionsTextSteps.setText(highlightDirections(directions.toString(), lines, lineOffsets, hit));
+        notesText.setText(SearchHighlighter.highlightField(currentRecipe.getNotes(), currentRecipe.getSearchHit(), MatchSpan.NOTES, highlightColor));
+    }
+
+    /**
+     * Highlights search matches in the numbered directions.
+     * Match offsets refer to the directions as stored in the recipe, so each one is shifted
+     * by the position its line ended up at after numbering.
+     *
+     * @param formatted   The numbered directions as displayed.
+     * @param lines       The original direction lines.
+     * @param lineOffsets Where each original line starts in the displayed text, or -1 if it was dropped.
+     * @param hit         The search hit for the recipe, or null.
+     * @return The displayed directions with matches highlighted.
+     */
+    private CharSequence highlightDirections(String formatted, String[] lines, int[] lineOffsets, SearchHit hit)
+    {
+        if (hit == null) return formatted;
+        SpannableString highlighted = null;
+        for (MatchSpan span : hit.getSpans())
+        {
+            if (span.getField() != MatchSpan.DIRECTIONS) continue;
+            int lineStart = 0;
+            for (int i = 0; i < lines.length; i++)
+            {
+                int lineEnd = lineStart + lines[i].length();
+                if (span.getStart() < lineEnd)
+                {
+                    if (lineOffsets[i] >= 0)
+                    {
+                        if (highlighted == null) highlighted = new SpannableString(formatted);
+                        SearchHighlighter.highlight(highlighted, lineOffsets[i] + span.getStart() - lineStart,
+                                lineOffsets[i] + Math.min(span.getEnd(), lineEnd) - lineStart, highlightColor);
+                    }
+                    break;
+                }
+                lineStart = lineEnd + 1;
             }
         }
-        ingredientsTextList.setText(ingredients.toString());
-        directionsTextSteps.setText(directions.toString());
-        notesText.setText(currentRecipe.getNotes());
+        return highlighted == null ? formatted : highlighted;
     }
 
 
@@ -360,6 +427,62 @@ public class ViewRecipeActivity extends AppCompatActivity
             notesText.setVisibility(View.VISIBLE);
             findViewById(R.id.label_notes).setVisibility(View.VISIBLE);
         }
+        findSimilarRecipes();
+    }
+
+    /**
+     * Looks up recipes similar to the current one in the background and lists them
+     * below the notes. The similarity index is brought up to date first if the recipe
+     * book has changed since it was last built; only then is the list copied for the
+     * background thread to index.
+     */
+    private void findSimilarRecipes()
+    {
+        final Recipe recipe = currentRecipe;
+        final Recipes recipes = Recipes.getInstance();
+        final RecipeSimilarityIndex index = RecipeSimilarityIndex.getInstance();
+        final int version = recipes.getVersion();
+        final List<Recipe> snapshot = index.isCurrent(version) ? null : new ArrayList<>(recipes.getList());
+        similarityExecutor.execute(() ->
+        {
+            List<Recipe> similar;
+            try
+            {
+                if (snapshot != null) index.refresh(snapshot, version);
+                similar = index.findSimilar(recipe, MAX_SIMILAR_RECIPES);
+            } catch (Exception e)
+            {
+                similar = new ArrayList<>();
+            }
+            final List<Recipe> results = similar;
+            mainThreadHandler.post(() -> showSimilarRecipes(results));
+        });
+    }
+
+    /**
+     * Fills the similar recipes section. Tapping a recipe opens it.
+     *
+     * @param similar The recipes to show. If empty, the section is hidden.
+     */
+    private void showSimilarRecipes(List<Recipe> similar)
+    {
+        if (isFinishing() || isDestroyed()) return;
+        similarRecipesContainer.removeAllViews();
+        similarRecipesLabel.setVisibility(similar.isEmpty() ? View.GONE : View.VISIBLE);
+        LayoutInflater inflater = getLayoutInflater();
+        for (Recipe recipe : similar)
+        {
+            View itemView = inflater.inflate(R.layout.list_item_recipe, similarRecipesContainer, false);
+            TextView nameView = itemView.findViewById(R.id.text_view_recipe_name);
+            nameView.setText(recipe.getTitle());
+            itemView.setOnClickListener(v ->
+            {
+                Recipes.getInstance().setCurrentRecipe(recipe);
+                Intent intent = new Intent(ViewRecipeActivity.this, ViewRecipeActivity.class);
+                startActivity(intent);
+            });
+            similarRecipesContainer.addView(itemView);
+        }
     }
 
     /**
@@ -508,7 +631,8 @@ public class ViewRecipeActivity extends AppCompatActivity
 
     /**
      * Called when the activity is being destroyed.
-     * This method clears the FLAG_KEEP_SCREEN_ON flag to allow the screen to turn off.
+     * This method clears the FLAG_KEEP_SCREEN_ON flag to allow the screen to turn off
+     * and shuts down the similarity lookup executor.
      */
     @Override
     protected void onDestroy()
@@ -516,6 +640,10 @@ public class ViewRecipeActivity extends AppCompatActivity
         super.onDestroy();
         Window window = getWindow();
         window.clearFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+        if (similarityExecutor != null && !similarityExecutor.isShutdown())
+        {
+            similarityExecutor.shutdown();
+        }
     }
 
     public void setIncludeNotes(boolean includeNotes)
@@ -0,0 +1,179 @@
+package com.stevedegroof.recipe_wizard;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the recipes in a ZIP archive of recipe files, for an {@link ImportPipeline}.
+ * <p>
+ * The archive is streamed with {@link ZipInputStream}; nothing is extracted to disk. Each
+ * {@code .html} or {@code .htm} entry is read as a saved web page with a {@link HtmlRecipeSource}.
+ * Text entries ({@code .txt} and {@code .jsonl}, and MealMaster's {@code .mmf} and {@code .mm}
+ * and MasterCook's {@code .mxp}) are sniffed with {@link ImportFormat}: MealMaster and MasterCook
+ * files are read with a {@link LegacyRecipeSource}, JSON Lines exports with a
+ * {@link JsonLinesSource}, anything else as a recipe book with a {@link RecipeBookReader},
+ * so an entry may hold a single recipe or a whole collection. Recipes are returned entry by entry
+ * in archive order. Folders, hidden files and other kinds of file are passed over.
+ * <p>
+ * An entry that can't be read doesn't stop the import. The problem is recorded in
+ * {@link #getErrors()} and reading carries on with the next entry.
+ */
+public class ZipRecipeSource implements ImportPipeline.ChunkSource, Closeable
+{
+    private static final String[] TEXT_EXTENSIONS = {".txt", ".mmf", ".mm", ".mxp", ".jsonl"};
+
+    private final CountingInputStream counter;
+    private final ZipInputStream zip;
+    private final ArrayList<String> errors = new ArrayList<>();
+    private ImportPipeline.ChunkSource entrySource = null;
+    private String entryName = null;
+    private boolean entryFailed = false;
+    private boolean finished = false;
+
+    /**
+     * Creates a source.
+     *
+     * @param inputStream The archive. It is closed when the source is closed.
+     */
+    public ZipRecipeSource(InputStream inputStream)
+    {
+        counter = new CountingInputStream(inputStream);
+        zip = new ZipInputStream(counter);
+    }
+
+    /**
+     * Checks whether an entry should be read as a recipe file.
+     *
+     * @param entry The entry.
+     * @return True for a visible text or web page file.
+     */
+    private static boolean isRecipeFile(ZipEntry entry)
+    {
+        if (entry.isDirectory()) return false;
+        String name = entry.getName();
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        if (fileName.startsWith(".") || name.startsWith("__MACOSX/")) return false;
+        if (HtmlRecipeSource.isHtmlFile(fileName)) return true;
+        String lower = fileName.toLowerCase(Locale.ROOT);
+        for (String extension : TEXT_EXTENSIONS)
+        {
+            if (lower.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the next recipe file in the archive.
+     * The archive usually can't be read past an entry that failed, so that is not reported twice.
+     *
+     * @return True if there is one; false at the end of the archive or if the archive is unreadable.
+     */
+    private boolean openNextEntry()
+    {
+        while (true)
+        {
+            ZipEntry entry;
+            try
+            {
+                entry = zip.getNextEntry();
+            } catch (IOException | IllegalArgumentException e)
+            {
+                if (!entryFailed) errors.add((entryName == null ? "archive" : "after " + entryName) + ": " + e.getMessage());
+                return false;
+            }
+            if (entry == null) return false;
+            if (!isRecipeFile(entry)) continue;
+            entryName = entry.getName();
+            entryFailed = false;
+            if (HtmlRecipeSource.isHtmlFile(entryName))
+            {
+                entrySource = new HtmlRecipeSource(zip);
+                return true;
+            }
+            try
+            {
+                InputStream entryStream = new BufferedInputStream(zip, ImportFormat.SNIFF_LENGTH);
+                int format = ImportFormat.detect(entryStream);
+                if (format == ImportFormat.MEAL_MASTER || format == ImportFormat.MASTER_COOK)
+                {
+                    entrySource = new LegacyRecipeSource(entryStream, format);
+                } else if (format == ImportFormat.JSON_LINES)
+                {
+                    entrySource = new JsonLinesSource(entryStream);
+                } else
+                {
+                    entrySource = new RecipeBookReader(entryStream);
+                }
+                return true;
+            } catch (IOException e)
+            {
+                errors.add(entryName + ": " + e.getMessage());
+                entryFailed = true;
+            }
+        }
+    }
+
+    @Override
+    public String next()
+    {
+        while (!finished)
+        {
+            if (entrySource == null && !openNextEntry())
+            {
+                finished = true;
+                break;
+            }
+            try
+            {
+                String recipe = entrySource.next();
+                if (recipe != null) return recipe;
+            } catch (IOException e)
+            {
+                errors.add(entryName + ": " + e.getMessage());
+                entryFailed = true;
+            }
+            entrySource = null;
+        }
+        return null;
+    }
+
+    @Override
+    public int getFormat()
+    {
+        return entrySource == null ? ImportFormat.RECIPE_BOOK : entrySource.getFormat();
+    }
+
+    /**
+     * Gets the number of bytes of the archive read so far. Safe to call from any thread.
+     *
+     * @return The number of bytes read.
+     */
+    public long getBytesRead()
+    {
+        return counter.getCount();
+    }
+
+    /**
+     * Gets the problems met while reading the archive, one per entry, naming the entry.
+     * Only read this once the import has finished.
+     *
+     * @return The problems; empty if every entry was read.
+     */
+    public List<String> getErrors()
+    {
+        return errors;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        zip.close();
+    }
+}
@@ -0,0 +1,143 @@
+package com.stevedegroof.recipe_wizard;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link RecipeParser} joins the lines of directions, including recipes with
+ * thousands of lines of them, and that text edited in place, as in the capture screen's
+ * preview, parses the same way through {@link RecipeParser#textChanged(int, int, int)} and
+ * {@link RecipeParser#setChangedText(String, boolean)} as it does when parsed whole.
+ */
+public class RecipeParserTest
+{
+    private static final String RECIPE = "Scrambled Eggs\nServes 2\n\nIngredients\n3 eggs\n1 tbsp butter\n2 tbsp milk\n\n"
+            + "Directions\n1. Beat the eggs with the milk.\n2. Melt the butter in a pan over low heat.\n"
+            + "3. Pour in the eggs and stir until just set.\n\nNotes\nServe at once.\n";
+
+    /**
+     * Makes one edit to the text a parser last parsed, tells the parser about it, and checks the
+     * parser gives what a new parser gives for the whole edited text.
+     *
+     * @return The edited text.
+     */
+    private static String edit(RecipeParser parser, String text, int start, int before, String after)
+    {
+        String edited = text.substring(0, start) + after + text.substring(start + before);
+        parser.textChanged(start, before, after.length());
+        parser.setChangedText(edited, false);
+        assertParsedAsWhole(parser, edited);
+        return edited;
+    }
+
+    private static void assertParsedAsWhole(RecipeParser parser, String text)
+    {
+        RecipeParser whole = new RecipeParser();
+        whole.setRawText(text, false);
+        assertEquals(whole.getTitle(), parser.getTitle());
+        assertEquals(whole.getServings(), parser.getServings());
+        assertEquals(whole.getIngredients(), parser.getIngredients());
+        assertEquals(whole.getDirections(), parser.getDirections());
+        assertEquals(whole.getNotes(), parser.getNotes());
+    }
+
+    @Test
+    public void directionsAreJoinedAsBefore()
+    {
+        RecipeParser parser = new RecipeParser();
+        parser.setRawText("Toast\n\nIngredients\n1 slice bread\n\nDirections\n1. Put the bread in the toas-\nter and wait\nuntil done.\nServe:\nhot\n", false);
+        assertEquals("Put the bread in the toaster and wait until done.\nServe:\nhot ", parser.getDirections());
+        parser.setRawText("Toast\n\nIngredients\n1 slice bread\n\nDirections\n1) Put the bread in\nthe toaster.\n", true);
+        assertEquals("Put the bread in\nthe toaster.\n", parser.getDirections());
+    }
+
+    @Test
+    public void longDirectionsAreJoinedIntoSteps()
+    {
+        StringBuilder text = new StringBuilder("Long Stew\n\nIngredients\n2 cups stock\n\nDirections\n");
+        for (int i = 0; i < 16000; i++)
+        {
+            if (i % 50 == 0) text.append(i / 50 + 1).append(". ");
+            text.append("stir the sauce until it thick-\nens");
+            text.append(i % 50 == 49 ? ".\n" : "\n");
+        }
+        text.append("\nNotes\nKeeps for a week.\n");
+        RecipeParser parser = new RecipeParser();
+        parser.setRawText(text.toString(), false);
+        String directions = parser.getDirections();
+        assertEquals(320, directions.split("\n").length);
+        assertEquals(16000, directions.split("thickens", -1).length - 1);
+        assertEquals("Keeps for a week.\n", parser.getNotes());
+    }
+
+    @Test
+    public void editsAtTheStartMiddleAndEnd()
+    {
+        RecipeParser parser = new RecipeParser();
+        String text = RECIPE;
+        parser.setRawText(text, false);
+        text = edit(parser, text, 0, 0, "Fluffy ");
+        text = edit(parser, text, 0, 7, "");
+        int middle = text.indexOf("butter");
+        text = edit(parser, text, middle, 6, "ghee");
+        text = edit(parser, text, text.length(), 0, "Add chives.\n");
+        edit(parser, text, text.length() - 1, 1, "");
+    }
+
+    @Test
+    public void editsAcrossLineBreaks()
+    {
+        RecipeParser parser = new RecipeParser();
+        String text = RECIPE;
+        parser.setRawText(text, false);
+        int header = text.indexOf("\nIngredients");
+        text = edit(parser, text, header - 1, 2, "");
+        text = edit(parser, text, header - 1, 0, "\n\n");
+        int step = text.indexOf("2. Melt");
+        text = edit(parser, text, step - 1, 1, " ");
+        text = edit(parser, text, step - 1, 1, "\n");
+        int directions = text.indexOf("Directions");
+        text = edit(parser, text, directions - 1, text.indexOf("Notes") - directions + 1, "\n");
+        edit(parser, text, 0, text.length(), RECIPE);
+    }
+
+    @Test
+    public void editsBetweenParsesAreMerged()
+    {
+        RecipeParser parser = new RecipeParser();
+        String text = RECIPE;
+        parser.setRawText(text, false);
+        int butter = text.indexOf("butter");
+        text = text.substring(0, butter) + "salted butter" + text.substring(butter + 6);
+        parser.textChanged(butter, 6, 13);
+        text = "Easy " + text;
+        parser.textChanged(0, 0, 5);
+        int notes = text.indexOf("\nNotes");
+        text = text.substring(0, notes) + text.substring(notes + 1);
+        parser.textChanged(notes, 1, 0);
+        parser.setChangedText(text, false);
+        assertParsedAsWhole(parser, text);
+    }
+
+    @Test
+    public void randomEditsWithAndWithoutHeaders()
+    {
+        Random random = new Random(1);
+        for (String start : new String[]{RECIPE, RECIPE.replace("Ingredients\n", "").replace("Directions\n", "")})
+        {
+            RecipeParser parser = new RecipeParser();
+            String text = start;
+            parser.setRawText(text, false);
+            for (int i = 0; i < 500; i++)
+            {
+                int at = random.nextInt(text.length() + 1);
+                int before = Math.min(random.nextInt(4), text.length() - at);
+                String after = i % 5 == 0 ? "\n" : i % 7 == 0 ? "" : "2 cups";
+                text = edit(parser, text, at, before, after);
+            }
+        }
+    }
+}
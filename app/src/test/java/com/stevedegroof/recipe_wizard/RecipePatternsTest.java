@@ -0,0 +1,374 @@
+package com.stevedegroof.recipe_wizard;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks what the precompiled patterns in {@link RecipePatterns} match, on the kinds of text
+ * {@link RecipeParser} and {@link UnitsConverter} run them on, and that the classes that read
+ * every line of every recipe never compile a regular expression while they run.
+ * <p>
+ * Compiling happens inside {@link Pattern#compile(String)} and inside the {@link String} methods
+ * that take a regular expression: {@code matches}, {@code replaceAll}, {@code replaceFirst}, and
+ * {@code split} unless it is given a single plain character, which it splits on without
+ * compiling. The compiled classes are read through the class loader and every call of these
+ * found in their bytecode is reported; a {@code split} passes only if the instruction before it
+ * loads such a character as a constant.
+ */
+public class RecipePatternsTest
+{
+    private static final Class<?>[] HOT_PATH_CLASSES = {RecipeParser.class, RecipeLexer.class, LineLabeller.class, UnitsConverter.class};
+    private static final String SPLIT_METACHARACTERS = ".$|()[{^?*+\\";
+    private static final String[] COMPILING_METHODS = {"java/util/regex/Pattern.compile(", "java/util/regex/Pattern.matches(",
+            "java/lang/String.matches(", "java/lang/String.replaceAll(", "java/lang/String.replaceFirst("};
+    private static final String STRING_SPLIT = "java/lang/String.split(";
+    private static final String STRING_SPLIT_ON_TEXT = "java/lang/String.split(Ljava/lang/String;)";
+    private static final int[] INSTRUCTION_LENGTHS = new int[256];
+
+    static
+    {
+        Arrays.fill(INSTRUCTION_LENGTHS, 1);
+        for (int op : new int[]{0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc})
+        {
+            INSTRUCTION_LENGTHS[op] = 2;
+        }
+        for (int op : new int[]{0x11, 0x13, 0x14, 0x84, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7})
+        {
+            INSTRUCTION_LENGTHS[op] = 3;
+        }
+        for (int op = 0x99; op <= 0xa8; op++)
+        {
+            INSTRUCTION_LENGTHS[op] = 3;
+        }
+        INSTRUCTION_LENGTHS[0xc5] = 4;
+        for (int op : new int[]{0xb9, 0xba, 0xc8, 0xc9})
+        {
+            INSTRUCTION_LENGTHS[op] = 5;
+        }
+    }
+
+    /**
+     * Finds the first match of a pattern in some text.
+     *
+     * @return The matched text, or null if there is no match.
+     */
+    private static String find(Pattern pattern, String text)
+    {
+        Matcher matcher = pattern.matcher(text);
+        return matcher.find() ? matcher.group() : null;
+    }
+
+    @Test
+    public void separators()
+    {
+        assertArrayEquals(new String[]{"2 cups flour", "1 tsp salt"}, RecipePatterns.WIDE_GAP.split("2 cups flour    1 tsp salt"));
+        assertEquals(1, RecipePatterns.WIDE_GAP.split("2 cups  flour").length);
+        assertArrayEquals(new String[]{"1", "cup", "milk"}, RecipePatterns.WHITESPACE.split("1\tcup milk"));
+        assertArrayEquals(new String[]{"Serves", "4"}, RecipePatterns.SERVINGS_SEPARATOR.split("Serves 4."));
+        assertArrayEquals(new String[]{"1", "1/2"}, RecipePatterns.QUANTITY_SEPARATOR.split("1-1/2"));
+        assertTrue(RecipePatterns.LEADING_SPACE.matcher(" cups").matches());
+        assertFalse(RecipePatterns.LEADING_SPACE.matcher("cups").matches());
+    }
+
+    @Test
+    public void quantities()
+    {
+        assertEquals("1 1/2 ", find(RecipePatterns.QUANTITY, "1 1/2 cups flour"));
+        assertEquals("2.5 ", find(RecipePatterns.QUANTITY, "2.5 kg potatoes"));
+        assertEquals("a ", find(RecipePatterns.QUANTITY, "a pinch of salt"));
+        assertEquals(null, find(RecipePatterns.QUANTITY, "salt, 1 pinch"));
+        assertTrue(RecipePatterns.FRACTION.matcher("½").matches());
+        assertFalse(RecipePatterns.FRACTION.matcher("1/2").matches());
+    }
+
+    @Test
+    public void temperatures()
+    {
+        Matcher fahrenheit = RecipePatterns.FAHRENHEIT.matcher("Bake at 350°F until golden.");
+        assertTrue(fahrenheit.find());
+        assertEquals("350", fahrenheit.group(1));
+        assertEquals("375 degrees F", find(RecipePatterns.FAHRENHEIT, "Heat the oven to 375 degrees F."));
+        assertEquals("350°", find(RecipePatterns.DEGREES, "Bake at 350° for an hour."));
+        Matcher celsius = RecipePatterns.CELSIUS.matcher("Roast at 180°C.");
+        assertTrue(celsius.find());
+        assertEquals("180", celsius.group(1));
+        assertEquals(null, find(RecipePatterns.CELSIUS, "Bake for 45 minutes."));
+    }
+
+    @Test
+    public void measurementsInDirections()
+    {
+        assertEquals(" 1.5 cups", find(RecipePatterns.MEASUREMENTS[0], "Stir in 1.5 cups of stock."));
+        assertEquals(" 1 1/2 tsp", find(RecipePatterns.MEASUREMENTS[1], "Add 1 1/2 tsp salt."));
+        assertEquals(" ½ cup", find(RecipePatterns.MEASUREMENTS[1], "Whisk in ½ cup milk."));
+        assertEquals(" 250 g", find(RecipePatterns.MEASUREMENTS[2], "Fold in 250 g sugar."));
+        assertEquals(" 2-inch", find(RecipePatterns.MEASUREMENTS[2], "Cut into 2-inch pieces."));
+        assertEquals(null, find(RecipePatterns.MEASUREMENTS[2], "Bake for 20 minutes."));
+        assertEquals(null, find(RecipePatterns.MEASUREMENTS[2], "Serve 4 guests."));
+    }
+
+    /**
+     * Lists a class and every class declared in it, named or anonymous, since each is compiled
+     * to a class file of its own.
+     */
+    private static List<Class<?>> withNestedClasses(Class<?> type)
+    {
+        List<Class<?>> classes = new ArrayList<>();
+        classes.add(type);
+        for (Class<?> nested : type.getDeclaredClasses())
+        {
+            classes.addAll(withNestedClasses(nested));
+        }
+        for (int i = 1; ; i++)
+        {
+            try
+            {
+                classes.addAll(withNestedClasses(Class.forName(type.getName() + "$" + i, false, type.getClassLoader())));
+            } catch (ClassNotFoundException e)
+            {
+                break;
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Reads the compiled class file of a class through its class loader.
+     */
+    private static byte[] classFile(Class<?> type) throws IOException
+    {
+        try (InputStream in = type.getClassLoader().getResourceAsStream(type.getName().replace('.', '/') + ".class"))
+        {
+            assertTrue("No class file for " + type.getName(), in != null);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0)
+            {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Tells whether {@link String#split(String)} splits on an expression without compiling it:
+     * a single character that is not special, or a backslash and a character that is not a
+     * letter or digit.
+     */
+    private static boolean splitsWithoutCompiling(String regex)
+    {
+        if (regex.length() == 1) return SPLIT_METACHARACTERS.indexOf(regex.charAt(0)) < 0;
+        return regex.length() == 2 && regex.charAt(0) == '\\' && !Character.isLetterOrDigit(regex.charAt(1));
+    }
+
+    /**
+     * Tells whether a method call compiles a regular expression.
+     *
+     * @param method  The method called, as its class, name and descriptor.
+     * @param literal The string constant loaded just before the call, or null if there was none.
+     */
+    private static boolean compiles(String method, String literal)
+    {
+        for (String compiling : COMPILING_METHODS)
+        {
+            if (method.startsWith(compiling)) return true;
+        }
+        if (!method.startsWith(STRING_SPLIT)) return false;
+        return !method.startsWith(STRING_SPLIT_ON_TEXT) || literal == null || !splitsWithoutCompiling(literal);
+    }
+
+    /**
+     * Reads a big-endian unsigned 16-bit value.
+     */
+    private static int readShort(byte[] code, int at)
+    {
+        return ((code[at] & 0xff) << 8) | (code[at + 1] & 0xff);
+    }
+
+    /**
+     * Reads a big-endian 32-bit value.
+     */
+    private static int readInt(byte[] code, int at)
+    {
+        return (readShort(code, at) << 16) | readShort(code, at + 2);
+    }
+
+    /**
+     * Gets the length of the instruction at an offset in a method's bytecode.
+     */
+    private static int instructionLength(byte[] code, int at)
+    {
+        int op = code[at] & 0xff;
+        int operands = (at + 4) & ~3;
+        if (op == 0xaa) return operands - at + 12 + 4 * (readInt(code, operands + 8) - readInt(code, operands + 4) + 1);
+        if (op == 0xab) return operands - at + 8 + 8 * readInt(code, operands + 4);
+        if (op == 0xc4) return (code[at + 1] & 0xff) == 0x84 ? 6 : 4;
+        return INSTRUCTION_LENGTHS[op];
+    }
+
+    /**
+     * Finds the calls in a compiled class that compile a regular expression.
+     */
+    private static List<String> compilingCalls(Class<?> type) throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(classFile(type)));
+        in.readInt();
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        int[] tags = new int[count];
+        Object[] pool = new Object[count];
+        for (int i = 1; i < count; i++)
+        {
+            tags[i] = in.readUnsignedByte();
+            switch (tags[i])
+            {
+                case 1:
+                    pool[i] = in.readUTF();
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    pool[i] = new int[]{in.readUnsignedShort()};
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    pool[i] = new int[]{in.readUnsignedShort(), in.readUnsignedShort()};
+                    break;
+                case 15:
+                    in.readUnsignedByte();
+                    in.readUnsignedShort();
+                    break;
+                case 3:
+                case 4:
+                    in.readInt();
+                    break;
+                case 5:
+                case 6:
+                    in.readLong();
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant type " + tags[i] + " in " + type.getName());
+            }
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        in.skipBytes(2 * in.readUnsignedShort());
+        for (int member = 0; member < 2; member++)
+        {
+            int members = in.readUnsignedShort();
+            for (int m = 0; m < members; m++)
+            {
+                in.readUnsignedShort();
+                String name = (String) pool[in.readUnsignedShort()];
+                in.readUnsignedShort();
+                int attributes = in.readUnsignedShort();
+                for (int a = 0; a < attributes; a++)
+                {
+                    String attribute = (String) pool[in.readUnsignedShort()];
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    if (member == 1 && attribute.equals("Code"))
+                    {
+                        byte[] code = Arrays.copyOfRange(body, 8, 8 + readInt(body, 4));
+                        findCompilingCalls(type.getSimpleName() + "." + name, code, tags, pool, calls);
+                    }
+                }
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Walks the bytecode of one method, reporting each call that compiles a regular expression.
+     */
+    private static void findCompilingCalls(String method, byte[] code, int[] tags, Object[] pool, List<String> calls)
+    {
+        String literal = null;
+        int at = 0;
+        while (at < code.length)
+        {
+            int op = code[at] & 0xff;
+            String loaded = null;
+            if (op == 0x12 || op == 0x13)
+            {
+                int index = op == 0x12 ? code[at + 1] & 0xff : readShort(code, at + 1);
+                if (tags[index] == 8) loaded = (String) pool[((int[]) pool[index])[0]];
+            } else if (op >= 0xb6 && op <= 0xb9)
+            {
+                int[] ref = (int[]) pool[readShort(code, at + 1)];
+                int[] nameAndType = (int[]) pool[ref[1]];
+                String called = pool[((int[]) pool[ref[0]])[0]] + "." + pool[nameAndType[0]] + pool[nameAndType[1]];
+                if (compiles(called, literal)) calls.add(method + ": " + called + (literal == null || !called.startsWith(STRING_SPLIT) ? "" : " \"" + literal + "\""));
+            }
+            literal = loaded;
+            at += instructionLength(code, at);
+        }
+    }
+
+    @Test
+    public void hotPathsUsePrecompiledPatterns() throws IOException
+    {
+        List<String> calls = new ArrayList<>();
+        for (Class<?> hotPath : HOT_PATH_CLASSES)
+        {
+            for (Class<?> type : withNestedClasses(hotPath))
+            {
+                calls.addAll(compilingCalls(type));
+            }
+        }
+        assertTrue("Regular expressions compiled at run time: " + calls, calls.isEmpty());
+    }
+
+    @Test
+    public void checkFindsCompilingCalls() throws IOException
+    {
+        List<String> calls = compilingCalls(CompilesPatterns.class);
+        assertEquals(calls.toString(), 5, calls.size());
+    }
+
+    /**
+     * Calls each kind of method {@link #compilingCalls(Class)} looks for, five of them in ways
+     * that compile a regular expression and four in ways that don't.
+     */
+    private static class CompilesPatterns
+    {
+        void run(String text, String separator)
+        {
+            text.split("\\s+");
+            text.split("\n");
+            text.split("/");
+            text.replaceAll("x", "y");
+            text.matches("z");
+            Pattern.compile("q");
+            RecipePatterns.WHITESPACE.split(text);
+            RecipePatterns.WHITESPACE.matcher(text).replaceAll("y");
+            text.split(separator);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.stevedegroof.recipe_wizard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how {@link RecipeParser} splits recipes that are missing headers into ingredients and
+ * directions, and the confidence and runners-up it gives with the split.
+ */
+public class RecipeSegmentationTest
+{
+    private static final String INGREDIENTS = "3 eggs\n1 tbsp butter\n2 tbsp milk\nSalt\n";
+    private static final String DIRECTIONS = "Beat the eggs with the milk and a pinch of salt.\n"
+            + "Melt the butter in a nonstick pan over low heat.\n"
+            + "Pour in the eggs and stir slowly with a spatula until just set.\n";
+
+    @Test
+    public void headersGiveFullConfidence()
+    {
+        ParsedRecipe parsed = RecipeParser.parse("Scrambled Eggs\nIngredients\n" + INGREDIENTS + "Directions\n" + DIRECTIONS, false);
+        assertEquals(INGREDIENTS, parsed.getIngredients());
+        assertEquals(DIRECTIONS, parsed.getDirections());
+        assertEquals(1d, parsed.getConfidence(), 0d);
+        assertTrue(parsed.getAlternatives().isEmpty());
+    }
+
+    @Test
+    public void linesWithoutHeadersOrBlankLinesAreSplit()
+    {
+        ParsedRecipe parsed = RecipeParser.parse("Scrambled Eggs\n" + INGREDIENTS + DIRECTIONS, false);
+        assertEquals("Scrambled Eggs", parsed.getTitle());
+        assertEquals(INGREDIENTS, parsed.getIngredients());
+        assertEquals(DIRECTIONS, parsed.getDirections());
+        assertTrue(parsed.getConfidence() > 0.5 && parsed.getConfidence() < 1d);
+    }
+
+    @Test
+    public void oneHeaderFixesItsSection()
+    {
+        ParsedRecipe parsed = RecipeParser.parse("Scrambled Eggs\n" + INGREDIENTS + "Directions\n" + DIRECTIONS, false);
+        assertEquals(INGREDIENTS, parsed.getIngredients());
+        assertEquals(DIRECTIONS, parsed.getDirections());
+        parsed = RecipeParser.parse("Scrambled Eggs\nIngredients\n" + INGREDIENTS + DIRECTIONS, false);
+        assertEquals(INGREDIENTS, parsed.getIngredients());
+        assertEquals(DIRECTIONS, parsed.getDirections());
+    }
+
+    @Test
+    public void longDirectionsWithoutHeadersAreSplit()
+    {
+        StringBuilder text = new StringBuilder("Long Stew\n\n2 cups stock\n1 tbsp butter\n\n");
+        for (int i = 0; i < 2000; i++)
+        {
+            if (i % 50 == 0) text.append(i / 50 + 1).append(". ");
+            text.append("stir the sauce over low heat until it thickens");
+            text.append(i % 50 == 49 ? ".\n" : "\n");
+        }
+        ParsedRecipe parsed = RecipeParser.parse(text.toString(), false);
+        assertEquals("2 cups stock\n1 tbsp butter\n", parsed.getIngredients());
+        assertTrue(parsed.getDirections().startsWith("stir the sauce"));
+    }
+
+    @Test
+    public void runnersUpAreLessLikelyAndDifferent()
+    {
+        ParsedRecipe parsed = RecipeParser.parse("Scrambled Eggs\n" + INGREDIENTS + DIRECTIONS, false);
+        assertEquals(LineLabeller.CANDIDATES - 1, parsed.getAlternatives().size());
+        double total = parsed.getConfidence();
+        double previous = parsed.getConfidence();
+        for (ParsedRecipe alternative : parsed.getAlternatives())
+        {
+            assertTrue(alternative.getConfidence() <= previous);
+            assertTrue(!alternative.getIngredients().equals(parsed.getIngredients())
+                    || !alternative.getDirections().equals(parsed.getDirections()));
+            assertEquals(parsed.getTitle(), alternative.getTitle());
+            assertTrue(alternative.getAlternatives().isEmpty());
+            previous = alternative.getConfidence();
+            total += alternative.getConfidence();
+        }
+        assertTrue(total <= 1d + 1e-9);
+    }
+}